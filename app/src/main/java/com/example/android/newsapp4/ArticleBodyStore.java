@@ -0,0 +1,212 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link ArticleBodyStore} keeps the text of the articles on disk, gzip compressed, so the
+ * reader can show an article without a request. Article text compresses to about a third of its
+ * size. The least recently read articles are evicted once the store grows past its size limit.
+ */
+public class ArticleBodyStore {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ArticleBodyStore.class.getSimpleName();
+
+    /** Version of the file format, files of other versions are ignored */
+    private static final int FORMAT_VERSION = 1;
+    /** Name of the folder inside the app's cache directory */
+    private static final String DIRECTORY_NAME = "bodies";
+    /** Extension of the article files */
+    private static final String BODY_SUFFIX = ".body";
+    /** Upper bound for the total size of the files on disk (4 MB, a few hundred articles) */
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ArticleBodyStore sInstance;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    /** Total size of the files, or -1 until it has been counted */
+    private long mSizeBytes = -1;
+
+    /**
+     * Return the app wide store, kept in the app's cache directory.
+     */
+    public static synchronized ArticleBodyStore getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            sInstance = new ArticleBodyStore(directory, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ArticleBodyStore}.
+     *
+     * @param directory where the articles are stored
+     * @param maxBytes  upper bound for the total size of the files
+     */
+    public ArticleBodyStore(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return whether the text of the article is stored, without reading it.
+     */
+    public boolean contains(String url) {
+        return bodyFile(url).exists();
+    }
+
+    /**
+     * Return the stored text of the article with the given webUrl, or null if it isn't stored.
+     */
+    public synchronized String get(String url) {
+        File file = bodyFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                /* Another format, or another article with the same hash */
+                return null;
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            /* Most recently read articles are evicted last */
+            file.setLastModified(System.currentTimeMillis());
+            return new String(body, UTF_8);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the article " + url, e);
+            long bytes = file.length();
+            if (file.delete() && mSizeBytes >= 0) {
+                mSizeBytes -= bytes;
+            }
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the text of the article with the given webUrl, then trim the store if it is over its
+     * limit. The size is kept up to date in memory, so storing an article doesn't list the whole
+     * directory.
+     */
+    public synchronized void put(String url, String body) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create the article store " + mDirectory);
+            return;
+        }
+        File file = bodyFile(url);
+        /* Written aside and renamed, so a reader never sees half an article */
+        File temporary = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporary))));
+            byte[] bytes = body.getBytes(UTF_8);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.close();
+            out = null;
+            long replacedBytes = file.length();
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Can't rename " + temporary);
+            }
+            added(file.length() - replacedBytes);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem storing the article " + url, e);
+            temporary.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Delete the least recently read articles until the store fits its size limit.
+     */
+    public synchronized void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            mSizeBytes = 0;
+            return;
+        }
+        long totalBytes = 0;
+        ArrayList<File> bodies = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                bodies.add(file);
+                totalBytes += file.length();
+            }
+        }
+        if (totalBytes > mMaxBytes) {
+            File[] sorted = DiskLru.leastRecentlyUsedFirst(bodies);
+            for (int i = 0; i < sorted.length && totalBytes > mMaxBytes; i++) {
+                totalBytes -= sorted[i].length();
+                sorted[i].delete();
+            }
+        }
+        mSizeBytes = totalBytes;
+    }
+
+    /**
+     * Return the total size of the stored files.
+     */
+    public synchronized long sizeBytes() {
+        if (mSizeBytes < 0) {
+            trim();
+        }
+        return mSizeBytes;
+    }
+
+    /**
+     * Count the bytes a stored article added and trim the store once it is over its limit.
+     */
+    private void added(long bytes) {
+        if (mSizeBytes < 0) {
+            trim();
+        } else {
+            mSizeBytes += bytes;
+            if (mSizeBytes > mMaxBytes) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * Return the file that holds the article with the given webUrl.
+     */
+    private File bodyFile(String url) {
+        return new File(mDirectory, Integer.toHexString(url.hashCode()) + BODY_SUFFIX);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing an article file", e);
+            }
+        }
+    }
+}
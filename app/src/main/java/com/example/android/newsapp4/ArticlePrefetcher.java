@@ -0,0 +1,141 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link ArticlePrefetcher} downloads the text of the articles on screen into the
+ * {@link ArticleBodyStore} while the list is idle, so opening one in the {@link ReaderActivity}
+ * is a local read. It only runs on unmetered networks (the user isn't paying for articles they
+ * may never open) that are not poor ones, one request at a time on a low priority thread, and
+ * only for the rows that were visible last: rows scrolled away before their turn are skipped.
+ * How many rows below the visible ones are included is up to the {@link NetworkPolicy}.
+ */
+public class ArticlePrefetcher {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ArticlePrefetcher.class.getSimpleName();
+
+    private final Context mContext;
+    private final ArticleBodyStore mStore;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ArticlePrefetcher");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    /** Disconnects the request in flight when the prefetcher is released */
+    private final LoadCancellation mCancellation = new LoadCancellation();
+
+    /** webUrls of the visible rows still to prefetch, guarded by this */
+    private final ArrayList<String> mWanted = new ArrayList<String>();
+    /** Whether the background thread is working through mWanted, guarded by this */
+    private boolean mRunning;
+
+    /**
+     * Constructs a new {@link ArticlePrefetcher}.
+     *
+     * @param context of the activity
+     * @param store   where the articles are stored
+     */
+    public ArticlePrefetcher(Context context, ArticleBodyStore store) {
+        mContext = context.getApplicationContext();
+        mStore = store;
+    }
+
+    /**
+     * Prefetch the text of the given (visible) articles, in their order, instead of the ones asked for before.
+     */
+    public void prefetch(List<News> visibleArticles) {
+        if (NetworkPolicy.getInstance().getConnectionClass().getBodiesPrefetchedAhead() < 0 || !isUnmetered()) {
+            return;
+        }
+        synchronized (this) {
+            mWanted.clear();
+            for (News news : visibleArticles) {
+                if (news.getUrl() != null) {
+                    mWanted.add(news.getUrl());
+                }
+            }
+            if (mRunning || mWanted.isEmpty() || mExecutor.isShutdown()) {
+                return;
+            }
+            mRunning = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetchWanted();
+            }
+        });
+    }
+
+    /**
+     * Stop prefetching, the prefetcher can't be used anymore.
+     */
+    public void release() {
+        mExecutor.shutdownNow();
+        mCancellation.cancel();
+    }
+
+    private void prefetchWanted() {
+        while (true) {
+            String url;
+            synchronized (this) {
+                if (mWanted.isEmpty() || mCancellation.isCancelled()) {
+                    mRunning = false;
+                    return;
+                }
+                url = mWanted.remove(0);
+            }
+            if (mStore.contains(url)) {
+                continue;
+            }
+            try {
+                download(mStore, url, mCancellation);
+                NewsMetrics.count(NewsMetrics.Counter.BODIES_PREFETCHED);
+            } catch (IOException e) {
+                if (!mCancellation.isCancelled()) {
+                    Log.e(LOG_TAG, "Problem prefetching " + url, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Download the text of the article with the given webUrl into the store.
+     *
+     * @return the text, or null if the article has none
+     */
+    static String download(ArticleBodyStore store, String webUrl, LoadCancellation cancellation) throws IOException {
+        String articleUrl = NewsQuery.buildArticleUrl(webUrl);
+        if (articleUrl == null) {
+            return null;
+        }
+        String body = NewsHttpClient.getInstance().fetchArticleBody(articleUrl, cancellation);
+        if (body != null) {
+            store.put(webUrl, body);
+        }
+        return body;
+    }
+
+    /**
+     * Return whether the active network is connected and not metered (e.g. Wi-Fi).
+     */
+    private boolean isUnmetered() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected() && !connectivityManager.isActiveNetworkMetered();
+    }
+}
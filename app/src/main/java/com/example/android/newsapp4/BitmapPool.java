@@ -0,0 +1,76 @@
+package com.example.android.newsapp4;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * {@link BitmapPool} keeps bitmaps that are no longer shown, so the next thumbnail is decoded into
+ * their memory (BitmapFactory.Options.inBitmap) instead of a new allocation. While the list
+ * scrolls, thumbnails keep leaving and entering the memory cache; reusing their pixels keeps the
+ * garbage collector (and its pauses) out of the scroll.
+ * <p>
+ * Only bitmaps that are certain not to be on screen may be put here, see {@link ThumbnailLoader}.
+ */
+public class BitmapPool {
+
+    private final long mMaxBytes;
+    /** Pooled bitmaps, oldest first, guarded by this */
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+    /** Total size of the pooled bitmaps, guarded by this */
+    private long mBytes;
+
+    /**
+     * Constructs a new {@link BitmapPool}.
+     *
+     * @param maxBytes upper bound for the total size of the pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Keep the bitmap for reuse. Immutable or recycled bitmaps can't be decoded into and are dropped.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+                || bitmap.getAllocationByteCount() > mMaxBytes) {
+            return;
+        }
+        mBitmaps.add(bitmap);
+        mBytes += bitmap.getAllocationByteCount();
+        while (mBytes > mMaxBytes) {
+            /* Drop the oldest ones, the garbage collector frees them */
+            mBytes -= mBitmaps.remove(0).getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Take a bitmap of the given configuration that can hold at least the given number of bytes,
+     * the smallest one that fits, or return null if there is none.
+     */
+    public synchronized Bitmap get(int byteCount, Bitmap.Config config) {
+        int best = -1;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            Bitmap bitmap = mBitmaps.get(i);
+            if (bitmap.getConfig() == config && bitmap.getAllocationByteCount() >= byteCount
+                    && (best < 0 || bitmap.getAllocationByteCount() < mBitmaps.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        Bitmap bitmap = mBitmaps.remove(best);
+        mBytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Drop every pooled bitmap.
+     */
+    public synchronized void clear() {
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.android.newsapp4;
+
+/**
+ * {@link CircuitBreaker} stops calling an API that keeps failing. After a number of failures in a
+ * row it opens and every request fails fast (the callers fall back to cached data) until a cool-down
+ * has passed. Then a single probe request is let through: if it succeeds the breaker closes again,
+ * if it fails the breaker stays open for another cool-down.
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of the breaker.
+     */
+    public enum State {
+        /** Requests go through */
+        CLOSED,
+        /** Requests fail fast */
+        OPEN,
+        /** One probe request is in flight, the others fail fast */
+        HALF_OPEN
+    }
+
+    private final int mFailureThreshold;
+    private final long mCoolDownMillis;
+    private final Clock mClock;
+
+    private State mState = State.CLOSED;
+    private int mFailures;
+    /** While open: when the next probe may go through */
+    private long mOpenUntilMillis;
+    /** While half open: when the probe went through */
+    private long mProbeStartMillis;
+
+    /**
+     * Constructs a new {@link CircuitBreaker}.
+     *
+     * @param failureThreshold failures in a row that open the breaker
+     * @param coolDownMillis   time the breaker stays open before a probe is let through
+     */
+    public CircuitBreaker(int failureThreshold, long coolDownMillis) {
+        this(failureThreshold, coolDownMillis, Clock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@link CircuitBreaker} that times its cool-downs with the given clock.
+     */
+    CircuitBreaker(int failureThreshold, long coolDownMillis, Clock clock) {
+        mFailureThreshold = failureThreshold;
+        mCoolDownMillis = coolDownMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Return whether a request may be made now. When the cool-down is over the caller
+     * becomes the probe and must report its outcome.
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now() < mOpenUntilMillis) {
+                    return false;
+                }
+                mState = State.HALF_OPEN;
+                mProbeStartMillis = now();
+                return true;
+            default:
+                if (now() - mProbeStartMillis < mCoolDownMillis) {
+                    /* The probe is still in flight */
+                    return false;
+                }
+                /* The probe never reported back (e.g. it was cancelled), let another one through */
+                mProbeStartMillis = now();
+                return true;
+        }
+    }
+
+    /**
+     * Report a request that succeeded: the breaker closes.
+     */
+    public synchronized void onSuccess() {
+        mState = State.CLOSED;
+        mFailures = 0;
+    }
+
+    /**
+     * Report a request that failed.
+     *
+     * @return true if the breaker just opened
+     */
+    public synchronized boolean onFailure() {
+        mFailures++;
+        if (mState == State.HALF_OPEN || (mState == State.CLOSED && mFailures >= mFailureThreshold)) {
+            open(mCoolDownMillis);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Open the breaker for at least the given time, e.g. when the server asked to retry after it.
+     *
+     * @return true if the breaker just opened
+     */
+    public synchronized boolean openFor(long millis) {
+        boolean opened = mState != State.OPEN;
+        open(Math.max(millis, 0));
+        return opened;
+    }
+
+    public synchronized State getState() {
+        if (mState == State.OPEN && now() >= mOpenUntilMillis) {
+            /* A probe would be let through */
+            return State.HALF_OPEN;
+        }
+        return mState;
+    }
+
+    private void open(long millis) {
+        mState = State.OPEN;
+        mOpenUntilMillis = Math.max(mOpenUntilMillis, now() + millis);
+    }
+
+    private long now() {
+        return mClock.elapsedMillis();
+    }
+}
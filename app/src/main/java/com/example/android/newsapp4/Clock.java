@@ -0,0 +1,32 @@
+package com.example.android.newsapp4;
+
+/**
+ * {@link Clock} tells the time to the classes whose state expires or cools down, e.g. the
+ * {@link CircuitBreaker} and the {@link NewsCache}. Their tests pass a clock of their own and
+ * advance it instead of sleeping.
+ */
+interface Clock {
+
+    /** The clocks of the system */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedMillis() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    /**
+     * Return the wall clock time, comparable with file times and the times stored in files.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Return a monotonic time for measuring intervals, unaffected by changes of the wall clock.
+     */
+    long elapsedMillis();
+}
@@ -0,0 +1,117 @@
+package com.example.android.newsapp4;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.telephony.TelephonyManager;
+
+/**
+ * {@link ConnectivityWatcher} tells the {@link NetworkPolicy} when the active network changes and
+ * what to expect of its speed until the policy has measured it: the class the same network had
+ * last time, otherwise what its type suggests. The broadcasts are received on a background thread,
+ * asking the system about the network never blocks the main one.
+ * <p>
+ * The class of every network is remembered across processes. The background sync then asks for
+ * the page size the next screen on that network will, and warms the same cache entries.
+ */
+public final class ConnectivityWatcher {
+
+    /** Preferences that keep the last class of every network, by its type and subtype */
+    private static final String PREFERENCES_NAME = "network_classes";
+
+    private static boolean sStarted;
+
+    /**
+     * Only static methods, no instances.
+     */
+    private ConnectivityWatcher() {
+    }
+
+    /**
+     * Update the policy with the active network now, then every time it changes. Called once per
+     * process, off the main thread; later calls do nothing.
+     */
+    public static void start(Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (ConnectivityWatcher.class) {
+            if (sStarted) {
+                return;
+            }
+            sStarted = true;
+        }
+        final SharedPreferences classes = appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        NetworkPolicy.getInstance().setListener(new NetworkPolicy.Listener() {
+            @Override
+            public void onConnectionClassChanged(String network, NetworkPolicy.ConnectionClass connectionClass) {
+                classes.edit().putString(network, connectionClass.name()).apply();
+            }
+        });
+        update(appContext, classes);
+        HandlerThread thread = new HandlerThread("ConnectivityWatcher");
+        thread.start();
+        /* The broadcast is sticky: it is also delivered once now, for the same network */
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                update(appContext, classes);
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, new Handler(thread.getLooper()));
+    }
+
+    private static void update(Context context, SharedPreferences classes) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            /* Nothing to measure, keep what is known until another network connects */
+            return;
+        }
+        String network = networkInfo.getTypeName() + "/" + networkInfo.getSubtypeName();
+        NetworkPolicy.ConnectionClass hint = remembered(classes, network);
+        if (hint == null) {
+            hint = hint(networkInfo, connectivityManager.isActiveNetworkMetered());
+        }
+        NetworkPolicy.getInstance().onNetworkChanged(network, hint);
+    }
+
+    /**
+     * Return the class the network had when it was last measured, or null if it never was.
+     */
+    private static NetworkPolicy.ConnectionClass remembered(SharedPreferences classes, String network) {
+        String name = classes.getString(network, null);
+        try {
+            return name != null ? NetworkPolicy.ConnectionClass.valueOf(name) : null;
+        } catch (IllegalArgumentException e) {
+            /* A class of an older version of the app */
+            return null;
+        }
+    }
+
+    /**
+     * Return the class a network of the type usually is.
+     */
+    private static NetworkPolicy.ConnectionClass hint(NetworkInfo networkInfo, boolean metered) {
+        if (networkInfo.getType() != ConnectivityManager.TYPE_MOBILE) {
+            /* Wi-Fi or Ethernet; a metered one is often a phone's hotspot */
+            return metered ? NetworkPolicy.ConnectionClass.MODERATE : NetworkPolicy.ConnectionClass.GOOD;
+        }
+        switch (networkInfo.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return NetworkPolicy.ConnectionClass.POOR;
+            case TelephonyManager.NETWORK_TYPE_LTE:
+                return NetworkPolicy.ConnectionClass.GOOD;
+            default:
+                /* 3G, or a type newer than this code */
+                return NetworkPolicy.DEFAULT_HINT;
+        }
+    }
+}
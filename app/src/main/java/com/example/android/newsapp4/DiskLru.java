@@ -0,0 +1,59 @@
+package com.example.android.newsapp4;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link DiskLru} orders the files of the disk caches for their least recently used eviction:
+ * each cache marks a file as used by setting its time, {@link NewsCache}, {@link ArticleBodyStore}
+ * and {@link ThumbnailDiskCache} evict the files with the oldest times first.
+ */
+final class DiskLru {
+
+    /** Oldest time first */
+    private static final Comparator<TimedFile> LEAST_RECENTLY_USED_FIRST = new Comparator<TimedFile>() {
+        @Override
+        public int compare(TimedFile a, TimedFile b) {
+            return a.time < b.time ? -1 : (a.time > b.time ? 1 : 0);
+        }
+    };
+
+    /**
+     * Only static methods, no instances.
+     */
+    private DiskLru() {
+    }
+
+    /**
+     * Return the files, least recently used first. The time of each file is read once: a reader
+     * may mark a file as used while they are sorted, and a time that changes under the sort
+     * would break its ordering.
+     */
+    static File[] leastRecentlyUsedFirst(List<File> files) {
+        TimedFile[] timed = new TimedFile[files.size()];
+        for (int i = 0; i < timed.length; i++) {
+            timed[i] = new TimedFile(files.get(i));
+        }
+        Arrays.sort(timed, LEAST_RECENTLY_USED_FIRST);
+        File[] sorted = new File[timed.length];
+        for (int i = 0; i < timed.length; i++) {
+            sorted[i] = timed[i].file;
+        }
+        return sorted;
+    }
+
+    /**
+     * A file with its time as it was when the files were listed.
+     */
+    private static final class TimedFile {
+        final File file;
+        final long time;
+
+        TimedFile(File file) {
+            this.file = file;
+            time = file.lastModified();
+        }
+    }
+}
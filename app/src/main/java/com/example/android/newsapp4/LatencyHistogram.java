@@ -0,0 +1,124 @@
+package com.example.android.newsapp4;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link LatencyHistogram} counts durations (in microseconds) in log-linear buckets, like HdrHistogram:
+ * every power of two is split into {@link #SUB_BUCKETS} equal buckets, so a percentile is off by at
+ * most 1/16th of its value whatever its magnitude. Recording is one array increment, lock free and
+ * without allocation, so it can be called from any thread on the hot path.
+ */
+public class LatencyHistogram {
+
+    /** log2 of the number of buckets per power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** Number of buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for any positive long */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mTotalCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * Count one duration.
+     *
+     * @param micros duration in microseconds, negative values count as 0
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        mCounts.incrementAndGet(bucketIndex(value));
+        mTotalCount.incrementAndGet();
+        mTotalMicros.addAndGet(value);
+        long max = mMaxMicros.get();
+        while (value > max && !mMaxMicros.compareAndSet(max, value)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : (double) mTotalMicros.get() / count;
+    }
+
+    /**
+     * Return the duration below which the given share of the recorded ones fall, as the upper
+     * bound of its bucket (never above the largest recorded duration).
+     *
+     * @param percentile between 0 and 100
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), mMaxMicros.get());
+            }
+        }
+        return mMaxMicros.get();
+    }
+
+    /**
+     * Forget every recorded duration.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    /**
+     * Return a one line summary: count, mean, p50, p90, p99 and max.
+     */
+    public String summary() {
+        return String.format(Locale.US, "n=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus",
+                getCount(), getMeanMicros(), getPercentileMicros(50), getPercentileMicros(90),
+                getPercentileMicros(99), getMaxMicros());
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} have a bucket each; above that the bucket is given by the
+     * position of the highest bit and the {@link #SUB_BUCKET_BITS} bits after it.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Return the largest value that falls in the bucket.
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.newsapp4;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+
+/**
+ * {@link LoadCancellation} cancels the requests of a load that is no longer needed. Interrupting
+ * a thread doesn't unblock a socket read, so every connection of the load is registered here while
+ * it is open and {@link #cancel()} disconnects it from the cancelling thread: the blocked read
+ * fails straight away and no more bytes are downloaded.
+ */
+public class LoadCancellation {
+
+    /**
+     * Told when the load is cancelled, e.g. to give up a share of a request other loads still need.
+     */
+    interface Listener {
+        /**
+         * Called on the cancelling thread, must not block.
+         */
+        void onCancelled();
+    }
+
+    private boolean mCancelled;
+    /** Connections of the load currently open */
+    private final ArrayList<HttpURLConnection> mConnections = new ArrayList<HttpURLConnection>();
+    /** Listeners of the load, until removed */
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    /**
+     * Cancel the load: disconnect its open connections, the ones opened later are disconnected
+     * as soon as they are registered.
+     */
+    public void cancel() {
+        ArrayList<HttpURLConnection> connections;
+        ArrayList<Listener> listeners;
+        synchronized (this) {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            connections = new ArrayList<HttpURLConnection>(mConnections);
+            mConnections.clear();
+            listeners = new ArrayList<Listener>(mListeners);
+            mListeners.clear();
+        }
+        /* Outside the lock, disconnecting may block for a moment */
+        for (HttpURLConnection connection : connections) {
+            connection.disconnect();
+        }
+        for (Listener listener : listeners) {
+            listener.onCancelled();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Throw an InterruptedIOException if the load was cancelled.
+     */
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Load cancelled");
+        }
+    }
+
+    /**
+     * Register an open connection of the load, until {@link #unregister}.
+     *
+     * @throws InterruptedIOException if the load was already cancelled, the connection is then disconnected
+     */
+    void register(HttpURLConnection connection) throws InterruptedIOException {
+        synchronized (this) {
+            if (!mCancelled) {
+                mConnections.add(connection);
+                return;
+            }
+        }
+        connection.disconnect();
+        throw new InterruptedIOException("Load cancelled");
+    }
+
+    synchronized void unregister(HttpURLConnection connection) {
+        mConnections.remove(connection);
+    }
+
+    /**
+     * Tell the listener when the load is cancelled, until {@link #removeListener}. Told at once
+     * (on this thread) if the load was already cancelled.
+     */
+    void addListener(Listener listener) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.onCancelled();
+    }
+
+    synchronized void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.android.newsapp4;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Debug screen with the timings and counters of {@link NewsMetrics}. Tap the text to refresh it.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        mMetricsTextView = (TextView) findViewById(R.id.metrics_text);
+        mMetricsTextView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                showMetrics();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        mMetricsTextView.setText(NewsMetrics.dump());
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.android.newsapp4;
+
+import java.util.Locale;
+
+/**
+ * {@link NetworkPolicy} estimates how fast the network is from the requests made on it, and tunes
+ * the fetching to it: the page size, whether the next page and the article texts are prefetched,
+ * the quality of the thumbnails and the timeouts. It aims for a fast first paint on a slow link,
+ * and for fewer round trips on a fast one.
+ * <p>
+ * Round trip times (request sent to status line) and throughputs (bytes over the time spent waiting
+ * for them) are kept as moving averages, so recent loads weigh the most. Each one maps to a
+ * {@link ConnectionClass}, and the slower of the two wins. Until the first request of a network has
+ * been measured, the class is the hint given for that network. A new network starts over;
+ * see {@link ConnectivityWatcher}, which also remembers the class of every network through the
+ * {@link Listener}, so the next process (e.g. the background sync) starts from it.
+ */
+public class NetworkPolicy {
+
+    /**
+     * How fast the network is, and what is fetched on it.
+     */
+    public enum ConnectionClass {
+        /** Under 150 kbit/s or a round trip over 1.5 s, e.g. 2G: small pages and thumbnails, no prefetch */
+        POOR(10, false, -1, false, 15000, 20000),
+        /** Under 550 kbit/s or a round trip over 600 ms, e.g. 3G: only the visible texts are prefetched */
+        MODERATE(20, true, 0, false, 15000, 10000),
+        /** Under 2 Mbit/s or a round trip over 250 ms, e.g. LTE or a busy Wi-Fi */
+        GOOD(20, true, 5, true, 10000, 10000),
+        /** Anything faster: large pages, fewer requests while scrolling; failures are detected early */
+        EXCELLENT(50, true, 10, true, 5000, 5000);
+
+        private final int mPageSize;
+        private final boolean mNextPagePrefetched;
+        private final int mBodiesPrefetchedAhead;
+        private final boolean mFullQualityThumbnails;
+        private final int mConnectTimeoutMillis;
+        private final int mReadTimeoutMillis;
+
+        ConnectionClass(int pageSize, boolean nextPagePrefetched, int bodiesPrefetchedAhead,
+                        boolean fullQualityThumbnails, int connectTimeoutMillis, int readTimeoutMillis) {
+            mPageSize = pageSize;
+            mNextPagePrefetched = nextPagePrefetched;
+            mBodiesPrefetchedAhead = bodiesPrefetchedAhead;
+            mFullQualityThumbnails = fullQualityThumbnails;
+            mConnectTimeoutMillis = connectTimeoutMillis;
+            mReadTimeoutMillis = readTimeoutMillis;
+        }
+
+        /**
+         * Return the number of articles to ask for per page.
+         */
+        public int getPageSize() {
+            return mPageSize;
+        }
+
+        /**
+         * Return whether the page after the ones on screen is loaded before the user gets there.
+         */
+        public boolean isNextPagePrefetched() {
+            return mNextPagePrefetched;
+        }
+
+        /**
+         * Return how many rows below the visible ones get their text prefetched, or -1 for no
+         * prefetch at all (not even for the visible rows).
+         */
+        public int getBodiesPrefetchedAhead() {
+            return mBodiesPrefetchedAhead;
+        }
+
+        /**
+         * Return whether thumbnails are downloaded as served, otherwise in a smaller rendition.
+         */
+        public boolean isFullQualityThumbnails() {
+            return mFullQualityThumbnails;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return mConnectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return mReadTimeoutMillis;
+        }
+    }
+
+    /**
+     * Told when the class of the network changes.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread that measured the network, with the policy locked.
+         *
+         * @param network identifies the network, as given to {@link #onNetworkChanged}
+         */
+        void onConnectionClassChanged(String network, ConnectionClass connectionClass);
+    }
+
+    /** Upper bounds of the throughput of every class but the fastest, in kbit/s */
+    private static final double[] THROUGHPUT_KBPS = {150, 550, 2000};
+    /** Lower bounds of the round trip of every class but the fastest, in ms */
+    private static final double[] ROUND_TRIP_MILLIS = {1500, 600, 250};
+    /** Weight of a new measurement in the moving averages */
+    private static final double SMOOTHING = 0.3;
+    /** Smaller bodies measure the round trip more than the bandwidth, their throughput is ignored */
+    static final long MIN_THROUGHPUT_BYTES = 8 * 1024;
+    /** Class of a network of an unknown type */
+    static final ConnectionClass DEFAULT_HINT = ConnectionClass.MODERATE;
+
+    private static final NetworkPolicy sInstance = new NetworkPolicy();
+
+    /** Moving averages, negative until measured; guarded by this */
+    private double mThroughputKbps = -1;
+    private double mRoundTripMillis = -1;
+    private ConnectionClass mHint = DEFAULT_HINT;
+    /** Identifies the network measured, e.g. its type */
+    private String mNetwork;
+    /** Read without locking on every request and bind */
+    private volatile ConnectionClass mConnectionClass = DEFAULT_HINT;
+    /** May be null, guarded by this */
+    private Listener mListener;
+
+    /**
+     * Constructs a new {@link NetworkPolicy}, the app uses {@link #getInstance()}.
+     */
+    NetworkPolicy() {
+    }
+
+    /**
+     * Return the app wide policy, the requests of every screen measure the same network.
+     */
+    public static NetworkPolicy getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Return the class of the network now.
+     */
+    public ConnectionClass getConnectionClass() {
+        return mConnectionClass;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Start over on another network: what was measured on the previous one doesn't apply. Nothing
+     * changes if the network is the one measured already (e.g. a repeated broadcast).
+     *
+     * @param network identifies the network, e.g. its type and subtype
+     * @param hint    class to use until the network has been measured, e.g. the one it had last time
+     */
+    public synchronized void onNetworkChanged(String network, ConnectionClass hint) {
+        if (network.equals(mNetwork)) {
+            return;
+        }
+        mNetwork = network;
+        mHint = hint;
+        mThroughputKbps = -1;
+        mRoundTripMillis = -1;
+        update();
+    }
+
+    /**
+     * Record the time from a request being sent to its status line arriving.
+     */
+    public synchronized void recordRoundTrip(long nanos) {
+        mRoundTripMillis = average(mRoundTripMillis, nanos / 1e6);
+        update();
+    }
+
+    /**
+     * Record a body downloaded: its size on the wire and the time spent waiting for it.
+     */
+    public synchronized void recordDownload(long bytes, long nanos) {
+        if (bytes < MIN_THROUGHPUT_BYTES || nanos <= 0) {
+            return;
+        }
+        mThroughputKbps = average(mThroughputKbps, bytes * 8 / (nanos / 1e6));
+        update();
+    }
+
+    /**
+     * Return a one line summary for the metrics.
+     */
+    public synchronized String summary() {
+        return String.format(Locale.US, "%s (%s), %.0f kbit/s, round trip %.0f ms",
+                mConnectionClass, mNetwork, mThroughputKbps, mRoundTripMillis);
+    }
+
+    private static double average(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private void update() {
+        ConnectionClass connectionClass = mHint;
+        if (mThroughputKbps >= 0 || mRoundTripMillis >= 0) {
+            ConnectionClass[] classes = ConnectionClass.values();
+            int byThroughput = mThroughputKbps >= 0
+                    ? classOf(mThroughputKbps, THROUGHPUT_KBPS, true) : mHint.ordinal();
+            int byRoundTrip = mRoundTripMillis >= 0
+                    ? classOf(mRoundTripMillis, ROUND_TRIP_MILLIS, false) : mHint.ordinal();
+            connectionClass = classes[Math.min(byThroughput, byRoundTrip)];
+        }
+        ConnectionClass previous = mConnectionClass;
+        mConnectionClass = connectionClass;
+        if (connectionClass != previous && mListener != null && mNetwork != null) {
+            mListener.onConnectionClassChanged(mNetwork, connectionClass);
+        }
+    }
+
+    /**
+     * Return the ordinal of the class of a measurement, from the bounds of the classes slowest first.
+     *
+     * @param higherIsFaster true for a throughput, false for a round trip
+     */
+    private static int classOf(double value, double[] bounds, boolean higherIsFaster) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (higherIsFaster ? value < bounds[i] : value > bounds[i]) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.newsapp4;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide counters for the requests made by {@link QueryUtils}, used to verify
+ * how much gzip and conditional requests save.
+ */
+public final class NetworkStats {
+
+    private static final AtomicLong sRequests = new AtomicLong();
+    private static final AtomicLong sNotModified = new AtomicLong();
+    private static final AtomicLong sBytesReceived = new AtomicLong();
+    private static final AtomicLong sBytesSaved = new AtomicLong();
+    private static final AtomicLong sCoalesced = new AtomicLong();
+
+    /**
+     * Only static counters, no instances.
+     */
+    private NetworkStats() {
+    }
+
+    /**
+     * Record a full (200) response.
+     *
+     * @param wireBytes    bytes read from the socket
+     * @param decodedBytes bytes of JSON after gzip decoding
+     */
+    static void recordResponse(long wireBytes, long decodedBytes) {
+        sRequests.incrementAndGet();
+        sBytesReceived.addAndGet(wireBytes);
+        sBytesSaved.addAndGet(Math.max(0, decodedBytes - wireBytes));
+    }
+
+    /**
+     * Record a 304 response.
+     *
+     * @param previousPayloadBytes size of the body that did not have to be downloaded again
+     */
+    static void recordNotModified(long previousPayloadBytes) {
+        sRequests.incrementAndGet();
+        sNotModified.incrementAndGet();
+        sBytesSaved.addAndGet(previousPayloadBytes);
+    }
+
+    /**
+     * Record a request that shared the response of an identical one already in flight.
+     */
+    static void recordCoalesced() {
+        sCoalesced.incrementAndGet();
+    }
+
+    public static long getRequestCount() {
+        return sRequests.get();
+    }
+
+    public static long getNotModifiedCount() {
+        return sNotModified.get();
+    }
+
+    public static long getBytesReceived() {
+        return sBytesReceived.get();
+    }
+
+    public static long getBytesSaved() {
+        return sBytesSaved.get();
+    }
+
+    public static long getCoalescedCount() {
+        return sCoalesced.get();
+    }
+
+    /**
+     * Return the share of requests answered with 304, between 0 and 1.
+     */
+    public static double getNotModifiedRate() {
+        long requests = sRequests.get();
+        return requests == 0 ? 0 : (double) sNotModified.get() / requests;
+    }
+
+    /**
+     * Return a one line summary for the logs.
+     */
+    public static String summary() {
+        return String.format(Locale.US, "requests=%d, coalesced=%d, 304 hit rate=%.0f%%, received=%d B, saved=%d B",
+                getRequestCount(), getCoalescedCount(), getNotModifiedRate() * 100, getBytesReceived(), getBytesSaved());
+    }
+}
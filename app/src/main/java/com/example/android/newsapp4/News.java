@@ -1,23 +1,31 @@
 package com.example.android.newsapp4;
 
-import android.util.Log;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
-
 /**
  * {@link News} represents a news article with its data.
- * It contains the news title, section name, author if available, time if available and weblink url
+ * It contains the news title, section name, author if available, time if available, weblink url,
+ * thumbnail url and tags if available
+ * <p>
+ * Thousands of these stay in memory (the list, the search index), so an article keeps the title
+ * once (split into its display parts), its time as a long and shares the String of its section
+ * and author with the other articles through {@link StringPool}.
  */
 public class News {
 
     /**
-     * News title (webTitle)
+     * Time of an article without webPublicationDate, or with one of another form than 2018-05-27T08:00:20Z
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    /**
+     * News title (webTitle) without the author part after a |, as shown in the list.
+     * The full title is not kept: it is rebuilt from this and {@link #mTitleByline} when asked for
      **/
-    private String mTitle;
+    private String mDisplayTitle;
+
+    /**
+     * Author part of the title, after the first " | ", or null if the title has none
+     */
+    private String mTitleByline;
 
     /**
      * News section name (sectionName)
@@ -25,9 +33,14 @@ public class News {
     private String mSectionName;
 
     /**
-     * News time (webPublicationDate) in format: 2018-05-27T08:00:20Z
+     * News time (webPublicationDate) in epoch milliseconds, or {@link #NO_TIME}
      **/
-    private String mTime;
+    private long mTimeMillis = NO_TIME;
+
+    /**
+     * News time as received, only kept when it could not be parsed into {@link #mTimeMillis}
+     */
+    private String mRawTime;
 
     /**
      * Article URL (webUrl)
@@ -39,6 +52,26 @@ public class News {
      */
     private String mAuthor;
 
+    /**
+     * URL of the article's thumbnail image (fields.thumbnail), or null if it has none
+     */
+    private String mThumbnailUrl;
+
+    /**
+     * Contributors, keywords and series of the article, or null if it has none
+     */
+    private NewsTags mTags;
+
+    /**
+     * Local time as shown in the list, formatted in {@link #mDisplayTimeGeneration}
+     */
+    private String mDisplayTime;
+
+    /**
+     * {@link NewsTimeFormatter#generation()} in which mDisplayTime was formatted
+     */
+    private int mDisplayTimeGeneration;
+
     /**
      * Constructor that has exactly the same name as its class
      *
@@ -49,11 +82,60 @@ public class News {
      * @param newsUrl         News Url
      */
     public News(String newsTitle, String newsAuthor, String newsSectionName, String newsTimestamp, String newsUrl) {
-        mTitle = newsTitle;
+        this(newsTitle, newsAuthor, newsSectionName, newsTimestamp, newsUrl, null);
+    }
+
+    /**
+     * Constructor that has exactly the same name as its class, with a thumbnail
+     *
+     * @param newsTitle        The news title, may contain an author name after a |
+     * @param newsAuthor       Author name
+     * @param newsSectionName  Section name or names
+     * @param newsTimestamp    Time the article was posted in format: 2018-05-27T08:00:20Z
+     * @param newsUrl          News Url
+     * @param newsThumbnailUrl Url of the thumbnail image, or null
+     */
+    public News(String newsTitle, String newsAuthor, String newsSectionName, String newsTimestamp, String newsUrl,
+                String newsThumbnailUrl) {
+        mAuthor = newsAuthor;
+        mSectionName = newsSectionName;
+        setTimestamp(newsTimestamp);
+        mUrl = newsUrl;
+        mThumbnailUrl = newsThumbnailUrl;
+        computeDisplayFields(newsTitle);
+    }
+
+    /**
+     * Constructor that has exactly the same name as its class, with the time already parsed
+     *
+     * @param newsTitle       The news title, may contain an author name after a |
+     * @param newsAuthor      Author name
+     * @param newsSectionName Section name or names
+     * @param newsTimeMillis  Time the article was posted in epoch milliseconds, or {@link #NO_TIME}
+     * @param newsUrl         News Url
+     */
+    public News(String newsTitle, String newsAuthor, String newsSectionName, long newsTimeMillis, String newsUrl) {
+        this(newsTitle, newsAuthor, newsSectionName, newsTimeMillis, newsUrl, null);
+    }
+
+    /**
+     * Constructor that has exactly the same name as its class, with the time already parsed and a thumbnail
+     *
+     * @param newsTitle        The news title, may contain an author name after a |
+     * @param newsAuthor       Author name
+     * @param newsSectionName  Section name or names
+     * @param newsTimeMillis   Time the article was posted in epoch milliseconds, or {@link #NO_TIME}
+     * @param newsUrl          News Url
+     * @param newsThumbnailUrl Url of the thumbnail image, or null
+     */
+    public News(String newsTitle, String newsAuthor, String newsSectionName, long newsTimeMillis, String newsUrl,
+                String newsThumbnailUrl) {
         mAuthor = newsAuthor;
         mSectionName = newsSectionName;
-        mTime = newsTimestamp;
+        mTimeMillis = newsTimeMillis;
         mUrl = newsUrl;
+        mThumbnailUrl = newsThumbnailUrl;
+        computeDisplayFields(newsTitle);
     }
 
     /**
@@ -65,10 +147,10 @@ public class News {
      * @param newsUrl         News Url
      */
     public News(String newsTitle, String newsSectionName, String newsTimestamp, String newsUrl) {
-        mTitle = newsTitle;
         mSectionName = newsSectionName;
-        mTime = newsTimestamp;
+        setTimestamp(newsTimestamp);
         mUrl = newsUrl;
+        computeDisplayFields(newsTitle);
     }
 
     /**
@@ -79,9 +161,9 @@ public class News {
      * @param newsUrl         News Url
      */
     public News(String newsTitle, String newsSectionName, String newsUrl) {
-        mTitle = newsTitle;
         mSectionName = newsSectionName;
         mUrl = newsUrl;
+        computeDisplayFields(newsTitle);
     }
 
     /**
@@ -91,7 +173,10 @@ public class News {
      * @return Title with or without author
      */
     public String getNewsTitle() {
-        return mTitle;
+        if (mTitleByline == null) {
+            return mDisplayTitle;
+        }
+        return mDisplayTitle + " | " + mTitleByline;
     }
 
     /**
@@ -100,32 +185,92 @@ public class News {
      * @return String of style: 2018-05-27T08:00:20Z
      */
     public String getTimestamp() {
-        return mTime;
+        return mTimeMillis != NO_TIME ? NewsTimeFormatter.formatUtc(mTimeMillis) : mRawTime;
     }
 
     /**
-     * Method: get timestamp of article
+     * Method: get time of article
      *
-     * @return String of style: 2018-05-27T08:00:20Z
+     * @return epoch milliseconds, or {@link #NO_TIME}
+     */
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    /**
+     * Method: get timestamp of article in the user's timezone
+     *
+     * @return String of style: 2018-05-27 11:00
      */
     public String getSimpleTimestamp() {
+        return getDisplayTime();
+    }
+
+    /**
+     * Method: get the title to show, without the author part
+     *
+     * @return Title without " | author"
+     */
+    public String getDisplayTitle() {
+        return mDisplayTitle == null ? "" : mDisplayTitle;
+    }
+
+    /**
+     * Method: get the byline to show
+     *
+     * @return Author name, the author part of the title, or an empty String
+     */
+    public String getDisplayByline() {
+        /* Prefer the Author name from the tags, otherwise the one from the title */
+        if (mAuthor != null && !mAuthor.isEmpty()) {
+            return mAuthor;
+        }
+        return mTitleByline == null ? "" : mTitleByline;
+    }
+
+    /**
+     * Method: get the local time to show, formatted when the article was parsed
+     * and again only if the timezone or locale changed since
+     *
+     * @return String of style: 2018-05-27 11:00
+     */
+    public String getDisplayTime() {
+        if (mDisplayTimeGeneration != NewsTimeFormatter.generation()) {
+            mDisplayTimeGeneration = NewsTimeFormatter.generation();
+            mDisplayTime = formatDisplayTime();
+        }
+        return mDisplayTime;
+    }
+
+    /**
+     * Keep the time as epoch milliseconds, or as received if it has an unexpected form.
+     */
+    private void setTimestamp(String timestamp) {
+        mTimeMillis = NewsTimeFormatter.parseUtc(timestamp);
+        if (mTimeMillis == NO_TIME) {
+            mRawTime = timestamp;
+        }
+    }
+
+    private String formatDisplayTime() {
+        return mTimeMillis != NO_TIME ? NewsTimeFormatter.format(mTimeMillis) : NewsTimeFormatter.format(mRawTime);
+    }
 
-        // Get the time String with specific pattern
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-        // Set the timezone of the article
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        // Set output format for time string
-        SimpleDateFormat output = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
-        // Change timezone to be displayed at user's phone timezone
-        output.setTimeZone(TimeZone.getDefault());
-        try {
-            Date d = sdf.parse(mTime);
-            String formattedTime = output.format(d);
-            return formattedTime;
-        } catch (ParseException e) {
-            Log.v("News", "date parse excetion error");
+    /**
+     * Split the title and format the time once, on the thread that creates the article,
+     * so binding a row only reads ready-made Strings.
+     */
+    private void computeDisplayFields(String title) {
+        /* Split the title if there is a "|" character, otherwise there is no title byline */
+        int separator = title == null ? -1 : title.indexOf(" | ");
+        if (separator >= 0) {
+            mDisplayTitle = title.substring(0, separator);
+            mTitleByline = title.substring(separator + 3);
+        } else {
+            mDisplayTitle = title;
         }
-        return mTime;
+        mDisplayTimeGeneration = NewsTimeFormatter.generation();
+        mDisplayTime = formatDisplayTime();
     }
 
     /**
@@ -154,4 +299,62 @@ public class News {
     public String getUrl() {
         return mUrl;
     }
+
+    /**
+     * Method: get the URL of the thumbnail
+     *
+     * @return String URL, or null if the article has no thumbnail
+     */
+    public String getThumbnailUrl() {
+        return mThumbnailUrl;
+    }
+
+    /**
+     * Method: get the tags (contributors, keywords and series)
+     *
+     * @return the tags, or null if the article has none
+     */
+    public NewsTags getTags() {
+        return mTags;
+    }
+
+    /**
+     * Set the tags, only while the article is being built (by the parser or a {@link NewsBatch}).
+     */
+    void setTags(NewsTags tags) {
+        mTags = tags;
+    }
+
+    /**
+     * Two articles are equal when every field they show is equal.
+     * Used to tell whether a fresh response differs from the cached one.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof News)) {
+            return false;
+        }
+        News other = (News) o;
+        return mTimeMillis == other.mTimeMillis
+                && equalOrNull(mDisplayTitle, other.mDisplayTitle)
+                && equalOrNull(mTitleByline, other.mTitleByline)
+                && equalOrNull(mAuthor, other.mAuthor)
+                && equalOrNull(mSectionName, other.mSectionName)
+                && equalOrNull(mRawTime, other.mRawTime)
+                && equalOrNull(mUrl, other.mUrl)
+                && equalOrNull(mThumbnailUrl, other.mThumbnailUrl)
+                && (mTags == null ? other.mTags == null : mTags.equals(other.mTags));
+    }
+
+    @Override
+    public int hashCode() {
+        return mUrl != null ? mUrl.hashCode() : 0;
+    }
+
+    private static boolean equalOrNull(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -1,89 +1,157 @@
 package com.example.android.newsapp4;
 
-import android.app.LoaderManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.Loader;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
-import android.preference.PreferenceManager;
+import android.content.DialogInterface;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class NewsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<ArrayList<News>> {
+public class NewsActivity extends AppCompatActivity {
 
     public static final String LOG_TAG = NewsActivity.class.getName();
 
-    /** URL for news data from the Guardian dataset */
-    private static final String ONLINE_JSON_URL = "https://content.guardianapis.com/search";
     private static final String FULL_ONLINE_JSON_URL = "https://content.guardianapis.com/search?q=technology%20AND%20android&show-tags=contributor&page-size=20&from-date=2018-01-01&api-key=10ae015c-6c0c-4023-b776-71b81c829b45";
-    private static final String GUARDIAN_KEY = "10ae015c-6c0c-4023-b776-71b81c829b45";
-    /**
-     * Constant value for the news loader ID. We can choose any integer.
-     * This really only comes into play if you're using multiple loaders.
-     */
-    private static final int NEWS_LOADER_ID = 1;
+    /** Load the next (or previous) page when the user gets this close to the end (or start) of the list */
+    private static final int PAGING_THRESHOLD = 5;
+    /** Most search results shown at once */
+    private static final int SEARCH_LIMIT = 100;
     private TextView mEmptyTextView;
     private ProgressBar mProgressBar;
+    /** Placeholder rows shown until the first articles are */
+    private View mSkeletonView;
+    /** Delivers the changes of the order-by and topic preferences */
+    private NewsPreferences mPreferences;
+    /** Query URLs of the first page, one per topic, built from the preferences */
+    private ArrayList<String> mQueryUrls;
+    /** Number of articles the query URLs ask for per page, chosen for the network when they were built */
+    private int mPageSize;
+    /** Key of the first page's load in the {@link NewsLoadEngine} */
+    private String mLoadKey;
+    /** Loads the pages after the first one while the user scrolls */
+    private NewsPager mPager;
+    private NewsAdapter mAdapter;
+    /** Articles currently handed to the adapter */
+    private ArrayList<News> mNewsArticles = new ArrayList<News>();
+    /** Whether the list shows search results instead of the loaded pages */
+    private boolean mSearching;
+    /** Id of the tag the list is filtered by, null when it shows every loaded article */
+    private String mFilterTagId;
+    /**
+     * Tags of the loaded articles: the indexes of the first page and of the pages, built with them
+     * off the main thread, added as they are shown and kept up to date as articles are dropped
+     */
+    private NewsTagIndex mTagIndex = new NewsTagIndex();
+    /** Latest search query, results of older ones are dropped */
+    private volatile String mSearchQuery;
+    /** Searches the index off the main thread, one query at a time */
+    private final ExecutorService mSearchExecutor = Executors.newSingleThreadExecutor();
+    private LinearLayoutManager mLayoutManager;
+    /** Downloads the text of the visible articles for the reader */
+    private ArticlePrefetcher mPrefetcher;
+    /** Whether a prefetch waits for the main thread to be idle */
+    private boolean mPrefetchScheduled;
 
-    @Override
-    public Loader<ArrayList<News>> onCreateLoader(int id, Bundle args) {
-        // Create a new loader for the given URL
-
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-        // getString retrieves a String value from the preferences. The second parameter is the default value for this preference.
-        String orderBy = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default));
-
-        String topicChoice = sharedPrefs.getString(
-                getString(R.string.settings_topic_key),
-                getString(R.string.settings_topic_default));
-
-        // parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(ONLINE_JSON_URL);
+    /**
+     * Re-formats the display times of the articles when the timezone or the locale changes.
+     */
+    private final BroadcastReceiver mTimeFormatReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            NewsTimeFormatter.invalidate();
+            if (mAdapter != null) {
+                mAdapter.notifyDataSetChanged();
+            }
+        }
+    };
 
-        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+    /**
+     * Receives the first page from the {@link NewsLoadEngine}: the cached one, early ones and the fresh one.
+     */
+    private final NewsLoadEngine.Observer mNewsObserver = new NewsLoadEngine.Observer() {
+        @Override
+        public void onNewsLoaded(ArrayList<News> newsArticles) {
+            onLoadFinished(newsArticles);
+        }
+    };
 
-        // Append query parameter and its value. For example, the `page-size=20`
-        uriBuilder.appendQueryParameter("q", "technology AND " + topicChoice);
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        uriBuilder.appendQueryParameter("show-tags", "contributor");
-        uriBuilder.appendQueryParameter("page-size", "20");
-        uriBuilder.appendQueryParameter("from-date", "2018-01-01");
-        uriBuilder.appendQueryParameter("api-key", GUARDIAN_KEY);
-        mProgressBar.setVisibility(View.VISIBLE);
-        mEmptyTextView.setText(getResources().getText(R.string.communicating));//"Communicating with the journalists. Please wait..."
-        return new NewsLoader(this, uriBuilder.toString());
-    }
+    /**
+     * Reloads only what a change of the preferences needs: another order re-sorts the first page on
+     * the device, other topics show their cached articles first and then revalidate them.
+     */
+    private final NewsPreferences.Observer mQueryObserver = new NewsPreferences.Observer() {
+        @Override
+        public void onQueryChanged(NewsPreferences.Query previous, NewsPreferences.Query current) {
+            ArrayList<News> sortedFirstPage = null;
+            int firstPageSize = mPager.getFirstPageSize();
+            if (!current.hasOtherTopics(previous) && firstPageSize > 0 && firstPageSize <= mNewsArticles.size()) {
+                /* Same articles in another order, no request needed */
+                sortedFirstPage = NewsOrdering.sort(mNewsArticles.subList(0, firstPageSize),
+                        current.getOrderBy(), current.getTopics());
+            }
+            switchQuery(NewsQuery.buildQueryUrls(current), sortedFirstPage);
+        }
+    };
 
-    @Override
-    public void onLoaderReset(Loader<ArrayList<News>> loader) {
-        Log.v("onLoaderReset", "Loader reset: Cleaning UI...");
-        cleanUi();
-    }
+    /**
+     * Starts the list once the preferences have been read off the main thread.
+     */
+    private final NewsStartup.Callback mStartupCallback = new NewsStartup.Callback() {
+        @Override
+        public void onReady(NewsPreferences.Query query, ArrayList<String> queryUrls) {
+            mPreferences = new NewsPreferences(NewsActivity.this);
+            mPreferences.observe(mQueryObserver, query);
+            mQueryUrls = queryUrls;
+            mPageSize = NewsQuery.getPageSize(queryUrls.get(0));
+            mPager = createPager();
+            // Attach to the load of the first page: on a cold start it began while this screen was
+            // being inflated, after a rotation it is the result (or the load in flight) of the
+            // previous activity. It shows the cached news first and only then goes to the network
+            mLoadKey = mQueryUrls.toString();
+            NewsLoadEngine.getInstance().attach(mLoadKey, new NewsLoader(NewsActivity.this, mQueryUrls), mNewsObserver);
+        }
+    };
 
-    @Override
-    public void onLoadFinished(Loader<ArrayList<News>> loader, ArrayList<News> newsArticles) {
+    private void onLoadFinished(ArrayList<News> newsArticles) {
+        mSkeletonView.setVisibility(View.GONE);
+        NewsStartup.onFullDisplay(this);
+        // Only asked when nothing could be loaded, the answer is not needed before
+        if (newsArticles == null && !isConnected()) {
+            // Nothing cached and no network to fetch from: hide loading indicator and display error
+            mProgressBar.setVisibility(View.GONE);
+            mEmptyTextView.setText(getResources().getText(R.string.no_network));//"No network connection");
+            return;
+        }
         if (newsArticles == null) {
+            mProgressBar.setVisibility(View.VISIBLE);
             mEmptyTextView.setText(getResources().getText(R.string.communicating));//"Communicating with the journalists. Please wait..."
             return;
         }
         mProgressBar.setVisibility(View.GONE);
-        cleanUi();
         mEmptyTextView.setText(getResources().getText(R.string.no_news_found));//"No recent technology news found");
         updateUi(newsArticles);
     }
@@ -91,29 +159,48 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // The preferences and the first page are read on a background thread since the application
+        // was created, nothing here waits for the disk or the network
         setContentView(R.layout.activity_news);
 
         mEmptyTextView = (TextView) findViewById(R.id.empty_view);
         mProgressBar = (ProgressBar) findViewById(R.id.loading_progress);
+        mSkeletonView = findViewById(R.id.skeleton_list);
+        setUpList();
+        IntentFilter timeFormatFilter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        timeFormatFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        registerReceiver(mTimeFormatReceiver, timeFormatFilter);
+
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                NewsStartup.onInitialDisplay();
+                return true;
+            }
+        });
+        // Usually ready by now: the cached first page, published while inflating, is then posted
+        // ahead of the first frame. Otherwise the first frame shows the skeleton
+        NewsStartup.whenReady(this, mStartupCallback);
+    }
 
+    /**
+     * Return whether there is a network connection now.
+     */
+    private boolean isConnected() {
         // Get a reference to the ConnectivityManager to check state of network connectivity
         ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
         // Get details on the currently active default data network
         NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(NEWS_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            mProgressBar.setVisibility(View.GONE);
-            mEmptyTextView.setText(getResources().getText(R.string.no_network));//"No network connection");
-        }
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Coming back after a while: refresh the first page, a recent one is kept as it is
+        NewsLoadEngine.getInstance().reloadIfStale(mLoadKey);
     }
 
     /**
@@ -125,42 +212,328 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
         Log.v("MainActivity", "onResume");
     }
 
-    private void updateUi(final ArrayList<News> newsArticles) {
-        // Create a new custom {@link NewsAdapter} of news articles
-        NewsAdapter adapter = new NewsAdapter(this, newsArticles);
-        int eqCount = newsArticles.size();
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = (ListView) findViewById(R.id.list);
-        // Set the adapter on the {@link ListView}
+    /**
+     * Set up the RecyclerView and its adapter, and the paging while scrolling. The pager itself is
+     * created once the query is known.
+     */
+    private void setUpList() {
+        // Create a new custom {@link NewsAdapter}, lists are handed to it in updateUi
+        mAdapter = new NewsAdapter(new NewsAdapter.OnNewsClickListener() {
+            @Override
+            public void onNewsClick(News currentArticle) {
+                /** open the article in the reader, its text is usually prefetched already */
+                startActivity(ReaderActivity.newIntent(NewsActivity.this, currentArticle));
+            }
+
+            @Override
+            public boolean onNewsLongClick(News currentArticle) {
+                /* offer the article's authors and tags, to show the loaded news that share one */
+                return showFilterChoices(currentArticle);
+            }
+        }, ThumbnailLoader.getInstance(this));
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView newsListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mLayoutManager = layoutManager;
+        mPrefetcher = new ArticlePrefetcher(this, ArticleBodyStore.getInstance(this));
+        newsListView.setLayoutManager(layoutManager);
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
-        newsListView.setAdapter(adapter);
-        newsListView.setEmptyView(mEmptyTextView);
-        newsListView.setOnItemClickListener(
-                new AdapterView.OnItemClickListener() {
+        newsListView.setAdapter(mAdapter);
+
+        newsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    schedulePrefetch();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                if (totalItemCount == 0 || mPager == null || mSearching || mFilterTagId != null) {
+                    return;
+                }
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PAGING_THRESHOLD) {
+                    mPager.loadNext();
+                } else if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PAGING_THRESHOLD) {
+                    mPager.loadPrevious();
+                }
+            }
+        });
+    }
+
+    /**
+     * Create the pager of the current query URLs, it adds the pages after the first one to the list.
+     */
+    private NewsPager createPager() {
+        return new NewsPager(mQueryUrls, NewsCache.getInstance(this), new NewsPager.Listener() {
+            @Override
+            public void onPageAppended(ArrayList<News> page, int droppedFromTop) {
+                ArrayList<News> newsArticles = new ArrayList<News>(mNewsArticles.size() - droppedFromTop + page.size());
+                newsArticles.addAll(mNewsArticles.subList(droppedFromTop, mNewsArticles.size()));
+                for (News news : mNewsArticles.subList(0, droppedFromTop)) {
+                    mTagIndex.remove(news);
+                }
+                mTagIndex.addAll(tagIndexOf(page));
+                /* A first page sorted on the device may already hold articles of the next page */
+                HashSet<String> shownUrls = new HashSet<String>();
+                for (News news : newsArticles) {
+                    shownUrls.add(news.getUrl());
+                }
+                for (News news : page) {
+                    if (shownUrls.add(news.getUrl())) {
+                        newsArticles.add(news);
+                    } else {
+                        mTagIndex.remove(news);
+                    }
+                }
+                showList(newsArticles);
+            }
+
+            @Override
+            public void onPagePrepended(ArrayList<News> page, int droppedFromBottom) {
+                ArrayList<News> newsArticles = new ArrayList<News>(page.size() + mNewsArticles.size() - droppedFromBottom);
+                newsArticles.addAll(page);
+                newsArticles.addAll(mNewsArticles.subList(0, mNewsArticles.size() - droppedFromBottom));
+                for (News news : mNewsArticles.subList(mNewsArticles.size() - droppedFromBottom, mNewsArticles.size())) {
+                    mTagIndex.remove(news);
+                }
+                mTagIndex.addAllFirst(tagIndexOf(page));
+                showList(newsArticles);
+            }
+        });
+    }
+
+    /**
+     * Show the first page of other query URLs instead of the current ones.
+     *
+     * @param queryUrls      the new query URLs, one per topic
+     * @param sortedFirstPage the current first page sorted for the new query when only the order
+     *                        changed, shown without a load; null to load the new first page
+     */
+    private void switchQuery(ArrayList<String> queryUrls, ArrayList<News> sortedFirstPage) {
+        NewsLoadEngine engine = NewsLoadEngine.getInstance();
+        engine.detach(mLoadKey, mNewsObserver, true);
+        mPager.release();
+        mQueryUrls = queryUrls;
+        mPageSize = NewsQuery.getPageSize(queryUrls.get(0));
+        mLoadKey = queryUrls.toString();
+        mPager = createPager();
+        if (mFilterTagId != null) {
+            /* The tag may not be in the new articles */
+            filter(null, null);
+        }
+        /* The old rows stay on screen until the new first page replaces them */
+        mNewsArticles = new ArrayList<News>();
+        mTagIndex = new NewsTagIndex();
+        if (sortedFirstPage != null) {
+            engine.seed(mLoadKey, sortedFirstPage);
+        } else {
+            mProgressBar.setVisibility(View.VISIBLE);
+            mEmptyTextView.setText(getResources().getText(R.string.communicating));
+        }
+        // Shows the cached articles of the new topics first, like on start, then revalidates them
+        engine.attach(mLoadKey, new NewsLoader(this, mQueryUrls), mNewsObserver);
+    }
+
+    /**
+     * Show a (new) first page. While the first page is still in the pager's window only its rows
+     * are replaced and the pages after it are kept; the adapter animates just the rows that changed.
+     */
+    private void updateUi(ArrayList<News> firstPage) {
+        int oldFirstPageSize = mPager.getFirstPageSize();
+        if (!mPager.onFirstPageLoaded(firstPage.size(), mPageSize)) {
+            /* The user scrolled past the first page, it will be read from the cache when scrolling back */
+            return;
+        }
+        ArrayList<News> newsArticles = new ArrayList<News>(firstPage);
+        if (oldFirstPageSize > 0 && oldFirstPageSize <= mNewsArticles.size()) {
+            /* Keep the pages after the first one, without the articles that moved into the new first page */
+            HashSet<String> firstPageUrls = new HashSet<String>();
+            for (News news : firstPage) {
+                firstPageUrls.add(news.getUrl());
+            }
+            for (News news : mNewsArticles.subList(0, oldFirstPageSize)) {
+                mTagIndex.remove(news);
+            }
+            for (News news : mNewsArticles.subList(oldFirstPageSize, mNewsArticles.size())) {
+                if (!firstPageUrls.contains(news.getUrl())) {
+                    newsArticles.add(news);
+                } else {
+                    mTagIndex.remove(news);
+                }
+            }
+        } else {
+            mTagIndex = new NewsTagIndex();
+        }
+        mTagIndex.addAllFirst(tagIndexOf(firstPage));
+        showList(newsArticles);
+    }
+
+    /**
+     * Hand the list to the adapter, the difference with the current one is computed off the main thread.
+     * The lists are never modified once submitted, every change builds a new one.
+     */
+    private void showList(ArrayList<News> newsArticles) {
+        mNewsArticles = newsArticles;
+        if (mSearching) {
+            /* Shown again when the search is closed */
+            return;
+        }
+        List<News> shownArticles = newsArticles;
+        if (mFilterTagId != null) {
+            /* A copy: the index changes with the next page */
+            shownArticles = new ArrayList<News>(mTagIndex.lookUp(mFilterTagId));
+        }
+        mAdapter.submitList(shownArticles);
+        mEmptyTextView.setVisibility(shownArticles.isEmpty() ? View.VISIBLE : View.GONE);
+        schedulePrefetch();
+    }
+
+    /**
+     * Return the tag index of a delivered list: built with it off the main thread, except for a
+     * first page sorted on the device (see {@link #mQueryObserver}), indexed here.
+     */
+    private static NewsTagIndex tagIndexOf(List<News> newsArticles) {
+        return newsArticles instanceof NewsList ? ((NewsList) newsArticles).getTagIndex()
+                : NewsTagIndex.build(newsArticles);
+    }
+
+    /**
+     * Offer the contributors, keywords and series of the article; choosing one shows only the
+     * loaded articles that have it. Return false if the article has no tags.
+     */
+    private boolean showFilterChoices(News news) {
+        final NewsTags tags = news.getTags();
+        if (tags == null || mSearching) {
+            return false;
+        }
+        CharSequence[] labels = new CharSequence[tags.size()];
+        for (int i = 0; i < tags.size(); i++) {
+            int label = tags.getType(i) == NewsTags.CONTRIBUTOR ? R.string.filter_contributor
+                    : tags.getType(i) == NewsTags.SERIES ? R.string.filter_series : R.string.filter_keyword;
+            labels[i] = getString(label, tags.getTitle(i));
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_title)
+                .setItems(labels, new DialogInterface.OnClickListener() {
                     @Override
-                    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                        /** get the {@link Earthquake} object at the current position where the user clicked on */
-                        News currentArticle = newsArticles.get(position);
-                        /** get the url from the current article */
-                        String url = currentArticle.getUrl();
-                        /** create a browser intent */
-                        Intent browserIntent = new Intent(Intent.ACTION_VIEW);
-                        /** set the URL and send it to the browser */
-                        browserIntent.setData(Uri.parse(url));
-                        /** start browser */
-                        startActivity(browserIntent);
+                    public void onClick(DialogInterface dialog, int which) {
+                        filter(tags.getId(which), tags.getTitle(which));
                     }
+                })
+                .show();
+        return true;
+    }
+
+    /**
+     * Show only the loaded articles with the tag (all of them for a null tag id), titled with the tag.
+     */
+    private void filter(String tagId, String title) {
+        mFilterTagId = tagId;
+        setTitle(tagId != null ? title : getString(R.string.app_name));
+        showList(mNewsArticles);
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (mFilterTagId != null) {
+            /* Back from the filtered list to every loaded article */
+            filter(null, null);
+            return;
+        }
+        super.onBackPressed();
+    }
+
+    /**
+     * Prefetch the text of the visible articles (and of a few below them on a fast network) once
+     * the main thread has nothing else to do, i.e. after the list has been laid out and bound.
+     */
+    private void schedulePrefetch() {
+        if (mPrefetchScheduled || mPrefetcher == null) {
+            return;
+        }
+        mPrefetchScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                mPrefetchScheduled = false;
+                int first = mLayoutManager.findFirstVisibleItemPosition();
+                int last = mLayoutManager.findLastVisibleItemPosition();
+                int ahead = NetworkPolicy.getInstance().getConnectionClass().getBodiesPrefetchedAhead();
+                if (mPrefetcher != null && first != RecyclerView.NO_POSITION && ahead >= 0) {
+                    mPrefetcher.prefetch(mAdapter.getArticles(first, last + ahead));
+                }
+                /* Run once */
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Search the articles saved on the device, without a request, and show the newest matches.
+     */
+    private void search(final String query) {
+        mSearchQuery = query;
+        final NewsSearchIndex searchIndex = NewsSearchIndex.getInstance(this);
+        mSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!query.equals(mSearchQuery)) {
+                    /* The user kept typing, only the latest query matters */
+                    return;
                 }
-        );
+                final ArrayList<News> results = searchIndex.search(query, SEARCH_LIMIT);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mSearching && query.equals(mSearchQuery)) {
+                            mAdapter.submitList(results);
+                            mEmptyTextView.setText(getResources().getText(R.string.no_search_results));
+                            mEmptyTextView.setVisibility(results.isEmpty() ? View.VISIBLE : View.GONE);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        unregisterReceiver(mTimeFormatReceiver);
+        NewsStartup.cancel(mStartupCallback);
+        if (mPreferences != null) {
+            mPreferences.release();
+        }
+        // Keep the load running for the recreated activity, cancel it (and its requests) otherwise
+        NewsLoadEngine.getInstance().detach(mLoadKey, mNewsObserver, !isChangingConfigurations());
+        mSearchExecutor.shutdownNow();
+        if (mPager != null) {
+            mPager.release();
+            mPager = null;
+        }
+        if (mPrefetcher != null) {
+            mPrefetcher.release();
+            mPrefetcher = null;
+        }
     }
 
     /**
-     * Method to clean the UI (and adapter)
+     * Add the pipeline metrics to {@code adb shell dumpsys activity com.example.android.newsapp4}.
      */
-    private void cleanUi() {
-        ListView newsListView = (ListView) findViewById(R.id.list);
-        newsListView.setAdapter(null);
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("NewsMetrics:");
+        for (String line : NewsMetrics.dump().split("\n")) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(line);
+        }
     }
 
     @Override
@@ -168,9 +541,52 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the Options Menu we specified in XML
         getMenuInflater().inflate(R.menu.main, menu);
+        setUpSearch(menu.findItem(R.id.action_search));
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
+    /**
+     * While the search is open the list shows the matching saved articles instead of the loaded pages.
+     */
+    private void setUpSearch(MenuItem searchItem) {
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_title));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            /** Text of the empty view before the search, shown again after it */
+            private CharSequence mEmptyText;
+
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                mSearching = true;
+                mEmptyText = mEmptyTextView.getText();
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mSearching = false;
+                mSearchQuery = null;
+                mEmptyTextView.setText(mEmptyText);
+                showList(mNewsArticles);
+                return true;
+            }
+        });
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         int id = item.getItemId();
@@ -179,6 +595,10 @@ public class NewsActivity extends AppCompatActivity implements LoaderManager.Loa
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 }
@@ -1,71 +1,145 @@
 package com.example.android.newsapp4;
 
-import android.app.Activity;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.util.Log;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import java.util.ArrayList;
 
-public class NewsAdapter extends ArrayAdapter<News> {
+/**
+ * {@link NewsAdapter} binds {@link News} articles to the rows of a RecyclerView.
+ * New lists are handed in with {@link #submitList}: the difference with the current list is
+ * computed on a background thread, keyed on {@link News#getUrl()}, so only the rows that
+ * changed are re-bound and animated and the scroll position is kept.
+ * <p>
+ * Thumbnails are loaded by the {@link ThumbnailLoader}; a recycled row cancels its request.
+ */
+public class NewsAdapter extends ListAdapter<News, NewsAdapter.NewsViewHolder> {
 
-    public NewsAdapter(Activity context, ArrayList<News> newsArticles) {
-        super(context, 0, newsArticles);
+    /**
+     * Receives clicks and long clicks on the rows.
+     */
+    public interface OnNewsClickListener {
+        void onNewsClick(News news);
+
+        /**
+         * @return whether the long click was consumed
+         */
+        boolean onNewsLongClick(News news);
+    }
+
+    /**
+     * Two rows hold the same article when the URLs match; its content changed when any field differs.
+     */
+    private static final DiffUtil.ItemCallback<News> DIFF_CALLBACK = new DiffUtil.ItemCallback<News>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull News oldItem, @NonNull News newItem) {
+            return oldItem.getUrl() != null && oldItem.getUrl().equals(newItem.getUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull News oldItem, @NonNull News newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final OnNewsClickListener mListener;
+    private final ThumbnailLoader mThumbnailLoader;
+
+    public NewsAdapter(OnNewsClickListener listener, ThumbnailLoader thumbnailLoader) {
+        super(DIFF_CALLBACK);
+        mListener = listener;
+        mThumbnailLoader = thumbnailLoader;
     }
 
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        //return super.getView(position, convertView, parent);
-        /* Check if the existing view is being reused, otherwise inflate the view */
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(R.layout.list_item, parent, false);
+    public NewsViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        return new NewsViewHolder(listItemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull NewsViewHolder holder, int position) {
+        long bindStart = NewsMetrics.startBind();
+        holder.bind(getItem(position));
+        NewsMetrics.end(NewsMetrics.Span.BIND, bindStart);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull NewsViewHolder holder) {
+        /* The row left the screen, its thumbnail isn't wanted anymore */
+        mThumbnailLoader.clear(holder.mThumbnailView);
+    }
+
+    /**
+     * Return the articles of the rows from first to last (both included), e.g. the visible ones.
+     */
+    public ArrayList<News> getArticles(int first, int last) {
+        ArrayList<News> articles = new ArrayList<News>(Math.max(0, last - first + 1));
+        for (int position = Math.max(0, first); position <= last && position < getItemCount(); position++) {
+            articles.add(getItem(position));
+        }
+        return articles;
+    }
+
+    /**
+     * Holds the views of one row, looked up once when the row is created.
+     */
+    class NewsViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
+        private final TextView mTitleTextView;
+        private final TextView mAuthorTextView;
+        private final TextView mSectionTextView;
+        private final TextView mTimeTextView;
+        private final ImageView mThumbnailView;
+        /** Size the thumbnail is decoded at, the fixed size of its view */
+        private final int mThumbnailWidth;
+        private final int mThumbnailHeight;
+
+        NewsViewHolder(View listItemView) {
+            super(listItemView);
+            /* Find the TextViews in the list_item.xml layout once per row, not once per bind */
+            mTitleTextView = (TextView) listItemView.findViewById(R.id.news_title);
+            mAuthorTextView = (TextView) listItemView.findViewById(R.id.author_name);
+            mSectionTextView = (TextView) listItemView.findViewById(R.id.section_name);
+            mTimeTextView = (TextView) listItemView.findViewById(R.id.time_stamp);
+            mThumbnailView = (ImageView) listItemView.findViewById(R.id.news_thumbnail);
+            mThumbnailWidth = mThumbnailView.getLayoutParams().width;
+            mThumbnailHeight = mThumbnailView.getLayoutParams().height;
+            listItemView.setOnClickListener(this);
+            listItemView.setOnLongClickListener(this);
         }
-        /* Get the {@link News} object located at this position in the list */
-        News currentNewsArticle = getItem(position);
-
-        /* Find the TextView in the list_item.xml layout with the ID news_title and author_name and set object title to this view */
-        TextView titleTextView = (TextView) listItemView.findViewById(R.id.news_title);
-        TextView authorTextView = (TextView) listItemView.findViewById(R.id.author_name);
-        String fullArticleName = currentNewsArticle.getNewsTitle();
-        String titlePart1;
-        String titlePart2;
-        /* Split the view if there is a "|" character, otherwise leave part2 empty */
-        if (fullArticleName.contains(" | ")) {
-            titlePart1 = fullArticleName.substring(0, fullArticleName.indexOf(" | ", 0));
-            titlePart2 = fullArticleName.substring(fullArticleName.indexOf(" | ", 0)+3, fullArticleName.length());
-        } else {
-            titlePart1 = fullArticleName;
-            titlePart2 = "";
+
+        void bind(News currentNewsArticle) {
+            /* Every field is ready to render, it was computed when the article was parsed */
+            mTitleTextView.setText(currentNewsArticle.getDisplayTitle());
+            mAuthorTextView.setText(currentNewsArticle.getDisplayByline());
+            mSectionTextView.setText(currentNewsArticle.getSectionName());
+            mTimeTextView.setText(currentNewsArticle.getDisplayTime());
+            String thumbnailUrl = currentNewsArticle.getThumbnailUrl();
+            mThumbnailView.setVisibility(thumbnailUrl != null ? View.VISIBLE : View.GONE);
+            mThumbnailLoader.bind(mThumbnailView, thumbnailUrl, mThumbnailWidth, mThumbnailHeight);
         }
-        titleTextView.setText(titlePart1);
-        authorTextView.setText(titlePart2);
-
-        /* Find the Author name if there is one, find TextView in list_item.xml with ID author_name and set name to this view */
-        String authorName = currentNewsArticle.getAuthorName();
-        if (authorName == null || authorName.equals("")) {
-            if (!titlePart2.equals("")) {
-                authorTextView.setText(titlePart2);
-            } else {
-                Log.v("NewsAdapter", "No Author Name under TAGS or title");
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mListener != null) {
+                mListener.onNewsClick(getItem(position));
             }
-        } else {
-            authorTextView.setText(authorName);
         }
-        /* Find the TextView in the list_item.xml layout with the ID section_name and set object section to this view */
-        TextView sectionTextView = (TextView) listItemView.findViewById(R.id.section_name);
-        sectionTextView.setText(currentNewsArticle.getSectionName());
-
-        /* Find the TextView in the list_item.xml layout with the ID time_stamp and set object time to this view */
-        TextView timeTextView = (TextView) listItemView.findViewById(R.id.time_stamp);
-        timeTextView.setText(currentNewsArticle.getSimpleTimestamp());
 
-        return listItemView;
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            return position != RecyclerView.NO_POSITION && mListener != null
+                    && mListener.onNewsLongClick(getItem(position));
+        }
     }
 }
@@ -0,0 +1,43 @@
+package com.example.android.newsapp4;
+
+import android.app.Application;
+
+/**
+ * {@link NewsApplication} starts the work of a cold start as early as the process allows, before
+ * the first activity is even created, see {@link NewsStartup}. It also hands the memory warnings
+ * of the system to the caches, which fall back on their disk tiers.
+ */
+public class NewsApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Time the pipeline and the start in debug builds, see the Metrics screen
+        NewsMetrics.setEnabled(BuildConfig.DEBUG);
+        NewsStartup.start(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        /* Only the caches that were created hold memory */
+        NewsCache cache = NewsCache.peekInstance();
+        if (cache != null) {
+            cache.onTrimMemory(level);
+        }
+        ThumbnailLoader thumbnailLoader = ThumbnailLoader.peekInstance();
+        if (thumbnailLoader != null) {
+            thumbnailLoader.onTrimMemory(level);
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            NewsLoadEngine.getInstance().trimMemory();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        /* Out of memory altogether: give back as much as for the highest level */
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+}
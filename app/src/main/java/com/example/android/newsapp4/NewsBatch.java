@@ -0,0 +1,279 @@
+package com.example.android.newsapp4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * {@link NewsBatch} is a compact, versioned binary form of a list of {@link News}, used to store
+ * them (see {@link NewsCache}) and to hand them to another process as a single byte array.
+ * <p>
+ * Every distinct string (title, author, section, URL, thumbnail URL, tags) is written once in a string table and the
+ * records refer to it by index, so a section or author shared by the whole batch costs 4 bytes per
+ * article. The publication time is stored as epoch milliseconds. Records have a fixed size, so
+ * record i is read straight from its offset in the buffer, e.g. a memory mapped file, without
+ * reading the records before it.
+ * <pre>
+ * int    magic "NWSB"
+ * int    version
+ * int    record count
+ * int    string count
+ * record count x { int title, int author, int section, int url, int time string, int thumbnail, int tags,
+ *                  long time }
+ * (string count + 1) x int  offset of every string in the string data, then the end offset
+ * string data, UTF-8
+ * </pre>
+ * A string index of -1 is null. The time string is only set when webPublicationDate isn't in the
+ * usual 2018-05-27T08:00:20Z form, so it would not survive the trip through epoch milliseconds.
+ * The tags of an article are one string, see {@link NewsTags#encode()}.
+ */
+public class NewsBatch {
+
+    private static final int MAGIC = 0x4E575342;
+    /** Version of the format, batches of other versions are refused */
+    static final int VERSION = 4;
+    private static final int HEADER_SIZE = 16;
+    /** Number of string indexes in a record, they are followed by the time */
+    private static final int STRING_FIELDS = 7;
+    private static final int RECORD_SIZE = STRING_FIELDS * 4 + 8;
+    /** Offset of the time in a record */
+    private static final int TIME_OFFSET = STRING_FIELDS * 4;
+    /** Index of a null string */
+    private static final int NO_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mSize;
+    private final int mStringCount;
+    private final int mOffsetsStart;
+    private final int mStringsStart;
+    /** Strings decoded so far, so a string shared by many records is decoded (and held) once */
+    private final String[] mStrings;
+
+    private NewsBatch(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a news batch");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported news batch version " + buffer.getInt(4));
+        }
+        mSize = buffer.getInt(8);
+        mStringCount = buffer.getInt(12);
+        long stringsStart = HEADER_SIZE + (long) mSize * RECORD_SIZE + ((long) mStringCount + 1) * 4;
+        if (mSize < 0 || mStringCount < 0 || stringsStart > buffer.limit()) {
+            throw new IOException("Truncated news batch");
+        }
+        mOffsetsStart = HEADER_SIZE + mSize * RECORD_SIZE;
+        mStringsStart = (int) stringsStart;
+        mStrings = new String[mStringCount];
+        validate();
+    }
+
+    /**
+     * Check every string index of the records and every string offset, so that a corrupt batch
+     * (e.g. a cache file damaged on the disk) is refused here instead of failing a later read.
+     * Only the records and the offsets are read, not the string data.
+     */
+    private void validate() throws IOException {
+        int previous = 0;
+        for (int i = 0; i <= mStringCount; i++) {
+            int offset = mBuffer.getInt(mOffsetsStart + i * 4);
+            if (offset < previous || mStringsStart + (long) offset > mBuffer.limit()) {
+                throw new IOException("Corrupt news batch: string offset " + offset + " at " + i);
+            }
+            previous = offset;
+        }
+        for (int position = 0; position < mSize; position++) {
+            int record = HEADER_SIZE + position * RECORD_SIZE;
+            for (int field = 0; field < STRING_FIELDS; field++) {
+                int index = mBuffer.getInt(record + field * 4);
+                if (index < NO_STRING || index >= mStringCount) {
+                    throw new IOException("Corrupt news batch: string " + index + " in record " + position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a batch from the buffer (its position is ignored, the batch starts at 0). Records are
+     * only decoded when asked for; an IOException is thrown if the batch is truncated or corrupt.
+     */
+    public static NewsBatch wrap(ByteBuffer buffer) throws IOException {
+        return new NewsBatch(buffer);
+    }
+
+    /**
+     * Map a batch file into memory, read only. Only the pages of the records that are asked for
+     * (and of their strings) are read from the disk.
+     */
+    public static NewsBatch map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            /* The mapping stays valid after the channel is closed */
+            return new NewsBatch(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Return the batch of the articles as bytes.
+     */
+    public static byte[] encode(List<News> newsArticles) {
+        /* Intern every string: each one gets an index the first time it is seen */
+        HashMap<String, Integer> indexes = new HashMap<String, Integer>();
+        ArrayList<byte[]> strings = new ArrayList<byte[]>();
+        int[] records = new int[newsArticles.size() * STRING_FIELDS];
+        long[] times = new long[newsArticles.size()];
+        int stringBytes = 0;
+        for (int i = 0; i < newsArticles.size(); i++) {
+            News news = newsArticles.get(i);
+            long time = news.getTimeMillis();
+            String[] fields = {news.getNewsTitle(), news.getAuthorName(), news.getSectionName(), news.getUrl(),
+                    time == News.NO_TIME ? news.getTimestamp() : null, news.getThumbnailUrl(),
+                    news.getTags() != null ? news.getTags().encode() : null};
+            for (int field = 0; field < fields.length; field++) {
+                String value = fields[field];
+                int index = NO_STRING;
+                if (value != null) {
+                    Integer known = indexes.get(value);
+                    if (known == null) {
+                        byte[] bytes = value.getBytes(UTF_8);
+                        known = strings.size();
+                        indexes.put(value, known);
+                        strings.add(bytes);
+                        stringBytes += bytes.length;
+                    }
+                    index = known;
+                }
+                records[i * STRING_FIELDS + field] = index;
+            }
+            times[i] = time;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + newsArticles.size() * RECORD_SIZE
+                + (strings.size() + 1) * 4 + stringBytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(newsArticles.size()).putInt(strings.size());
+        for (int i = 0; i < newsArticles.size(); i++) {
+            for (int field = 0; field < STRING_FIELDS; field++) {
+                buffer.putInt(records[i * STRING_FIELDS + field]);
+            }
+            buffer.putLong(times[i]);
+        }
+        int offset = 0;
+        for (byte[] bytes : strings) {
+            buffer.putInt(offset);
+            offset += bytes.length;
+        }
+        buffer.putInt(offset);
+        for (byte[] bytes : strings) {
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Write the batch of the articles to a file, replacing it.
+     */
+    public static void write(List<News> newsArticles, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(encode(newsArticles));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Return the number of articles in the batch.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Decode the article at the given position.
+     */
+    public News get(int position) {
+        int record = recordOffset(position);
+        long time = mBuffer.getLong(record + TIME_OFFSET);
+        News news;
+        if (time != News.NO_TIME) {
+            news = new News(string(mBuffer.getInt(record)), string(mBuffer.getInt(record + 4)),
+                    string(mBuffer.getInt(record + 8)), time, string(mBuffer.getInt(record + 12)),
+                    string(mBuffer.getInt(record + 20)));
+        } else {
+            news = new News(string(mBuffer.getInt(record)), string(mBuffer.getInt(record + 4)),
+                    string(mBuffer.getInt(record + 8)), string(mBuffer.getInt(record + 16)),
+                    string(mBuffer.getInt(record + 12)), string(mBuffer.getInt(record + 20)));
+        }
+        news.setTags(NewsTags.decode(string(mBuffer.getInt(record + 24))));
+        return news;
+    }
+
+    /**
+     * Return the publication time of the article at the given position in epoch milliseconds,
+     * or {@link Long#MIN_VALUE} if it has none. Nothing else of the record is decoded.
+     */
+    public long getTimeMillis(int position) {
+        return mBuffer.getLong(recordOffset(position) + TIME_OFFSET);
+    }
+
+    /**
+     * Return the URL of the article at the given position. Nothing else of the record is decoded.
+     */
+    public String getUrl(int position) {
+        return string(mBuffer.getInt(recordOffset(position) + 12));
+    }
+
+    /**
+     * Decode every article.
+     */
+    public ArrayList<News> toList() {
+        ArrayList<News> newsArticles = new ArrayList<News>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            newsArticles.add(get(i));
+        }
+        return newsArticles;
+    }
+
+    private int recordOffset(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + mSize);
+        }
+        return HEADER_SIZE + position * RECORD_SIZE;
+    }
+
+    private String string(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        String value = mStrings[index];
+        if (value == null) {
+            int start = mBuffer.getInt(mOffsetsStart + index * 4);
+            int length = mBuffer.getInt(mOffsetsStart + index * 4 + 4) - start;
+            if (mBuffer.hasArray()) {
+                value = new String(mBuffer.array(), mBuffer.arrayOffset() + mStringsStart + start, length, UTF_8);
+            } else {
+                /* Mapped or direct buffer: copy just this string's bytes out */
+                byte[] bytes = new byte[length];
+                ByteBuffer view = mBuffer.duplicate();
+                view.position(mStringsStart + start);
+                view.get(bytes);
+                value = new String(bytes, UTF_8);
+            }
+            mStrings[index] = value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.android.newsapp4;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * {@link NewsBootReceiver} schedules the {@link NewsSync} again after a reboot: the alarms used
+ * before Lollipop don't survive one. The job of later versions is persisted, scheduling it again
+ * is a no-op.
+ */
+public class NewsBootReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            NewsSync.schedule(context);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package com.example.android.newsapp4;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link NewsCache} keeps the last list of {@link News} loaded for every query URL on disk,
+ * so the list can be shown straight away (and without a network) the next time it is asked for.
+ * Entries expire after a time to live and the least recently used ones are evicted
+ * once the cache grows past its size limit.
+ * <p>
+ * Revalidating the first page of a newest-first query is a delta sync: the newest publication
+ * time among the cached articles is the query's watermark, only the articles published since
+ * (from-date) are requested and they are merged in front of the cached ones. The request and its
+ * payload then scale with what is new, not with the archive the query searches. A full
+ * (conditional) request still runs once a day, for edited or removed articles, and whenever
+ * there is no watermark.
+ * <p>
+ * Entries stored by the background {@link #sync} are marked as such, so a load soon after can
+ * show them without a request (see {@link #isSynced}); an entry a screen loaded is revalidated.
+ * <p>
+ * The recently used entries are also kept in memory, decoded or as their compact batch, see
+ * {@link NewsMemoryCache}; the disk is the cold tier behind them. {@link #onTrimMemory} gives that
+ * memory back when the system runs low, the entries are then read from the disk again.
+ */
+public class NewsCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsCache.class.getSimpleName();
+
+    /** Version of the entry file format, entries of other versions are ignored */
+    private static final int FORMAT_VERSION = 8;
+    /** Name of the cache folder inside the app's cache directory */
+    private static final String DIRECTORY_NAME = "news";
+    /** Extension of the entry files */
+    private static final String ENTRY_SUFFIX = ".news";
+    /** Entries older than this are dropped (7 days) */
+    private static final long DEFAULT_TTL_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    /** Upper bound for the total size of all entries on disk (1 MB) */
+    private static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    /** Time after which an entry is revalidated with a full request instead of a delta (1 day) */
+    static final long FULL_REFRESH_MILLIS = 24L * 60 * 60 * 1000;
+    /** Time of the last full request of an entry that can't be read */
+    private static final long NEVER_REFRESHED = 0;
+    /** Query parameter of the first publication date of the articles asked for */
+    private static final String FROM_DATE_PARAMETER = "from-date=";
+    /** Responses kept decoded in memory: the pages and topics of the screen */
+    private static final int HOT_ENTRIES = 8;
+    /** Upper bound for the entries kept encoded in memory (256 KB), a quarter of the disk */
+    private static final long WARM_MAX_BYTES = 256 * 1024;
+
+    private static NewsCache sInstance;
+
+    private final File mDirectory;
+    private final long mTtlMillis;
+    private final long mMaxBytes;
+    /** Index that every stored article is added to, may be null */
+    private final NewsSearchIndex mSearchIndex;
+    /** Hot and warm tiers in front of the disk */
+    private final NewsMemoryCache mMemoryCache;
+    /** Tells the time the entries are saved at and expire by */
+    private final Clock mClock;
+
+    /**
+     * Return the app wide cache, stored in the app's cache directory.
+     */
+    public static synchronized NewsCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            sInstance = new NewsCache(directory, DEFAULT_TTL_MILLIS, DEFAULT_MAX_BYTES,
+                    NewsSearchIndex.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Return the app wide cache if it has been created, otherwise null.
+     */
+    public static synchronized NewsCache peekInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsCache}.
+     *
+     * @param directory where the entries are stored
+     * @param ttlMillis time after which an entry expires
+     * @param maxBytes  upper bound for the total size of the entries
+     */
+    public NewsCache(File directory, long ttlMillis, long maxBytes) {
+        this(directory, ttlMillis, maxBytes, null);
+    }
+
+    /**
+     * Constructs a new {@link NewsCache} that also adds every stored article to a search index,
+     * so the index grows with each response without another pass over the articles.
+     *
+     * @param directory   where the entries are stored
+     * @param ttlMillis   time after which an entry expires
+     * @param maxBytes    upper bound for the total size of the entries
+     * @param searchIndex index of all the articles ever stored, may be null
+     */
+    public NewsCache(File directory, long ttlMillis, long maxBytes, NewsSearchIndex searchIndex) {
+        this(directory, ttlMillis, maxBytes, searchIndex, new NewsMemoryCache(HOT_ENTRIES, WARM_MAX_BYTES));
+    }
+
+    /**
+     * Constructs a new {@link NewsCache} with the given memory tiers in front of the disk.
+     *
+     * @param directory   where the entries are stored
+     * @param ttlMillis   time after which an entry expires
+     * @param maxBytes    upper bound for the total size of the entries
+     * @param searchIndex index of all the articles ever stored, may be null
+     * @param memoryCache where the recently used entries are kept in memory
+     */
+    NewsCache(File directory, long ttlMillis, long maxBytes, NewsSearchIndex searchIndex,
+              NewsMemoryCache memoryCache) {
+        this(directory, ttlMillis, maxBytes, searchIndex, memoryCache, Clock.SYSTEM);
+    }
+
+    /**
+     * Constructs a new {@link NewsCache} whose entries are saved and expire by the given clock.
+     */
+    NewsCache(File directory, long ttlMillis, long maxBytes, NewsSearchIndex searchIndex,
+              NewsMemoryCache memoryCache, Clock clock) {
+        mDirectory = directory;
+        mTtlMillis = ttlMillis;
+        mMaxBytes = maxBytes;
+        mSearchIndex = searchIndex;
+        mMemoryCache = memoryCache;
+        mClock = clock;
+    }
+
+    /**
+     * Return the cached list of news for the query URL, or null if there is no (fresh enough) entry.
+     */
+    public ArrayList<News> get(String url) {
+        NewsResponse entry = getEntry(url);
+        return entry != null ? entry.getNews() : null;
+    }
+
+    /**
+     * Return the cached response for the query URL, with the validators to revalidate it,
+     * or null if there is no (fresh enough) entry.
+     */
+    public synchronized NewsResponse getEntry(String url) {
+        File file = entryFile(url);
+        NewsResponse inMemory = mMemoryCache.get(url, mClock.currentTimeMillis() - mTtlMillis);
+        if (inMemory != null) {
+            /* Still marked as recently used on disk, or the LRU eviction would drop the hottest entries */
+            file.setLastModified(mClock.currentTimeMillis());
+            return inMemory;
+        }
+        if (!file.exists()) {
+            NewsMetrics.count(NewsMetrics.Counter.CACHE_MISSES);
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                NewsMetrics.count(NewsMetrics.Counter.CACHE_MISSES);
+                return null;
+            }
+            long savedAt = in.readLong();
+            in.readLong();
+            boolean synced = in.readBoolean();
+            String eTag = readNullableString(in);
+            String lastModified = readNullableString(in);
+            long payloadBytes = in.readLong();
+            int currentPage = in.readInt();
+            int pages = in.readInt();
+            if (mClock.currentTimeMillis() - savedAt > mTtlMillis) {
+                in.close();
+                in = null;
+                file.delete();
+                NewsMetrics.count(NewsMetrics.Counter.CACHE_MISSES);
+                return null;
+            }
+            /* The articles are a NewsBatch: every distinct string once, times as epoch longs */
+            int batchLength = in.readInt();
+            if (batchLength < 0 || batchLength > file.length()) {
+                throw new IOException("Corrupt news cache entry: batch of " + batchLength + " bytes");
+            }
+            byte[] batch = new byte[batchLength];
+            in.readFully(batch);
+            ArrayList<News> newsArticles = NewsBatch.wrap(ByteBuffer.wrap(batch)).toList();
+            /* Mark the entry as recently used for the LRU eviction */
+            file.setLastModified(mClock.currentTimeMillis());
+            NewsResponse response = new NewsResponse(newsArticles, eTag, lastModified, payloadBytes,
+                    currentPage, pages);
+            NewsMetrics.count(NewsMetrics.Counter.CACHE_DISK_HITS);
+            mMemoryCache.put(url, response, batch, savedAt, synced);
+            return response;
+        } catch (IOException e) {
+            /* Truncated or corrupt: it would fail every time, the next load stores a new one */
+            Log.e(LOG_TAG, "Problem reading the news cache entry, deleting it", e);
+            closeQuietly(in);
+            in = null;
+            file.delete();
+            NewsMetrics.count(NewsMetrics.Counter.CACHE_MISSES);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Return whether the query URL has an entry that the background sync stored (or revalidated)
+     * less than maxAgeMillis ago. Entries stored by a screen's load don't count: the sync is what
+     * keeps them up to date. Only the entry's header is read.
+     */
+    public synchronized boolean isSynced(String url, long maxAgeMillis) {
+        long syncedAt = mMemoryCache.getSyncedAt(url);
+        if (syncedAt != NewsMemoryCache.NOT_IN_MEMORY) {
+            long age = mClock.currentTimeMillis() - syncedAt;
+            return syncedAt != NewsMemoryCache.NOT_SYNCED && age >= 0
+                    && age < Math.min(maxAgeMillis, mTtlMillis);
+        }
+        File file = entryFile(url);
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                return false;
+            }
+            long age = mClock.currentTimeMillis() - in.readLong();
+            in.readLong();
+            return in.readBoolean() && age >= 0 && age < Math.min(maxAgeMillis, mTtlMillis);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the news cache entry", e);
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Request the news of the query URL through the {@link NewsHttpClient}, revalidating the cached
+     * entry: with a delta request when it can (see the class comment), otherwise in full. On 304
+     * or an empty delta the cached response is returned (and its age refreshed), otherwise the
+     * fresh or merged response is stored and returned.
+     */
+    public NewsResponse revalidate(String url) throws IOException {
+        return revalidate(url, null);
+    }
+
+    /**
+     * Revalidate the cached entry of the query URL like {@link #revalidate(String)}, until the
+     * cancellation (which may be null) is cancelled.
+     */
+    public NewsResponse revalidate(String url, LoadCancellation cancellation) throws IOException {
+        return revalidate(url, cancellation, false);
+    }
+
+    /**
+     * Revalidate the cached entry of the query URL like {@link #revalidate(String)} for the
+     * background sync, marking the entry as synced, see {@link #isSynced}.
+     */
+    public NewsResponse sync(String url, LoadCancellation cancellation) throws IOException {
+        return revalidate(url, cancellation, true);
+    }
+
+    /**
+     * @param synced whether the background sync revalidates the entry
+     */
+    private NewsResponse revalidate(String url, LoadCancellation cancellation, boolean synced)
+            throws IOException {
+        NewsResponse cached = getEntry(url);
+        long refreshedAt = cached != null ? refreshedAt(url) : NEVER_REFRESHED;
+        long now = mClock.currentTimeMillis();
+        String deltaUrl = cached != null && now - refreshedAt >= 0 && now - refreshedAt < FULL_REFRESH_MILLIS
+                ? deltaUrl(url, newestTime(cached.getNews())) : null;
+        if (deltaUrl != null) {
+            NewsMetrics.count(NewsMetrics.Counter.DELTA_SYNCS);
+            /* The delta URL changes with every watermark, there is nothing to revalidate it against */
+            NewsResponse delta = NewsHttpClient.getInstance().fetchNews(deltaUrl, null, null, cancellation);
+            ArrayList<News> merged = mergeDelta(cached.getNews(), delta.getNews());
+            if (!merged.equals(cached.getNews())) {
+                cached = new NewsResponse(merged, cached.getETag(), cached.getLastModified(),
+                        cached.getPayloadBytes(), cached.getCurrentPage(), cached.getPages());
+            }
+            put(url, cached, refreshedAt, synced);
+            return cached;
+        }
+        NewsResponse response = NewsHttpClient.getInstance().fetchNews(url, cached, null, cancellation);
+        if (response.isNotModified()) {
+            cached = new NewsResponse(cached.getNews(), response.getETag(), response.getLastModified(),
+                    cached.getPayloadBytes(), cached.getCurrentPage(), cached.getPages());
+            put(url, cached, now, synced);
+            return cached;
+        }
+        put(url, response, now, synced);
+        return response;
+    }
+
+    /**
+     * Return the URL that asks the query for the articles published since the watermark, or null
+     * if the query can't be synced by delta: not ordered newest first, not its first page (later
+     * pages shift with every new article) or no watermark.
+     */
+    static String deltaUrl(String url, long watermark) {
+        int fromDate = url.indexOf(FROM_DATE_PARAMETER);
+        if (watermark == News.NO_TIME || fromDate < 0 || !url.contains("order-by=newest")
+                || url.contains("&page=")) {
+            return null;
+        }
+        int valueStart = fromDate + FROM_DATE_PARAMETER.length();
+        int valueEnd = url.indexOf('&', valueStart);
+        /* from-date takes a full time too; the watermark's own article comes back and is deduplicated */
+        return url.substring(0, valueStart) + NewsTimeFormatter.formatUtc(watermark).replace(":", "%3A")
+                + (valueEnd < 0 ? "" : url.substring(valueEnd));
+    }
+
+    /**
+     * Return the articles of a delta in front of the cached ones they don't replace (same URL),
+     * newest first, as many as there were cached (or as the delta has, if more): the first page
+     * keeps its size, so the later pages stay aligned with it.
+     */
+    static ArrayList<News> mergeDelta(ArrayList<News> cached, ArrayList<News> delta) {
+        int size = Math.max(cached.size(), delta.size());
+        ArrayList<News> merged = new ArrayList<News>(size);
+        HashSet<String> urls = new HashSet<String>();
+        for (News news : delta) {
+            if (merged.size() < size && urls.add(news.getUrl())) {
+                merged.add(news);
+            }
+        }
+        for (News news : cached) {
+            if (merged.size() < size && urls.add(news.getUrl())) {
+                merged.add(news);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Return the newest publication time of the articles, or {@link News#NO_TIME} if none has one.
+     */
+    private static long newestTime(ArrayList<News> newsArticles) {
+        long newest = News.NO_TIME;
+        for (News news : newsArticles) {
+            newest = Math.max(newest, news.getTimeMillis());
+        }
+        return newest;
+    }
+
+    /**
+     * Return the time of the last full request of the query URL's entry, from its header only.
+     */
+    private synchronized long refreshedAt(String url) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile(url))));
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                return NEVER_REFRESHED;
+            }
+            in.readLong();
+            return in.readLong();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the news cache entry", e);
+            return NEVER_REFRESHED;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Store the list of news for the query URL, replacing any previous entry, then trim the cache.
+     */
+    public void put(String url, ArrayList<News> newsArticles) {
+        put(url, new NewsResponse(newsArticles, null, null, 0));
+    }
+
+    /**
+     * Store the response for the query URL, replacing any previous entry, then trim the cache.
+     * The response must not be a {@link NewsResponse#isNotModified() not modified} one.
+     */
+    public void put(String url, NewsResponse response) {
+        /* A whole response, as a full request returns it */
+        put(url, response, mClock.currentTimeMillis(), false);
+    }
+
+    /**
+     * Store the response like {@link #put(String, NewsResponse)}, with the time of the last full
+     * request of the query URL.
+     *
+     * @param synced whether the background sync stored it
+     */
+    private synchronized void put(String url, NewsResponse response, long refreshedAt, boolean synced) {
+        ArrayList<News> newsArticles = response.getNews();
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create the news cache directory");
+            return;
+        }
+        File file = entryFile(url);
+        File tmpFile = new File(mDirectory, file.getName() + ".tmp");
+        long savedAt = mClock.currentTimeMillis();
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeLong(savedAt);
+            out.writeLong(refreshedAt);
+            out.writeBoolean(synced);
+            writeNullableString(out, response.getETag());
+            writeNullableString(out, response.getLastModified());
+            out.writeLong(response.getPayloadBytes());
+            out.writeInt(response.getCurrentPage());
+            out.writeInt(response.getPages());
+            byte[] batch = NewsBatch.encode(newsArticles);
+            out.writeInt(batch.length);
+            out.write(batch);
+            out.close();
+            out = null;
+            /* Replace the old entry only once the new one has been written completely */
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                tmpFile.renameTo(file);
+            }
+            /* Before the trim, which drops it from memory again if it evicts it from the disk */
+            mMemoryCache.put(url, response, batch, savedAt, synced);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the news cache entry", e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+        trim();
+        if (mSearchIndex != null) {
+            /* The index outlives the entries: evicted articles can still be found, up to its cap */
+            mSearchIndex.addAll(newsArticles);
+        }
+    }
+
+    /**
+     * Give back the memory of the entries kept in memory, as much as the level of
+     * {@link ComponentCallbacks2#onTrimMemory} asks for. The disk keeps every entry.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            /* Next in line to be killed, or the foreground is: keep only the disk */
+            mMemoryCache.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.demoteHot();
+            mMemoryCache.trimWarm(mMemoryCache.getMaxWarmBytes() / 2);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            /* Also on TRIM_MEMORY_UI_HIDDEN: the list isn't shown, its pages decode fast enough */
+            mMemoryCache.demoteHot();
+        }
+    }
+
+    /**
+     * Delete expired entries, then the least recently used ones until the cache fits its size limit.
+     */
+    public synchronized void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = mClock.currentTimeMillis();
+        long totalBytes = 0;
+        ArrayList<File> entries = new ArrayList<File>();
+        Set<String> deleted = new HashSet<String>();
+        for (File file : files) {
+            if (!file.getName().endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+            /* lastModified is refreshed on every read, so anything untouched for a TTL is expired */
+            if (now - file.lastModified() > mTtlMillis) {
+                file.delete();
+                deleted.add(file.getName());
+            } else {
+                entries.add(file);
+                totalBytes += file.length();
+            }
+        }
+        File[] sorted = DiskLru.leastRecentlyUsedFirst(entries);
+        for (int i = 0; i < sorted.length && totalBytes > mMaxBytes; i++) {
+            totalBytes -= sorted[i].length();
+            sorted[i].delete();
+            deleted.add(sorted[i].getName());
+        }
+        if (!deleted.isEmpty()) {
+            /* What the disk evicted isn't served from memory either */
+            for (String url : mMemoryCache.urls()) {
+                if (deleted.contains(entryFile(url).getName())) {
+                    mMemoryCache.remove(url);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the file that holds the entry of the query URL.
+     */
+    private File entryFile(String url) {
+        return new File(mDirectory, Integer.toHexString(url.hashCode()) + ENTRY_SUFFIX);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the news cache entry", e);
+            }
+        }
+    }
+}
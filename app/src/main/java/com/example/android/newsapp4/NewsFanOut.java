@@ -0,0 +1,156 @@
+package com.example.android.newsapp4;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link NewsFanOut} loads the queries of several topics at the same time on a bounded executor
+ * and merges their articles into one list, newest first and without duplicates.
+ * The total time is about that of the slowest query, not the sum of all of them.
+ */
+public final class NewsFanOut {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsFanOut.class.getSimpleName();
+
+    /** Upper bound of requests in flight at the same time */
+    private static final int MAX_PARALLEL_REQUESTS = 4;
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(MAX_PARALLEL_REQUESTS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NewsFanOut");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Newest first by webPublicationDate, articles without a date last.
+     */
+    static final Comparator<News> NEWEST_FIRST = new Comparator<News>() {
+        @Override
+        public int compare(News a, News b) {
+            /* News.NO_TIME is the smallest long, so it sorts last */
+            long timeA = a.getTimeMillis();
+            long timeB = b.getTimeMillis();
+            return timeA < timeB ? 1 : (timeA == timeB ? 0 : -1);
+        }
+    };
+
+    /**
+     * Loads the response of one query.
+     */
+    public interface Source {
+        NewsResponse load(String url) throws IOException;
+    }
+
+    /**
+     * Receives the response of every query as soon as it arrives, while the others are still loading.
+     */
+    public interface OnTopicLoadedListener {
+        void onTopicLoaded(String url, NewsResponse response);
+    }
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsFanOut() {
+    }
+
+    /**
+     * Load every URL concurrently and return the merged response. The listener (if any) is called
+     * on this thread each time a query arrives, while the others are still loading.
+     * Queries that fail are left out; an IOException is thrown only when all of them fail.
+     *
+     * @param urls     query URLs, one per topic
+     * @param source   loads one query
+     * @param listener receives each query's response as it arrives, may be null
+     * @return merged articles, with the largest page count of the queries
+     */
+    public static NewsResponse load(List<String> urls, final Source source, OnTopicLoadedListener listener)
+            throws IOException {
+        if (urls.size() == 1) {
+            return source.load(urls.get(0));
+        }
+        CompletionService<NewsResponse> completionService = new ExecutorCompletionService<NewsResponse>(sExecutor);
+        /* take() hands back the same Future that submit() returned */
+        HashMap<Future<NewsResponse>, String> futures = new HashMap<Future<NewsResponse>, String>();
+        for (final String url : urls) {
+            futures.put(completionService.submit(new Callable<NewsResponse>() {
+                @Override
+                public NewsResponse call() throws IOException {
+                    return source.load(url);
+                }
+            }), url);
+        }
+        ArrayList<ArrayList<News>> arrived = new ArrayList<ArrayList<News>>();
+        int pages = 0;
+        IOException failure = null;
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                Future<NewsResponse> future = completionService.take();
+                try {
+                    NewsResponse response = future.get();
+                    arrived.add(response.getNews());
+                    pages = Math.max(pages, response.getPages());
+                    if (listener != null) {
+                        listener.onTopicLoaded(futures.get(future), response);
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem loading one of the topics", e.getCause());
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<NewsResponse> future : futures.keySet()) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading topics", e);
+        }
+        if (arrived.isEmpty() && failure != null) {
+            throw failure;
+        }
+        return new NewsResponse(merge(arrived), null, null, 0, 1, pages);
+    }
+
+    /**
+     * Merge lists of articles into one, newest first, keeping the first article of every webUrl.
+     */
+    public static ArrayList<News> merge(List<ArrayList<News>> lists) {
+        int size = 0;
+        for (ArrayList<News> list : lists) {
+            size += list.size();
+        }
+        ArrayList<News> merged = new ArrayList<News>(size);
+        HashSet<String> urls = new HashSet<String>(size * 2);
+        for (ArrayList<News> list : lists) {
+            for (News news : list) {
+                if (news.getUrl() == null || urls.add(news.getUrl())) {
+                    merged.add(news);
+                }
+            }
+        }
+        /* Stable sort: articles with the same date keep the order of their query */
+        Collections.sort(merged, NEWEST_FIRST);
+        return merged;
+    }
+}
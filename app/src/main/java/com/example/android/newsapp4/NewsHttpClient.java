@@ -0,0 +1,741 @@
+package com.example.android.newsapp4;
+
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link NewsHttpClient} is the single HTTP client of the app. Every request to TheGuardian
+ * should go through {@link #getInstance()}.
+ * <p>
+ * Connections are kept alive and returned to the platform's connection pool after each
+ * response (the body is always read to the end and the connection is never disconnected on
+ * success), so the socket and TLS session to content.guardianapis.com are reused across loads.
+ * Identical requests that are in flight at the same time are coalesced: only the first one
+ * goes to the network and the others wait for and share its response. A shared request is only
+ * cancelled once every caller that shares it has cancelled.
+ * <p>
+ * Every call has a deadline of {@link #LOAD_DEADLINE_MILLIS}. Failed attempts (I/O errors, 5xx and
+ * 429) are retried with a jittered exponential back-off, or after the server's Retry-After, as long
+ * as that fits in the deadline. A {@link CircuitBreaker} makes calls fail fast while the API keeps
+ * failing, so the callers show their cached data straight away.
+ * <p>
+ * A call made with a {@link LoadCancellation} stops as soon as it is cancelled: its connection is
+ * disconnected, nothing is retried and the call throws an InterruptedIOException.
+ */
+public final class NewsHttpClient {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsHttpClient.class.getSimpleName();
+
+    /** Time budget of one call, all attempts and waits between them included */
+    static final long LOAD_DEADLINE_MILLIS = 20000;
+    /** Time budget of an article's text or an image: a single attempt, prefetched ahead of the reader */
+    static final long SINGLE_ATTEMPT_BUDGET_MILLIS = 15000;
+    /** Attempts per call, the first one included */
+    private static final int MAX_ATTEMPTS = 3;
+    /** Upper bound of the wait before the first retry, doubled for every further one */
+    private static final long RETRY_BASE_MILLIS = 500;
+    /** Upper bound of the wait before any retry */
+    private static final long RETRY_MAX_MILLIS = 4000;
+    /** Failed calls in a row that open the circuit breaker */
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    /** Time the circuit breaker stays open before a probe call */
+    private static final long BREAKER_COOL_DOWN_MILLIS = 30000;
+
+    /** Status of a rate limited request, not in HttpURLConnection */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final NewsHttpClient sInstance = new NewsHttpClient();
+
+    /** Requests currently in flight, by request key; also guards their callers' counts */
+    private final HashMap<String, SharedRequest> mInFlight = new HashMap<String, SharedRequest>();
+    private final CircuitBreaker mCircuitBreaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_COOL_DOWN_MILLIS);
+    /** Jitter of the retry back-off */
+    private final Random mRandom = new Random();
+
+    /**
+     * Use {@link #getInstance()}, the client is shared by the whole app.
+     */
+    private NewsHttpClient() {
+    }
+
+    /**
+     * Return the app wide client.
+     */
+    public static NewsHttpClient getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Request the news of the given URL, gzip encoded and conditional on the validators of the
+     * previous response. When the server answers 304 nothing is parsed and the returned
+     * response is {@link NewsResponse#isNotModified() not modified}: the previous list is still valid.
+     * <p>
+     * If the same request is already in flight this call waits for it and returns the same
+     * response; the listener is then not called and the shared list must not be modified.
+     * <p>
+     * Throws a {@link CircuitOpenException} without any request while the API is failing.
+     *
+     * @param url      query URL
+     * @param previous previous response for the same URL (with its validators), or null
+     * @param listener receives every article as soon as it has been parsed, may be null
+     */
+    public NewsResponse fetchNews(String url, NewsResponse previous, QueryUtils.OnNewsParsedListener listener)
+            throws IOException {
+        return fetchNews(url, previous, listener, null);
+    }
+
+    /**
+     * Request the news of the given URL like {@link #fetchNews(String, NewsResponse, QueryUtils.OnNewsParsedListener)},
+     * until the cancellation is cancelled. A request shared with other callers goes on until all
+     * of them have cancelled: a cancelled caller's call then ends with it, with an
+     * InterruptedIOException like any cancelled call. A caller waiting for a shared request also
+     * stops waiting when its thread is interrupted.
+     *
+     * @param url          query URL
+     * @param previous     previous response for the same URL (with its validators), or null
+     * @param listener     receives every article as soon as it has been parsed, may be null
+     * @param cancellation cancels the request, may be null
+     */
+    public NewsResponse fetchNews(final String url, final NewsResponse previous,
+                                  final QueryUtils.OnNewsParsedListener listener,
+                                  final LoadCancellation cancellation) throws IOException {
+        String key = requestKey(url, previous);
+        SharedRequest request;
+        boolean owner = false;
+        synchronized (mInFlight) {
+            request = mInFlight.get(key);
+            if (request == null) {
+                /* The request's own cancellation, cancelled when the last caller cancels */
+                final LoadCancellation shared = new LoadCancellation();
+                request = new SharedRequest(key, new Callable<NewsResponse>() {
+                    @Override
+                    public NewsResponse call() throws IOException {
+                        return executeWithRetries(url, previous, listener, shared);
+                    }
+                }, shared);
+                mInFlight.put(key, request);
+                owner = true;
+            }
+            request.callers++;
+        }
+        LoadCancellation.Listener leave = null;
+        if (cancellation != null) {
+            final SharedRequest joined = request;
+            leave = new LoadCancellation.Listener() {
+                @Override
+                public void onCancelled() {
+                    leave(joined);
+                }
+            };
+            cancellation.addListener(leave);
+        }
+        try {
+            if (owner) {
+                try {
+                    request.run();
+                } finally {
+                    synchronized (mInFlight) {
+                        if (mInFlight.get(key) == request) {
+                            mInFlight.remove(key);
+                        }
+                    }
+                }
+            } else {
+                NetworkStats.recordCoalesced();
+            }
+            NewsResponse response = request.get();
+            if (cancellation != null) {
+                /* Shared with callers that still wanted it */
+                cancellation.throwIfCancelled();
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if (leave != null) {
+                cancellation.removeListener(leave);
+            }
+        }
+    }
+
+    /**
+     * Give up a caller's share of the request: the last one to leave cancels it, and identical
+     * requests made from then on start a new one.
+     */
+    private void leave(SharedRequest request) {
+        synchronized (mInFlight) {
+            if (--request.callers > 0) {
+                return;
+            }
+            if (mInFlight.get(request.key) == request) {
+                mInFlight.remove(request.key);
+            }
+        }
+        request.cancellation.cancel();
+    }
+
+    /**
+     * Request the text of one article (a "content" URL asked for with show-fields=bodyText),
+     * gzip encoded and in a single attempt: bodies are prefetched, a failed one is simply asked
+     * for again next time. Throws a {@link CircuitOpenException} without any request while the
+     * API is failing.
+     *
+     * @param url          content URL of the article
+     * @param cancellation cancels the request, may be null
+     * @return the text of the article, or null if the response has none
+     */
+    public String fetchArticleBody(String url, LoadCancellation cancellation) throws IOException {
+        if (!mCircuitBreaker.allowRequest()) {
+            NewsMetrics.count(NewsMetrics.Counter.BREAKER_REJECTS);
+            throw new CircuitOpenException(url);
+        }
+        try {
+            String body = executeArticleBody(url, cancellation);
+            mCircuitBreaker.onSuccess();
+            return body;
+        } catch (HttpStatusException e) {
+            if (!e.isRetryable()) {
+                /* e.g. a 404 for a removed article, the API itself is fine */
+                mCircuitBreaker.onSuccess();
+            } else if (mCircuitBreaker.onFailure()) {
+                NewsMetrics.count(NewsMetrics.Counter.BREAKER_OPENS);
+            }
+            throw e;
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new InterruptedIOException("Cancelled while requesting " + url);
+            }
+            if (mCircuitBreaker.onFailure()) {
+                NewsMetrics.count(NewsMetrics.Counter.BREAKER_OPENS);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Return the key under which a request is coalesced: same URL and same validators.
+     */
+    private static String requestKey(String url, NewsResponse previous) {
+        if (previous == null) {
+            return url;
+        }
+        return url + '\n' + previous.getETag() + '\n' + previous.getLastModified();
+    }
+
+    /**
+     * Return the state of the circuit breaker, for the metrics.
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return mCircuitBreaker.getState();
+    }
+
+    /**
+     * Perform the request, retrying failed attempts until it succeeds, fails for good or runs out of time.
+     * Once the listener has received articles a failure is not retried, it would hand them out twice.
+     */
+    private NewsResponse executeWithRetries(String url, NewsResponse previous,
+                                            final QueryUtils.OnNewsParsedListener listener,
+                                            LoadCancellation cancellation) throws IOException {
+        long deadline = nowMillis() + LOAD_DEADLINE_MILLIS;
+        final int[] parsed = new int[1];
+        QueryUtils.OnNewsParsedListener countingListener = listener == null ? null : new QueryUtils.OnNewsParsedListener() {
+            @Override
+            public void onNewsParsed(News news) {
+                parsed[0]++;
+                listener.onNewsParsed(news);
+            }
+        };
+        for (int attempt = 1; ; attempt++) {
+            if (cancellation != null) {
+                cancellation.throwIfCancelled();
+            }
+            if (!mCircuitBreaker.allowRequest()) {
+                NewsMetrics.count(NewsMetrics.Counter.BREAKER_REJECTS);
+                throw new CircuitOpenException(url);
+            }
+            long remaining = deadline - nowMillis();
+            IOException failure;
+            long retryAfterMillis = -1;
+            try {
+                NewsResponse response = execute(url, previous, countingListener, remaining, cancellation);
+                mCircuitBreaker.onSuccess();
+                return response;
+            } catch (HttpStatusException e) {
+                if (!e.isRetryable()) {
+                    /* The server is up, the request itself is wrong: asking again won't help */
+                    mCircuitBreaker.onSuccess();
+                    throw e;
+                }
+                failure = e;
+                retryAfterMillis = e.getRetryAfterMillis();
+                if (e.getResponseCode() == HTTP_TOO_MANY_REQUESTS) {
+                    NewsMetrics.count(NewsMetrics.Counter.RATE_LIMITED);
+                }
+            } catch (SocketTimeoutException e) {
+                failure = e;
+            } catch (InterruptedIOException e) {
+                /* Cancelled, not a failure of the API */
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                /* The disconnected read failed, not the API: neither count nor retry it */
+                throw new InterruptedIOException("Cancelled while requesting " + url);
+            }
+            if (mCircuitBreaker.onFailure()) {
+                NewsMetrics.count(NewsMetrics.Counter.BREAKER_OPENS);
+            }
+            long wait = retryAfterMillis >= 0 ? retryAfterMillis : backoffMillis(attempt);
+            if (attempt >= MAX_ATTEMPTS || parsed[0] > 0 || nowMillis() + wait >= deadline) {
+                if (retryAfterMillis > 0 && mCircuitBreaker.openFor(retryAfterMillis)) {
+                    /* Don't ask again before the server said so */
+                    NewsMetrics.count(NewsMetrics.Counter.BREAKER_OPENS);
+                }
+                throw failure;
+            }
+            Log.e(LOG_TAG, "Attempt " + attempt + " failed, retrying in " + wait + " ms", failure);
+            NewsMetrics.count(NewsMetrics.Counter.RETRIES);
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+            }
+        }
+    }
+
+    /**
+     * Return a random wait before the given retry ("full jitter"), so clients that failed together
+     * don't all retry together.
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(attempt - 1, 16));
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * ceiling);
+        }
+    }
+
+    private static long nowMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * Perform the request on a pooled connection and parse the body while it is downloaded.
+     *
+     * @param budgetMillis time left for this attempt, the timeouts are cut down to it
+     * @param cancellation disconnects the connection when cancelled, may be null
+     */
+    private NewsResponse execute(String url, final NewsResponse previous,
+                                 final QueryUtils.OnNewsParsedListener listener, long budgetMillis,
+                                 LoadCancellation cancellation) throws IOException {
+        URL newsUrl = QueryUtils.createUrl(url);
+
+        /* If the URL is null, then return early. */
+        if (newsUrl == null) {
+            return new NewsResponse(new ArrayList<News>(), null, null, 0);
+        }
+
+        return exchange(newsUrl, previous, budgetMillis, true, cancellation, new ResponseReader<NewsResponse>() {
+            @Override
+            NewsResponse read(CountingInputStream body, HttpURLConnection urlConnection) throws IOException {
+                QueryUtils.PageInfo pageInfo = new QueryUtils.PageInfo();
+                ArrayList<News> newsArticles = QueryUtils.parseNews(body, listener, pageInfo);
+                /* The parser stops at the closing brace, read the rest (and the gzip trailer) */
+                drain(body);
+                return new NewsResponse(newsArticles,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"),
+                        body.getCount(), pageInfo.currentPage, pageInfo.pages);
+            }
+
+            @Override
+            NewsResponse notModified(HttpURLConnection urlConnection) {
+                /* Nothing changed since the previous response, reuse it without downloading or parsing */
+                NetworkStats.recordNotModified(previous.getPayloadBytes());
+                return NewsResponse.notModified(
+                        headerOrDefault(urlConnection, "ETag", previous.getETag()),
+                        headerOrDefault(urlConnection, "Last-Modified", previous.getLastModified()));
+            }
+        });
+    }
+
+    /**
+     * Perform the request of an article's text on a pooled connection, within
+     * {@link #SINGLE_ATTEMPT_BUDGET_MILLIS}.
+     */
+    private static String executeArticleBody(String url, LoadCancellation cancellation) throws IOException {
+        URL bodyUrl = QueryUtils.createUrl(url);
+        if (bodyUrl == null) {
+            return null;
+        }
+        return exchange(bodyUrl, null, SINGLE_ATTEMPT_BUDGET_MILLIS, false, cancellation, new ResponseReader<String>() {
+            @Override
+            String read(CountingInputStream body, HttpURLConnection urlConnection) throws IOException {
+                String text = QueryUtils.parseBodyText(body);
+                drain(body);
+                return text;
+            }
+        });
+    }
+
+    /**
+     * Download the body of the given URL (e.g. an image) into the stream, in a single attempt within
+     * {@link #SINGLE_ATTEMPT_BUDGET_MILLIS}. Images are not served by the API, so neither the retries
+     * nor the circuit breaker apply.
+     *
+     * @return false if the server answered with an error status, nothing was written then
+     */
+    public static boolean download(String url, final OutputStream out, LoadCancellation cancellation)
+            throws IOException {
+        URL downloadUrl = QueryUtils.createUrl(url);
+        if (downloadUrl == null) {
+            return false;
+        }
+        try {
+            /* Images are the largest bodies, the best measure of the throughput */
+            return exchange(downloadUrl, null, SINGLE_ATTEMPT_BUDGET_MILLIS, false, cancellation,
+                    new ResponseReader<Boolean>() {
+                        @Override
+                        Boolean read(CountingInputStream body, HttpURLConnection urlConnection) throws IOException {
+                            byte[] buffer = new byte[8192];
+                            int count;
+                            while ((count = body.read(buffer)) != -1) {
+                                out.write(buffer, 0, count);
+                            }
+                            return true;
+                        }
+                    });
+        } catch (HttpStatusException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Perform a GET on a pooled connection: open it with timeouts cut down to the budget, hand the
+     * decoded body to the reader, count it in {@link NetworkStats} and the {@link NetworkPolicy},
+     * and give the connection back to the pool (a half read one is disconnected instead). An error
+     * status is read to its end and thrown as an {@link HttpStatusException}.
+     *
+     * @param previous     previous response whose validators are sent, or null
+     * @param budgetMillis time left for the request
+     * @param timed        whether the steps are recorded as the spans of the news pipeline
+     * @param cancellation disconnects the connection when cancelled, may be null
+     */
+    private static <T> T exchange(URL url, NewsResponse previous, long budgetMillis, boolean timed,
+                                  LoadCancellation cancellation, ResponseReader<T> reader) throws IOException {
+        if (budgetMillis <= 0) {
+            throw new SocketTimeoutException("No time left to request " + url);
+        }
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        boolean reusable = false;
+        try {
+            long connectStart = timed ? NewsMetrics.start() : 0;
+            urlConnection = openHttpConnection(url, previous, (int) Math.min(budgetMillis, Integer.MAX_VALUE),
+                    cancellation);
+            NewsMetrics.end(NewsMetrics.Span.CONNECT, connectStart);
+            long requestStart = System.nanoTime();
+            int responseCode = urlConnection.getResponseCode();
+            long firstByteNanos = System.nanoTime() - requestStart;
+            NetworkPolicy.getInstance().recordRoundTrip(firstByteNanos);
+            if (timed) {
+                NewsMetrics.recordNanos(NewsMetrics.Span.FIRST_BYTE, firstByteNanos);
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                reusable = true;
+                return reader.notModified(urlConnection);
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error response code " + responseCode + " for " + url);
+                /* Read the error body to the end so the connection can still go back to the pool */
+                inputStream = urlConnection.getErrorStream();
+                drain(inputStream);
+                reusable = true;
+                throw new HttpStatusException(responseCode, parseRetryAfter(urlConnection.getHeaderField("Retry-After")));
+            }
+            long bodyStart = timed ? NewsMetrics.start() : 0;
+            /* Always timed, the network policy measures the throughput */
+            CountingInputStream wireStream = new CountingInputStream(urlConnection.getInputStream(), true);
+            inputStream = wireStream;
+            if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            CountingInputStream decodedStream = new CountingInputStream(inputStream, false);
+            inputStream = decodedStream;
+            T result = reader.read(decodedStream, urlConnection);
+            drain(inputStream);
+            reusable = true;
+            NetworkStats.recordResponse(wireStream.getCount(), decodedStream.getCount());
+            NetworkPolicy.getInstance().recordDownload(wireStream.getCount(), wireStream.getReadNanos());
+            if (bodyStart != 0) {
+                /* Download and parse interleave: the time not spent waiting on the socket was parsing */
+                long bodyNanos = System.nanoTime() - bodyStart;
+                NewsMetrics.recordNanos(NewsMetrics.Span.DOWNLOAD, wireStream.getReadNanos());
+                NewsMetrics.recordNanos(NewsMetrics.Span.PARSE, bodyNanos - wireStream.getReadNanos());
+            }
+            return result;
+        } catch (RuntimeException e) {
+            /* HttpURLConnection may fail this way when it is disconnected while the request is sent */
+            if (cancellation != null && cancellation.isCancelled()) {
+                InterruptedIOException cancelled = new InterruptedIOException("Cancelled while requesting " + url);
+                cancelled.initCause(e);
+                throw cancelled;
+            }
+            throw e;
+        } finally {
+            if (urlConnection != null && cancellation != null) {
+                cancellation.unregister(urlConnection);
+            }
+            if (inputStream != null) {
+                inputStream.close();
+            }
+            /* Only a half read connection is thrown away, a fully read one goes back to the pool */
+            if (urlConnection != null && !reusable) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Open and connect an HTTP GET connection for the given URL, asking for a gzip encoded body
+     * and sending the validators of the previous response (if any). The connection is registered
+     * with the cancellation (if any) before connecting, so a cancel also aborts the handshake.
+     * The timeouts are those of the network's {@link NetworkPolicy.ConnectionClass}, at most the budget.
+     */
+    private static HttpURLConnection openHttpConnection(URL url, NewsResponse previous, int budgetMillis,
+                                                        LoadCancellation cancellation) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        /* Longer on a slow network, where a request that makes progress shouldn't be cut short */
+        NetworkPolicy.ConnectionClass connectionClass = NetworkPolicy.getInstance().getConnectionClass();
+        urlConnection.setReadTimeout(Math.min(connectionClass.getReadTimeoutMillis(), budgetMillis));
+        urlConnection.setConnectTimeout(Math.min(connectionClass.getConnectTimeoutMillis(), budgetMillis));
+        /* Setting the header ourselves means the body is not decoded for us, see execute */
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (previous != null && previous.getETag() != null) {
+            urlConnection.setRequestProperty("If-None-Match", previous.getETag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            urlConnection.setRequestProperty("If-Modified-Since", previous.getLastModified());
+        }
+        if (cancellation != null) {
+            cancellation.register(urlConnection);
+        }
+        urlConnection.connect();
+        if (cancellation != null && cancellation.isCancelled()) {
+            /* Cancelled between registering and connecting, the disconnect came too early */
+            cancellation.unregister(urlConnection);
+            urlConnection.disconnect();
+            throw new InterruptedIOException("Cancelled while connecting to " + url);
+        }
+        return urlConnection;
+    }
+
+    /**
+     * Return the value of the response header, or the default value when the header is missing.
+     */
+    private static String headerOrDefault(HttpURLConnection urlConnection, String name, String defaultValue) {
+        String value = urlConnection.getHeaderField(name);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Return the wait asked for by a Retry-After header (seconds or an HTTP date), or -1 if there is none.
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try a date
+        }
+        SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try {
+            return Math.max(0, httpDate.parse(retryAfter.trim()).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the stream to its end.
+     */
+    private static void drain(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) != -1) {
+            // Discard
+        }
+    }
+
+    /**
+     * Reads the body of a successful response for {@link #exchange}.
+     */
+    private abstract static class ResponseReader<T> {
+        /**
+         * Return the result of the decoded body, read to its end.
+         */
+        abstract T read(CountingInputStream body, HttpURLConnection urlConnection) throws IOException;
+
+        /**
+         * Return the result of a 304 Not Modified, only answered to a request with validators.
+         */
+        T notModified(HttpURLConnection urlConnection) throws IOException {
+            throw new HttpStatusException(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+        }
+    }
+
+    /**
+     * {@link InputStream} that counts the bytes read through it and, if asked to,
+     * the time spent waiting for them.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final boolean mTimed;
+        private long mCount;
+        private long mReadNanos;
+
+        CountingInputStream(InputStream in, boolean timed) {
+            super(in);
+            mTimed = timed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = mTimed ? System.nanoTime() : 0;
+            int result = super.read();
+            if (mTimed) {
+                mReadNanos += System.nanoTime() - start;
+            }
+            if (result != -1) {
+                mCount++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = mTimed ? System.nanoTime() : 0;
+            int count = super.read(buffer, offset, length);
+            if (mTimed) {
+                mReadNanos += System.nanoTime() - start;
+            }
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        long getReadNanos() {
+            return mReadNanos;
+        }
+    }
+
+    /**
+     * A request in flight and the callers sharing it, counted while they haven't cancelled.
+     */
+    private static final class SharedRequest extends FutureTask<NewsResponse> {
+        final String key;
+        /** Disconnects the request, only when every caller has cancelled */
+        final LoadCancellation cancellation;
+        /** Callers that share the request and haven't cancelled, guarded by mInFlight */
+        int callers;
+
+        SharedRequest(String key, Callable<NewsResponse> callable, LoadCancellation cancellation) {
+            super(callable);
+            this.key = key;
+            this.cancellation = cancellation;
+        }
+    }
+
+    /**
+     * The server answered with a status other than 200 or 304.
+     */
+    public static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int mResponseCode;
+        private final long mRetryAfterMillis;
+
+        HttpStatusException(int responseCode, long retryAfterMillis) {
+            super("Error response code: " + responseCode);
+            mResponseCode = responseCode;
+            mRetryAfterMillis = retryAfterMillis;
+        }
+
+        public int getResponseCode() {
+            return mResponseCode;
+        }
+
+        /**
+         * Return the wait the server asked for before the next request, or -1 if it didn't.
+         */
+        public long getRetryAfterMillis() {
+            return mRetryAfterMillis;
+        }
+
+        /**
+         * Return whether the same request may succeed later: server errors and rate limiting.
+         */
+        public boolean isRetryable() {
+            return mResponseCode >= 500 || mResponseCode == HTTP_TOO_MANY_REQUESTS;
+        }
+    }
+
+    /**
+     * The call was not made because the API has been failing, see {@link CircuitBreaker}.
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String url) {
+            super("Circuit open, not requesting " + url);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.newsapp4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link NewsList} is a list of articles delivered to the screen together with the
+ * {@link NewsTagIndex} of its articles, built on the background thread that made the list: the
+ * main thread never scans a list to filter it by a tag.
+ * <p>
+ * Like every list the screen shows it isn't modified once built, the index would no longer match.
+ */
+public class NewsList extends ArrayList<News> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient NewsTagIndex mTagIndex;
+
+    /**
+     * Constructs a new {@link NewsList} of the articles, in their order, and indexes them.
+     */
+    public NewsList(List<News> newsArticles) {
+        super(newsArticles);
+        mTagIndex = NewsTagIndex.build(this);
+    }
+
+    /**
+     * Return the index of the articles. Read only, the list may be delivered again: add it to
+     * another index to build on it.
+     */
+    public NewsTagIndex getTagIndex() {
+        return mTagIndex;
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.android.newsapp4;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NewsLoadEngine} runs the loads of the news list on a small bounded executor, outside of
+ * any Activity, and hands their results to the screens attached to them on the main thread.
+ * Loads are identified by a key (the query URLs):
+ * <ul>
+ * <li>The last result of every key is kept. A screen attaching to the key (after a rotation, or
+ * when coming back) gets it straight away, and it is not loaded again while it is younger than
+ * the max age.</li>
+ * <li>A screen attaching to a key that is already loading joins the load in flight instead of
+ * starting another one.</li>
+ * <li>A load whose last screen detaches for good (it finished, e.g. on back) is cancelled: its
+ * thread is interrupted and its connections are disconnected through its {@link LoadCancellation}.
+ * A screen detaching for a configuration change leaves the load running for the next one.</li>
+ * </ul>
+ */
+public class NewsLoadEngine {
+
+    /**
+     * The work of a load, run on the engine's executor.
+     */
+    public interface Task {
+        /**
+         * Load the news, publishing early results (e.g. cached ones) as they become available.
+         *
+         * @return the final result, or null if there is nothing to show
+         */
+        ArrayList<News> load(Publisher publisher, LoadCancellation cancellation);
+    }
+
+    /**
+     * Hands early results of a load to its screens, while it is still running.
+     */
+    public interface Publisher {
+        void publish(ArrayList<News> newsArticles);
+    }
+
+    /**
+     * A screen showing the results of a load, called on the main thread.
+     */
+    public interface Observer {
+        void onNewsLoaded(ArrayList<News> newsArticles);
+    }
+
+    /** Upper bound of loads running at the same time, each one fans out on its own */
+    private static final int MAX_PARALLEL_LOADS = 2;
+    /** Age after which a result is loaded again when a screen asks for it */
+    private static final long RESULT_MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+    private static NewsLoadEngine sInstance;
+
+    private final ExecutorService mExecutor;
+    /** Runs the deliveries on the main thread */
+    private final Executor mMainThread;
+    private final long mResultMaxAgeMillis;
+    /** Loads by key, guarded by this */
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    /**
+     * Return the app wide engine, delivering on the main thread.
+     */
+    public static synchronized NewsLoadEngine getInstance() {
+        if (sInstance == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_LOADS, MAX_PARALLEL_LOADS,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NewsLoadEngine");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            /* No thread is kept while nothing loads */
+            executor.allowCoreThreadTimeOut(true);
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            sInstance = new NewsLoadEngine(executor, new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+            }, RESULT_MAX_AGE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsLoadEngine}, the app uses {@link #getInstance()}.
+     *
+     * @param executor           runs the loads
+     * @param mainThread         runs the deliveries
+     * @param resultMaxAgeMillis age after which a result is loaded again
+     */
+    NewsLoadEngine(ExecutorService executor, Executor mainThread, long resultMaxAgeMillis) {
+        mExecutor = executor;
+        mMainThread = mainThread;
+        mResultMaxAgeMillis = resultMaxAgeMillis;
+    }
+
+    /**
+     * Attach a screen to the load of the key. The observer gets the latest result straight away
+     * (if there is one), then every result of the load in flight. A load is started only if there
+     * is none in flight and no result younger than the max age.
+     *
+     * @param key      identifies the load, e.g. its query URLs
+     * @param task     loads the key, also used by {@link #reloadIfStale}
+     * @param observer receives the results on the main thread until {@link #detach}
+     */
+    public void attach(String key, Task task, Observer observer) {
+        Entry entry;
+        ArrayList<News> latest;
+        synchronized (this) {
+            dropUnobserved(key);
+            entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+            entry.task = task;
+            entry.observers.add(observer);
+            latest = entry.load != null && entry.load.early != null ? entry.load.early : entry.result;
+            if (entry.load != null) {
+                NewsMetrics.count(NewsMetrics.Counter.LOADS_JOINED);
+            } else if (isStale(entry)) {
+                start(entry);
+            }
+        }
+        if (latest != null) {
+            deliverLatest(entry, observer, latest);
+        }
+    }
+
+    /**
+     * Start loading the key before any screen is attached to it, e.g. while the first screen is
+     * still being created. Nothing is started if the key is loading or has a result younger than
+     * the max age. The screen attaching to the key later joins the load.
+     */
+    public synchronized void preload(String key, Task task) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(key, entry);
+        }
+        entry.task = task;
+        if (entry.load == null && isStale(entry)) {
+            start(entry);
+        }
+    }
+
+    /**
+     * Use the result as the latest one of the key, e.g. one derived on the device from the result of
+     * another key, so a screen attaching to the key gets it without a load. Ignored while the key
+     * is loading, the load's result is newer.
+     */
+    public synchronized void seed(String key, ArrayList<News> result) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(key, entry);
+        }
+        if (entry.load == null) {
+            entry.result = result;
+            entry.resultMillis = nowMillis();
+        }
+    }
+
+    /**
+     * Load the key again if its result is older than the max age and it isn't loading,
+     * e.g. when the screen comes back to the foreground.
+     */
+    public synchronized void reloadIfStale(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.load == null && entry.task != null && isStale(entry)) {
+            start(entry);
+        }
+    }
+
+    /**
+     * Detach a screen from the load of the key. The result is kept for the next screen.
+     *
+     * @param cancel whether to cancel the load in flight if no other screen is attached,
+     *               false when the screen is only recreated (a configuration change)
+     */
+    public synchronized void detach(String key, Observer observer, boolean cancel) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return;
+        }
+        entry.observers.remove(observer);
+        if (!entry.observers.isEmpty()) {
+            return;
+        }
+        if (cancel && entry.load != null) {
+            entry.load.cancel();
+            entry.load = null;
+            NewsMetrics.count(NewsMetrics.Counter.LOADS_CANCELLED);
+        }
+        if (entry.result == null && entry.load == null) {
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * Forget the results of the keys no screen is attached to, e.g. when memory runs low. Their
+     * screens load them from the cache again.
+     */
+    public synchronized void trimMemory() {
+        dropUnobserved(null);
+    }
+
+    /**
+     * Return whether the result of the entry should be loaded (again).
+     */
+    private boolean isStale(Entry entry) {
+        return entry.result == null || nowMillis() - entry.resultMillis >= mResultMaxAgeMillis;
+    }
+
+    /**
+     * Only the results of the keys being shown are kept: forget those no screen is attached to.
+     */
+    private void dropUnobserved(String key) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (!mapEntry.getKey().equals(key) && entry.observers.isEmpty() && entry.load == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void start(final Entry entry) {
+        final Load load = new Load();
+        final Task task = entry.task;
+        entry.load = load;
+        NewsMetrics.count(NewsMetrics.Counter.LOADS);
+        load.future = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<News> result = null;
+                try {
+                    result = task.load(new Publisher() {
+                        @Override
+                        public void publish(ArrayList<News> newsArticles) {
+                            onPublished(entry, load, newsArticles);
+                        }
+                    }, load.cancellation);
+                } finally {
+                    onLoaded(entry, load, result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the executor with an early result of the load.
+     */
+    private void onPublished(final Entry entry, final Load load, final ArrayList<News> newsArticles) {
+        synchronized (this) {
+            if (entry.load != load) {
+                return;
+            }
+            load.early = newsArticles;
+        }
+        final long postedNanos = NewsMetrics.start();
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (load.cancellation.isCancelled()) {
+                    return;
+                }
+                /* Posted from the loading thread before the final result, so it never replaces it */
+                ArrayList<Observer> observers;
+                synchronized (NewsLoadEngine.this) {
+                    observers = new ArrayList<Observer>(entry.observers);
+                }
+                for (Observer observer : observers) {
+                    observer.onNewsLoaded(newsArticles);
+                }
+                NewsMetrics.count(NewsMetrics.Counter.EARLY_DELIVERIES);
+                NewsMetrics.end(NewsMetrics.Span.HANDOFF, postedNanos);
+            }
+        });
+    }
+
+    /**
+     * Called on the executor when the load is over, the result is kept and delivered.
+     */
+    private void onLoaded(final Entry entry, Load load, final ArrayList<News> result) {
+        final boolean published;
+        synchronized (this) {
+            if (entry.load != load) {
+                /* Cancelled */
+                return;
+            }
+            entry.load = null;
+            published = result != null && result == load.early;
+            if (result != null) {
+                entry.result = result;
+                entry.resultMillis = nowMillis();
+            }
+        }
+        if (published) {
+            /* Nothing changed since the early result, which the screens already have */
+            return;
+        }
+        final long readyNanos = NewsMetrics.start();
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Observer> observers;
+                synchronized (NewsLoadEngine.this) {
+                    observers = new ArrayList<Observer>(entry.observers);
+                }
+                for (Observer observer : observers) {
+                    observer.onNewsLoaded(result);
+                }
+                NewsMetrics.end(NewsMetrics.Span.HANDOFF, readyNanos);
+            }
+        });
+    }
+
+    /**
+     * Hand the latest result to a screen that just attached, if it is still attached by then.
+     */
+    private void deliverLatest(final Entry entry, final Observer observer, final ArrayList<News> latest) {
+        mMainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (NewsLoadEngine.this) {
+                    if (!entry.observers.contains(observer)) {
+                        return;
+                    }
+                }
+                observer.onNewsLoaded(latest);
+            }
+        });
+    }
+
+    private static long nowMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * The screens, last result and load in flight of a key.
+     */
+    private static final class Entry {
+        final ArrayList<Observer> observers = new ArrayList<Observer>();
+        Task task;
+        ArrayList<News> result;
+        long resultMillis;
+        Load load;
+    }
+
+    /**
+     * A load in flight.
+     */
+    private static final class Load {
+        final LoadCancellation cancellation = new LoadCancellation();
+        Future<?> future;
+        /** Latest early result */
+        ArrayList<News> early;
+
+        void cancel() {
+            cancellation.cancel();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
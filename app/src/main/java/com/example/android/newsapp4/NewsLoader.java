@@ -1,23 +1,29 @@
 package com.example.android.newsapp4;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
 import android.util.Log;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 
-public class NewsLoader extends AsyncTaskLoader<ArrayList<News>> {
+/**
+ * {@link NewsLoader} loads the first page of the news list for the {@link NewsLoadEngine}:
+ * the cached articles first, then the fresh ones. It holds no reference to the Activity,
+ * so the engine can keep it running across a configuration change. Every list is delivered as a
+ * {@link NewsList}, indexed by tag on the loader's thread.
+ */
+public class NewsLoader implements NewsLoadEngine.Task {
     /** Tag for log messages */
     private static final String LOG_TAG = NewsLoader.class.getName();
-    /** Query URL */
-    private String mUrl;
-
-    @Override
-    protected void onStartLoading() {
-        Log.v("EQL:onStartLoading", "forceLoad");
-        forceLoad();
-    }
+    /** Number of articles delivered to the UI before the rest of the response has arrived */
+    private static final int FIRST_BATCH_SIZE = 5;
+    /** Query URLs, one per topic */
+    private List<String> mUrls;
+    /** On-disk cache of the last result of every query */
+    private final NewsCache mCache;
 
     /**
      * Constructs a new {@link NewsLoader}.
@@ -26,24 +32,166 @@ public class NewsLoader extends AsyncTaskLoader<ArrayList<News>> {
      * @param url to load data from
      */
     public NewsLoader(Context context, String url) {
-        super(context);
-        mUrl = url;
+        this(context, Collections.singletonList(url));
+    }
+
+    /**
+     * Constructs a new {@link NewsLoader} for several topics, loaded concurrently and merged.
+     *
+     * @param context of the activity, only used to get the cache
+     * @param urls to load data from, one per topic
+     */
+    public NewsLoader(Context context, List<String> urls) {
+        this(NewsCache.getInstance(context), urls);
+    }
+
+    /**
+     * Constructs a new {@link NewsLoader} on the given cache.
+     */
+    NewsLoader(NewsCache cache, List<String> urls) {
+        mUrls = urls;
+        mCache = cache;
     }
 
     @Override
-    public ArrayList<News> loadInBackground() {
-        if (mUrl == null) {
-            Log.v("loadInBackground", "No URL given (or taken). Exit without trying to read news...");
+    public ArrayList<News> load(NewsLoadEngine.Publisher publisher, LoadCancellation cancellation) {
+        if (mUrls == null || mUrls.isEmpty()) {
+            Log.v("load", "No URL given (or taken). Exit without trying to read news...");
             return null;
         }
+        if (mUrls.size() == 1) {
+            return loadQuery(mUrls.get(0), publisher, cancellation);
+        }
+        return loadTopics(publisher, cancellation);
+    }
+
+    /**
+     * Load a single query: the cached result first, then the revalidated one. Without a cached
+     * result, the first articles are shown as soon as they are parsed, then the whole response.
+     */
+    private ArrayList<News> loadQuery(String url, final NewsLoadEngine.Publisher publisher,
+                                      LoadCancellation cancellation) {
+        final ArrayList<News> firstBatch = new ArrayList<News>(FIRST_BATCH_SIZE);
+        /* Show the cached result straight away, then revalidate it over the network */
+        final NewsResponse cachedResponse = getCachedEntry(url);
+        final ArrayList<News> cachedArticles = cachedResponse != null ? new NewsList(cachedResponse.getNews()) : null;
+        if (cachedArticles != null && mCache.isSynced(url, NewsSync.SYNC_INTERVAL_MILLIS)) {
+            /* Synced in the background recently: a local read, no request at all */
+            NewsMetrics.count(NewsMetrics.Counter.LOCAL_READS);
+            return cachedArticles;
+        }
+        if (cachedArticles != null) {
+            publisher.publish(cachedArticles);
+        }
         try {
-            Log.v("EQLoader Background", "Try to extractNews (LOAD IN BACKGROUND)");
-            // Perform the network request, parse the response, and extract a list of news articles.
-            ArrayList<News> newsArticles = QueryUtils.extractNews(mUrl);
-            return newsArticles;
+            if (cachedArticles != null) {
+                /* The cached list is on screen: revalidate it, only asking for what is new since */
+                NewsResponse response = mCache.revalidate(url, cancellation);
+                if (response.getNews().equals(cachedArticles)) {
+                    /* Nothing changed: the engine doesn't deliver the published instance again */
+                    return cachedArticles;
+                }
+                return new NewsList(response.getNews());
+            }
+            // Perform the network request, parse the response while it streams in, and extract a list of news articles.
+            NewsResponse response = NewsHttpClient.getInstance().fetchNews(url, null, new QueryUtils.OnNewsParsedListener() {
+                @Override
+                public void onNewsParsed(News news) {
+                    if (firstBatch.size() >= FIRST_BATCH_SIZE) {
+                        return;
+                    }
+                    firstBatch.add(news);
+                    if (firstBatch.size() == FIRST_BATCH_SIZE) {
+                        publisher.publish(new NewsList(firstBatch));
+                    }
+                }
+            }, cancellation);
+            mCache.put(url, response);
+            return new NewsList(response.getNews());
         } catch (IOException e) {
-            Log.e("NewsLoader", "Problem parsing the news article JSON results", e);
+            if (!cancellation.isCancelled()) {
+                Log.e("NewsLoader", "Problem parsing the news article JSON results", e);
+            }
+        }
+        /* Offline or the request failed: keep showing what we have */
+        return cachedArticles;
+    }
+
+    /**
+     * Load the queries of several topics concurrently. The cached results are merged and shown
+     * first, then the merged list is shown again every time a topic's fresh result arrives.
+     */
+    private ArrayList<News> loadTopics(final NewsLoadEngine.Publisher publisher,
+                                       final LoadCancellation cancellation) {
+        /* Latest known articles of every query: cached ones first, replaced as fresh ones arrive */
+        final LinkedHashMap<String, ArrayList<News>> latest = new LinkedHashMap<String, ArrayList<News>>();
+        boolean anyCached = false;
+        boolean allFresh = true;
+        for (String url : mUrls) {
+            NewsResponse cachedResponse = getCachedEntry(url);
+            ArrayList<News> cached = cachedResponse != null ? cachedResponse.getNews() : null;
+            anyCached |= cached != null;
+            allFresh &= cached != null && mCache.isSynced(url, NewsSync.SYNC_INTERVAL_MILLIS);
+            latest.put(url, cached != null ? cached : new ArrayList<News>());
+        }
+        final ArrayList<News> cachedArticles = anyCached
+                ? new NewsList(NewsFanOut.merge(new ArrayList<ArrayList<News>>(latest.values()))) : null;
+        if (allFresh) {
+            /* Every topic was synced in the background recently: a local read, no request at all */
+            NewsMetrics.count(NewsMetrics.Counter.LOCAL_READS);
+            return cachedArticles;
+        }
+        if (cachedArticles != null) {
+            publisher.publish(cachedArticles);
+        }
+        try {
+            final int[] arrived = new int[1];
+            NewsFanOut.load(mUrls, new NewsFanOut.Source() {
+                @Override
+                public NewsResponse load(String url) throws IOException {
+                    return mCache.revalidate(url, cancellation);
+                }
+            }, new NewsFanOut.OnTopicLoadedListener() {
+                @Override
+                public void onTopicLoaded(String url, NewsResponse response) {
+                    latest.put(url, response.getNews());
+                    /* The last topic is delivered as the final result */
+                    if (++arrived[0] < mUrls.size()) {
+                        publisher.publish(new NewsList(NewsFanOut.merge(new ArrayList<ArrayList<News>>(latest.values()))));
+                    }
+                }
+            });
+            /* Topics that failed keep their cached articles */
+            ArrayList<News> newsArticles = NewsFanOut.merge(new ArrayList<ArrayList<News>>(latest.values()));
+            if (newsArticles.equals(cachedArticles)) {
+                /* Nothing changed: the engine doesn't deliver the published instance again */
+                return cachedArticles;
+            }
+            return new NewsList(newsArticles);
+        } catch (IOException e) {
+            if (!cancellation.isCancelled()) {
+                Log.e("NewsLoader", "Problem loading the news of the topics", e);
+            }
+        }
+        /* Offline or every request failed: keep showing what we have */
+        return cachedArticles;
+    }
+
+    /**
+     * Return the cached response of the query URL or, if there is none, the one of the same query
+     * asked with the page size of another network: shown until the query itself is loaded.
+     */
+    private NewsResponse getCachedEntry(String url) {
+        NewsResponse cached = mCache.getEntry(url);
+        int pageSize = NewsQuery.getPageSize(url);
+        for (NetworkPolicy.ConnectionClass connectionClass : NetworkPolicy.ConnectionClass.values()) {
+            if (cached != null) {
+                break;
+            }
+            if (connectionClass.getPageSize() != pageSize) {
+                cached = mCache.getEntry(NewsQuery.withPageSize(url, connectionClass.getPageSize()));
+            }
         }
-        return null;
+        return cached;
     }
-}
\ No newline at end of file
+}
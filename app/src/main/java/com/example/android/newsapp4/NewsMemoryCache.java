@@ -0,0 +1,236 @@
+package com.example.android.newsapp4;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link NewsMemoryCache} keeps the recently used entries of the {@link NewsCache} in memory, in
+ * two tiers in front of the disk:
+ * <ul>
+ * <li>hot: the responses themselves, ready to show, for the few most recently used query URLs;</li>
+ * <li>warm: every entry held in memory as the {@link NewsBatch} it is stored as, a fraction of the
+ * heap of its objects (every distinct string once, times as longs), decoded again when asked for.
+ * It includes the hot entries, so demoting one is only forgetting its objects.</li>
+ * </ul>
+ * Under memory pressure the hot tier is emptied first, then the warm one shrinks; nothing is lost,
+ * the disk (the cold tier) keeps every entry. Each tier is bounded and evicts the least recently
+ * used entries, the warm one by its size in bytes.
+ * <p>
+ * Hits of each tier are counted in {@link NewsMetrics}; {@link NewsCache} counts the disk hits and
+ * the misses.
+ */
+public class NewsMemoryCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsMemoryCache.class.getSimpleName();
+
+    /** {@link #getSyncedAt} of an entry that isn't in memory */
+    public static final long NOT_IN_MEMORY = -1;
+    /** {@link #getSyncedAt} of an entry that a screen's load stored, not the background sync */
+    public static final long NOT_SYNCED = 0;
+
+    /** Approximate size of a warm entry without its batch: the objects, the URL and the validators */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final int mMaxHotEntries;
+    private final long mMaxWarmBytes;
+    /** Decoded responses by query URL, least recently used first, guarded by this */
+    private final LinkedHashMap<String, NewsResponse> mHot =
+            new LinkedHashMap<String, NewsResponse>(16, 0.75f, true);
+    /** Encoded entries by query URL, least recently used first, guarded by this */
+    private final LinkedHashMap<String, WarmEntry> mWarm =
+            new LinkedHashMap<String, WarmEntry>(16, 0.75f, true);
+    /** Total size of the warm entries, guarded by this */
+    private long mWarmBytes;
+
+    /**
+     * Constructs a new {@link NewsMemoryCache}.
+     *
+     * @param maxHotEntries upper bound for the number of responses kept decoded
+     * @param maxWarmBytes  upper bound for the total size of the entries kept encoded
+     */
+    public NewsMemoryCache(int maxHotEntries, long maxWarmBytes) {
+        mMaxHotEntries = maxHotEntries;
+        mMaxWarmBytes = maxWarmBytes;
+    }
+
+    /**
+     * Return the response of the query URL, from the hot tier or decoded from the warm one (it is
+     * then hot again), or null if it isn't in memory or was saved before the given time (it is then
+     * dropped). The list is a copy, the caller may keep or change it.
+     */
+    public synchronized NewsResponse get(String url, long savedAfterMillis) {
+        WarmEntry warm = mWarm.get(url);
+        if (warm == null) {
+            return null;
+        }
+        if (warm.savedAt < savedAfterMillis) {
+            remove(url);
+            return null;
+        }
+        NewsResponse hot = mHot.get(url);
+        if (hot != null) {
+            NewsMetrics.count(NewsMetrics.Counter.CACHE_HOT_HITS);
+            return copyOf(hot);
+        }
+        try {
+            hot = new NewsResponse(NewsBatch.wrap(ByteBuffer.wrap(warm.batch)).toList(), warm.eTag,
+                    warm.lastModified, warm.payloadBytes, warm.currentPage, warm.pages);
+        } catch (IOException e) {
+            /* The disk has its own copy */
+            Log.e(LOG_TAG, "Problem decoding the news cache entry", e);
+            remove(url);
+            return null;
+        }
+        NewsMetrics.count(NewsMetrics.Counter.CACHE_WARM_HITS);
+        putHot(url, hot);
+        return copyOf(hot);
+    }
+
+    /**
+     * Return the time the background sync saved the entry of the query URL, {@link #NOT_SYNCED}
+     * if something else saved it or {@link #NOT_IN_MEMORY}. Not counted as a use of the entry.
+     */
+    public synchronized long getSyncedAt(String url) {
+        for (Map.Entry<String, WarmEntry> entry : mWarm.entrySet()) {
+            /* Iterating doesn't reorder an access ordered map, get would */
+            if (entry.getKey().equals(url)) {
+                WarmEntry warm = entry.getValue();
+                return warm.synced ? warm.savedAt : NOT_SYNCED;
+            }
+        }
+        return NOT_IN_MEMORY;
+    }
+
+    /**
+     * Keep the response of the query URL in both tiers, replacing any previous one.
+     *
+     * @param batch   the articles of the response encoded as a {@link NewsBatch}, e.g. as stored
+     * @param savedAt time the response was saved to the disk
+     * @param synced  whether the background sync saved it
+     */
+    public synchronized void put(String url, NewsResponse response, byte[] batch, long savedAt,
+                                 boolean synced) {
+        remove(url);
+        WarmEntry warm = new WarmEntry(response, batch, savedAt, synced);
+        if (warm.bytes > mMaxWarmBytes) {
+            return;
+        }
+        mWarm.put(url, warm);
+        mWarmBytes += warm.bytes;
+        trimWarm(mMaxWarmBytes);
+        putHot(url, copyOf(response));
+    }
+
+    /**
+     * Forget the entry of the query URL.
+     */
+    public synchronized void remove(String url) {
+        mHot.remove(url);
+        WarmEntry warm = mWarm.remove(url);
+        if (warm != null) {
+            mWarmBytes -= warm.bytes;
+        }
+    }
+
+    /**
+     * Return the query URLs of every entry in memory.
+     */
+    public synchronized ArrayList<String> urls() {
+        return new ArrayList<String>(mWarm.keySet());
+    }
+
+    /**
+     * Forget the decoded responses; they are decoded again from the warm tier when asked for.
+     */
+    public synchronized void demoteHot() {
+        mHot.clear();
+    }
+
+    /**
+     * Evict the least recently used entries until the warm tier (and with it the hot one) fits
+     * the given size.
+     */
+    public synchronized void trimWarm(long maxBytes) {
+        Iterator<Map.Entry<String, WarmEntry>> iterator = mWarm.entrySet().iterator();
+        while (mWarmBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, WarmEntry> eldest = iterator.next();
+            mHot.remove(eldest.getKey());
+            mWarmBytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Forget every entry, the disk still has them.
+     */
+    public synchronized void clear() {
+        mHot.clear();
+        mWarm.clear();
+        mWarmBytes = 0;
+    }
+
+    public long getMaxWarmBytes() {
+        return mMaxWarmBytes;
+    }
+
+    public synchronized int getHotCount() {
+        return mHot.size();
+    }
+
+    public synchronized int getWarmCount() {
+        return mWarm.size();
+    }
+
+    public synchronized long getWarmBytes() {
+        return mWarmBytes;
+    }
+
+    private void putHot(String url, NewsResponse response) {
+        mHot.put(url, response);
+        Iterator<String> iterator = mHot.keySet().iterator();
+        while (mHot.size() > mMaxHotEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static NewsResponse copyOf(NewsResponse response) {
+        return new NewsResponse(new ArrayList<News>(response.getNews()), response.getETag(),
+                response.getLastModified(), response.getPayloadBytes(), response.getCurrentPage(),
+                response.getPages());
+    }
+
+    /**
+     * An entry of the warm tier: the header of the disk entry and its articles' batch.
+     */
+    private static final class WarmEntry {
+        final byte[] batch;
+        final String eTag;
+        final String lastModified;
+        final long payloadBytes;
+        final int currentPage;
+        final int pages;
+        final long savedAt;
+        final boolean synced;
+        final long bytes;
+
+        WarmEntry(NewsResponse response, byte[] batch, long savedAt, boolean synced) {
+            this.batch = batch;
+            eTag = response.getETag();
+            lastModified = response.getLastModified();
+            payloadBytes = response.getPayloadBytes();
+            currentPage = response.getCurrentPage();
+            pages = response.getPages();
+            this.savedAt = savedAt;
+            this.synced = synced;
+            bytes = batch.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.newsapp4;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide timings of the fetch, parse and bind pipeline, kept in a {@link LatencyHistogram}
+ * per {@link Span}, plus a few event {@link Counter}s. Shown on the {@link MetricsActivity} debug
+ * screen and in {@code adb shell dumpsys activity com.example.android.newsapp4}.
+ * <p>
+ * Everything is off until {@link #setEnabled} is called (debug builds do it on start). While off,
+ * {@link #start} returns 0 without reading the clock and recording a span or a count is a single
+ * check of a volatile field.
+ */
+public final class NewsMetrics {
+
+    /**
+     * Timed steps of the pipeline, in the order they happen.
+     */
+    public enum Span {
+        /** DNS lookup, TCP and TLS handshakes (close to zero on a pooled connection) */
+        CONNECT("connect"),
+        /** From the request being sent to the status line arriving */
+        FIRST_BYTE("first byte"),
+        /** Time spent waiting for the body on the socket */
+        DOWNLOAD("download"),
+        /** Time spent parsing (and gzip decoding) while the body streams in */
+        PARSE("parse"),
+        /** From the loader's result being ready to onLoadFinished having shown it */
+        HANDOFF("handoff"),
+        /** One row bind, sampled */
+        BIND("bind 1/" + BIND_SAMPLE_RATE),
+        /** From opening the reader to the article's text being shown */
+        OPEN_ARTICLE("open article"),
+        /** Decode of a thumbnail from the disk cache, on a loader thread */
+        DECODE_THUMBNAIL("decode thumbnail"),
+        /** From the application being created to the first frame of the list (cold starts only) */
+        INITIAL_DISPLAY("initial display"),
+        /** From the application being created to the first articles (or an error) shown */
+        FULL_DISPLAY("full display");
+
+        private final String mLabel;
+
+        Span(String label) {
+            mLabel = label;
+        }
+    }
+
+    /**
+     * Counted events, instead of logging every one of them.
+     */
+    public enum Counter {
+        /** Loads started by the load engine */
+        LOADS,
+        /** Screens that joined a load in flight instead of starting another one */
+        LOADS_JOINED,
+        /** Loads cancelled because their screen went away */
+        LOADS_CANCELLED,
+        /** Loads answered from a freshly synced cache, without a request */
+        LOCAL_READS,
+        /** Revalidations that only asked for the articles newer than the cached ones */
+        DELTA_SYNCS,
+        /** Partial or cached lists delivered before the final one */
+        EARLY_DELIVERIES,
+        /** Rows bound by the adapter */
+        BINDS,
+        /** Requests attempted again after a failure */
+        RETRIES,
+        /** Responses with status 429 */
+        RATE_LIMITED,
+        /** Times the circuit breaker opened */
+        BREAKER_OPENS,
+        /** Calls failed fast by the open circuit breaker */
+        BREAKER_REJECTS,
+        /** Article texts downloaded ahead of being opened */
+        BODIES_PREFETCHED,
+        /** Articles opened without their text stored on the device */
+        BODY_MISSES,
+        /** Thumbnails shown straight from memory when their row was bound */
+        THUMBNAIL_MEMORY_HITS,
+        /** Thumbnails downloaded, the others were decoded from the disk cache */
+        THUMBNAIL_DOWNLOADS,
+        /** Thumbnail requests dropped because their row was recycled first */
+        THUMBNAILS_CANCELLED,
+        /** Thumbnails decoded into the memory of an evicted bitmap instead of a new one */
+        BITMAPS_REUSED,
+        /** Cached responses found decoded in memory */
+        CACHE_HOT_HITS,
+        /** Cached responses decoded from their batch in memory */
+        CACHE_WARM_HITS,
+        /** Cached responses read from the disk */
+        CACHE_DISK_HITS,
+        /** Responses not cached, or expired */
+        CACHE_MISSES
+    }
+
+    /** Only one bind out of this many is timed */
+    static final int BIND_SAMPLE_RATE = 8;
+
+    private static final LatencyHistogram[] sHistograms = new LatencyHistogram[Span.values().length];
+    private static final AtomicLongArray sCounts = new AtomicLongArray(Counter.values().length);
+    private static volatile boolean sEnabled;
+    /** Binds happen on the main thread only */
+    private static int sBindSample;
+
+    static {
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Return the start time of a span, or 0 when disabled.
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Return the start time of a bind, or 0 when disabled or when this bind isn't sampled.
+     */
+    public static long startBind() {
+        if (!sEnabled) {
+            return 0;
+        }
+        sCounts.incrementAndGet(Counter.BINDS.ordinal());
+        return ++sBindSample % BIND_SAMPLE_RATE == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the span that began at startNanos (as returned by {@link #start}) and ends now.
+     */
+    public static void end(Span span, long startNanos) {
+        if (startNanos != 0) {
+            recordNanos(span, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Record a span whose duration was measured by the caller.
+     */
+    public static void recordNanos(Span span, long durationNanos) {
+        if (sEnabled) {
+            sHistograms[span.ordinal()].record(durationNanos / 1000);
+        }
+    }
+
+    public static void count(Counter counter) {
+        if (sEnabled) {
+            sCounts.incrementAndGet(counter.ordinal());
+        }
+    }
+
+    public static LatencyHistogram getHistogram(Span span) {
+        return sHistograms[span.ordinal()];
+    }
+
+    public static long getCount(Counter counter) {
+        return sCounts.get(counter.ordinal());
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : sHistograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < sCounts.length(); i++) {
+            sCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Return the share of the cache lookups answered by each tier, e.g. to size the memory tiers.
+     */
+    static String cacheTiers() {
+        long hot = getCount(Counter.CACHE_HOT_HITS);
+        long warm = getCount(Counter.CACHE_WARM_HITS);
+        long disk = getCount(Counter.CACHE_DISK_HITS);
+        long lookups = hot + warm + disk + getCount(Counter.CACHE_MISSES);
+        if (lookups == 0) {
+            return "no lookups";
+        }
+        return String.format(Locale.US, "hot %.0f%%, warm %.0f%%, disk %.0f%% of %d lookups",
+                100.0 * hot / lookups, 100.0 * warm / lookups, 100.0 * disk / lookups, lookups);
+    }
+
+    /**
+     * Return every span, counter, the network totals and the cache tiers' hits, one per line.
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append(sEnabled ? "metrics enabled\n" : "metrics disabled\n");
+        for (Span span : Span.values()) {
+            dump.append(String.format(Locale.US, "%-12s %s%n", span.mLabel, getHistogram(span).summary()));
+        }
+        for (Counter counter : Counter.values()) {
+            dump.append(String.format(Locale.US, "%-12s %d%n",
+                    counter.name().toLowerCase(Locale.US), getCount(counter)));
+        }
+        dump.append(String.format(Locale.US, "%-12s %s%n", "breaker", NewsHttpClient.getInstance().getCircuitState()));
+        dump.append(String.format(Locale.US, "%-12s %s%n", "network", NetworkPolicy.getInstance().summary()));
+        dump.append(NetworkStats.summary()).append('\n');
+        dump.append(String.format(Locale.US, "%-12s %s%n", "cache tiers", cacheTiers()));
+        return dump.toString();
+    }
+}
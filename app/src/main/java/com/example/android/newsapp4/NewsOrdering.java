@@ -0,0 +1,86 @@
+package com.example.android.newsapp4;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link NewsOrdering} re-sorts articles that are already loaded for another order-by preference,
+ * so changing it shows the new order at once, without a request. "newest" is exact; "relevance"
+ * is estimated on the device, the next load brings TheGuardian's own ranking.
+ */
+public final class NewsOrdering {
+
+    /** order-by value of the newest articles first */
+    static final String NEWEST = "newest";
+    /** order-by value of the most relevant articles first */
+    static final String RELEVANCE = "relevance";
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsOrdering() {
+    }
+
+    /**
+     * Return the articles sorted for the order-by value, as a new list. An unknown order keeps
+     * them as they are.
+     *
+     * @param newsArticles the loaded articles, not modified
+     * @param orderBy      order-by value, "newest" or "relevance"
+     * @param topics       topics of the query, the terms relevance is estimated on
+     */
+    public static ArrayList<News> sort(List<News> newsArticles, String orderBy, Collection<String> topics) {
+        ArrayList<News> sorted = new ArrayList<News>(newsArticles);
+        if (NEWEST.equals(orderBy)) {
+            Collections.sort(sorted, NewsFanOut.NEWEST_FIRST);
+        } else if (RELEVANCE.equals(orderBy)) {
+            final HashMap<News, Integer> scores = new HashMap<News, Integer>(sorted.size() * 2);
+            for (News news : sorted) {
+                scores.put(news, relevance(news, topics));
+            }
+            /* Stable: articles as relevant as each other keep their order */
+            Collections.sort(sorted, new Comparator<News>() {
+                @Override
+                public int compare(News a, News b) {
+                    return scores.get(b) - scores.get(a);
+                }
+            });
+        }
+        return sorted;
+    }
+
+    /**
+     * Estimate how relevant the article is to the topics (the query is "technology AND topic"):
+     * every topic in the title counts three times as much as one in the section or the byline.
+     */
+    static int relevance(News news, Collection<String> topics) {
+        String title = lowerCase(news.getDisplayTitle());
+        String rest = lowerCase(news.getSectionName()) + ' ' + lowerCase(news.getDisplayByline());
+        int score = 0;
+        for (String topic : topics) {
+            String term = topic.toLowerCase(Locale.US);
+            if (term.isEmpty()) {
+                continue;
+            }
+            score += 3 * occurrences(title, term) + occurrences(rest, term);
+        }
+        return score;
+    }
+
+    private static int occurrences(String text, String term) {
+        int count = 0;
+        for (int index = text.indexOf(term); index >= 0; index = text.indexOf(term, index + term.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String lowerCase(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.android.newsapp4;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link NewsPager} loads the pages after the first one (which comes from {@link NewsLoader})
+ * while the user scrolls, and prefetches page N+1 in the background while page N is on screen.
+ * <p>
+ * Only a window of {@link #MAX_PAGES_IN_MEMORY} pages is kept: appending a page past the window
+ * drops the oldest one from the top, and scrolling back up loads it again (from the
+ * {@link NewsCache} first) while dropping the last page from the bottom.
+ * All the methods must be called, and the listener is called, on the main thread.
+ */
+public class NewsPager {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsPager.class.getSimpleName();
+
+    /** Number of pages kept in the list at the same time */
+    static final int MAX_PAGES_IN_MEMORY = 5;
+
+    /**
+     * Receives the pages to add to the list, each a {@link NewsList} indexed by tag.
+     */
+    public interface Listener {
+        /**
+         * Add the page at the end of the list, after removing droppedFromTop items from its start.
+         */
+        void onPageAppended(ArrayList<News> page, int droppedFromTop);
+
+        /**
+         * Add the page at the start of the list, after removing droppedFromBottom items from its end.
+         */
+        void onPagePrepended(ArrayList<News> page, int droppedFromBottom);
+    }
+
+    private final List<String> mQueryUrls;
+    private final NewsCache mCache;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /** One background thread: page requests never compete with each other for bandwidth */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    /** Disconnects the page request in flight when the pager is released */
+    private final LoadCancellation mCancellation = new LoadCancellation();
+
+    /** Sizes of the pages in the window, first page first */
+    private final ArrayDeque<Integer> mPageSizes = new ArrayDeque<Integer>();
+    /** Number of the first and last page in the window */
+    private int mFirstPage;
+    private int mLastPage;
+    /** Total number of pages, as reported by the last response */
+    private int mTotalPages = Integer.MAX_VALUE;
+    /** Whether a page is being loaded, only one at a time */
+    private boolean mLoading;
+    /** Incremented on every reset, so results of an older window are ignored */
+    private int mGeneration;
+
+    /** Background request for the page after the window */
+    private Future<NewsResponse> mPrefetch;
+    private int mPrefetchPage;
+
+    /**
+     * Constructs a new {@link NewsPager}.
+     *
+     * @param queryUrls URLs of the queries (one per topic) without a page parameter
+     * @param cache     cache for the pages
+     * @param listener  receives the pages
+     */
+    public NewsPager(List<String> queryUrls, NewsCache cache, Listener listener) {
+        mQueryUrls = queryUrls;
+        mCache = cache;
+        mListener = listener;
+    }
+
+    /**
+     * Start over with the first page on screen, then prefetch the second one.
+     *
+     * @param firstPageSize number of articles of the first page
+     * @param pageSize      number of articles asked for per page
+     */
+    public void reset(int firstPageSize, int pageSize) {
+        mGeneration++;
+        cancelPrefetch();
+        mPageSizes.clear();
+        mPageSizes.addLast(firstPageSize);
+        mFirstPage = 1;
+        mLastPage = 1;
+        mLoading = false;
+        /* A short first page means there is nothing more to load */
+        mTotalPages = firstPageSize < pageSize ? 1 : Integer.MAX_VALUE;
+        prefetch(2);
+    }
+
+    /**
+     * Forget the window, nothing is on screen anymore.
+     */
+    public void reset() {
+        mGeneration++;
+        cancelPrefetch();
+        mPageSizes.clear();
+        mFirstPage = 0;
+        mLastPage = 0;
+        mLoading = false;
+    }
+
+    /**
+     * Called with every delivery of the first page (cached, partial or fresh).
+     *
+     * @param firstPageSize number of articles of the first page
+     * @param pageSize      number of articles asked for per page
+     * @return true when the first page is in the window and should replace the one on screen,
+     * false when the user has scrolled past it
+     */
+    public boolean onFirstPageLoaded(int firstPageSize, int pageSize) {
+        if (mPageSizes.isEmpty()) {
+            reset(firstPageSize, pageSize);
+            return true;
+        }
+        if (mFirstPage != 1) {
+            return false;
+        }
+        mPageSizes.removeFirst();
+        mPageSizes.addFirst(firstPageSize);
+        if (mLastPage == 1) {
+            /* Still on the first page only: it may have grown from a partial one */
+            mTotalPages = firstPageSize < pageSize ? 1 : Integer.MAX_VALUE;
+            if (mPrefetchPage != 2) {
+                prefetch(2);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of articles of the first page, or 0 when it is not in the window.
+     */
+    public int getFirstPageSize() {
+        return mFirstPage == 1 && !mPageSizes.isEmpty() ? mPageSizes.peekFirst() : 0;
+    }
+
+    public boolean hasNext() {
+        return mLastPage > 0 && mLastPage < mTotalPages;
+    }
+
+    public boolean hasPrevious() {
+        return mFirstPage > 1;
+    }
+
+    /**
+     * Load the page after the window, using the prefetched one when it is ready.
+     */
+    public void loadNext() {
+        if (mLoading || !hasNext()) {
+            return;
+        }
+        mLoading = true;
+        final int page = mLastPage + 1;
+        final int generation = mGeneration;
+        final Future<NewsResponse> prefetched = mPrefetchPage == page ? mPrefetch : null;
+        mPrefetch = null;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                NewsResponse response = null;
+                try {
+                    response = prefetched != null ? prefetched.get() : fetch(page, false);
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Problem loading page " + page, e);
+                }
+                final NewsResponse result = response;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNextLoaded(generation, page, result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Load the page before the window again, after it was dropped to keep memory bounded.
+     */
+    public void loadPrevious() {
+        if (mLoading || !hasPrevious()) {
+            return;
+        }
+        mLoading = true;
+        final int page = mFirstPage - 1;
+        final int generation = mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                NewsResponse response = null;
+                try {
+                    response = fetch(page, true);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem loading page " + page, e);
+                }
+                final NewsResponse result = response;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPreviousLoaded(generation, page, result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop the background work, the pager can't be used anymore.
+     */
+    public void release() {
+        mGeneration++;
+        cancelPrefetch();
+        mExecutor.shutdownNow();
+        mCancellation.cancel();
+    }
+
+    private void onNextLoaded(int generation, int page, NewsResponse response) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mLoading = false;
+        if (response == null) {
+            return;
+        }
+        if (response.getPages() > 0) {
+            mTotalPages = response.getPages();
+        }
+        ArrayList<News> news = response.getNews();
+        if (news.isEmpty()) {
+            mTotalPages = mLastPage;
+            return;
+        }
+        mLastPage = page;
+        mPageSizes.addLast(news.size());
+        int droppedFromTop = 0;
+        if (mPageSizes.size() > MAX_PAGES_IN_MEMORY) {
+            droppedFromTop = mPageSizes.removeFirst();
+            mFirstPage++;
+        }
+        mListener.onPageAppended(news, droppedFromTop);
+        prefetch(page + 1);
+    }
+
+    private void onPreviousLoaded(int generation, int page, NewsResponse response) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mLoading = false;
+        if (response == null || response.getNews().isEmpty()) {
+            return;
+        }
+        mFirstPage = page;
+        mPageSizes.addFirst(response.getNews().size());
+        int droppedFromBottom = 0;
+        if (mPageSizes.size() > MAX_PAGES_IN_MEMORY) {
+            droppedFromBottom = mPageSizes.removeLast();
+            mLastPage--;
+            /* The prefetched page no longer follows the window */
+            cancelPrefetch();
+        }
+        mListener.onPagePrepended(response.getNews(), droppedFromBottom);
+    }
+
+    /**
+     * Start loading the page in the background, so it is ready when the user gets there. Not on a
+     * poor network: the request would compete with the ones of the rows on screen.
+     */
+    private void prefetch(final int page) {
+        if (page > mTotalPages || mExecutor.isShutdown()
+                || !NetworkPolicy.getInstance().getConnectionClass().isNextPagePrefetched()) {
+            return;
+        }
+        cancelPrefetch();
+        mPrefetchPage = page;
+        mPrefetch = mExecutor.submit(new Callable<NewsResponse>() {
+            @Override
+            public NewsResponse call() throws IOException {
+                return fetch(page, false);
+            }
+        });
+    }
+
+    private void cancelPrefetch() {
+        if (mPrefetch != null) {
+            mPrefetch.cancel(false);
+            mPrefetch = null;
+        }
+        mPrefetchPage = 0;
+    }
+
+    /**
+     * Return the page of every query merged as a {@link NewsList}, from the cache when preferCache is set and it has
+     * them, otherwise from the network (revalidating the cached copies).
+     */
+    private NewsResponse fetch(int page, final boolean preferCache) throws IOException {
+        ArrayList<String> urls = new ArrayList<String>(mQueryUrls.size());
+        for (String queryUrl : mQueryUrls) {
+            urls.add(pageUrl(queryUrl, page));
+        }
+        NewsResponse response = NewsFanOut.load(urls, new NewsFanOut.Source() {
+            @Override
+            public NewsResponse load(String url) throws IOException {
+                NewsResponse cached = preferCache ? mCache.getEntry(url) : null;
+                return cached != null ? cached : mCache.revalidate(url, mCancellation);
+            }
+        }, null);
+        /* Indexed by tag here, the main thread only adds the page's index to the list's */
+        return new NewsResponse(new NewsList(response.getNews()), response.getETag(),
+                response.getLastModified(), response.getPayloadBytes(), response.getCurrentPage(),
+                response.getPages());
+    }
+
+    private static String pageUrl(String queryUrl, int page) {
+        /* The first page is the one NewsLoader caches, without a page parameter */
+        return page == 1 ? queryUrl : queryUrl + "&page=" + page;
+    }
+}
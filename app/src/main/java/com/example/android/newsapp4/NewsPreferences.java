@@ -0,0 +1,194 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * {@link NewsPreferences} turns the changes of the query preferences (order-by and topics) into a
+ * stream of {@link Query} values for the screen that shows them. Changes are debounced: a burst
+ * (e.g. several topics ticked in a row) is delivered once, {@link #DEBOUNCE_MILLIS} after the last
+ * one, and only if the resulting query differs from the last one delivered.
+ */
+public class NewsPreferences {
+
+    /** Quiet time after the last change before the new query is delivered */
+    static final long DEBOUNCE_MILLIS = 300;
+
+    /**
+     * Receives the query every time the preferences settle on a different one.
+     */
+    public interface Observer {
+        /**
+         * Called on the main thread.
+         *
+         * @param previous the query delivered before (or read when observing started)
+         * @param current  the query of the preferences now
+         */
+        void onQueryChanged(Query previous, Query current);
+    }
+
+    /**
+     * What the preferences ask for: the order of the articles and the chosen topics.
+     */
+    public static final class Query {
+        private final String mOrderBy;
+        private final SortedSet<String> mTopics;
+
+        public Query(String orderBy, Set<String> topics) {
+            mOrderBy = orderBy;
+            /* Sorted, so the URLs (and their cache entries) are stable */
+            mTopics = Collections.unmodifiableSortedSet(new TreeSet<String>(topics));
+        }
+
+        public String getOrderBy() {
+            return mOrderBy;
+        }
+
+        public SortedSet<String> getTopics() {
+            return mTopics;
+        }
+
+        /**
+         * Return whether the other query asks for other topics, so other articles.
+         */
+        public boolean hasOtherTopics(Query other) {
+            return !mTopics.equals(other.mTopics);
+        }
+
+        /**
+         * Return whether the other query orders the articles differently.
+         */
+        public boolean hasOtherOrder(Query other) {
+            return mOrderBy == null ? other.mOrderBy != null : !mOrderBy.equals(other.mOrderBy);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Query)) {
+                return false;
+            }
+            Query other = (Query) o;
+            return !hasOtherTopics(other) && !hasOtherOrder(other);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (mOrderBy != null ? mOrderBy.hashCode() : 0) + mTopics.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return mOrderBy + " " + mTopics;
+        }
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Observer mObserver;
+    /** The query last delivered (or read when observing started) */
+    private Query mQuery;
+
+    /**
+     * Held here: SharedPreferences only keeps a weak reference to its listeners.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+                    if (key.equals(mContext.getString(R.string.settings_order_by_key))
+                            || key.equals(mContext.getString(R.string.settings_topic_key))) {
+                        /* Start the quiet time over */
+                        mHandler.removeCallbacks(mDeliver);
+                        mHandler.postDelayed(mDeliver, DEBOUNCE_MILLIS);
+                    }
+                }
+            };
+
+    private final Runnable mDeliver = new Runnable() {
+        @Override
+        public void run() {
+            Query current = read(mContext);
+            if (mObserver == null || current.equals(mQuery)) {
+                /* Changed and changed back */
+                return;
+            }
+            Query previous = mQuery;
+            mQuery = current;
+            mObserver.onQueryChanged(previous, current);
+        }
+    };
+
+    /**
+     * Constructs a new {@link NewsPreferences}.
+     *
+     * @param context of the activity
+     */
+    public NewsPreferences(Context context) {
+        mContext = context.getApplicationContext();
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+    }
+
+    /**
+     * Return the query of the preferences now, with the default order and topics for the ones not set.
+     */
+    public static Query read(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        // getString retrieves a String value from the preferences. The second parameter is the default value for this preference.
+        String orderBy = sharedPrefs.getString(
+                context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+        // getStringSet retrieves the chosen topics
+        Set<String> defaultTopics = new HashSet<String>(
+                Arrays.asList(context.getResources().getStringArray(R.array.settings_topic_default_values)));
+        Set<String> topicChoices = sharedPrefs.getStringSet(context.getString(R.string.settings_topic_key), defaultTopics);
+        if (topicChoices.isEmpty()) {
+            topicChoices = defaultTopics;
+        }
+        return new Query(orderBy, topicChoices);
+    }
+
+    /**
+     * Start delivering the changes to the observer, from the query of the preferences now.
+     *
+     * @return the query of the preferences now
+     */
+    public Query observe(Observer observer) {
+        return observe(observer, read(mContext));
+    }
+
+    /**
+     * Start delivering the changes to the observer, from a query of the preferences read before,
+     * e.g. off the main thread while the screen was being created.
+     *
+     * @return the query given
+     */
+    public Query observe(Observer observer, Query current) {
+        mObserver = observer;
+        mQuery = current;
+        mPreferences.registerOnSharedPreferenceChangeListener(mChangeListener);
+        return mQuery;
+    }
+
+    /**
+     * Stop delivering the changes, a pending one is dropped.
+     */
+    public void release() {
+        mPreferences.unregisterOnSharedPreferenceChangeListener(mChangeListener);
+        mHandler.removeCallbacks(mDeliver);
+        mObserver = null;
+    }
+}
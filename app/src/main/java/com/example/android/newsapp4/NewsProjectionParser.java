@@ -0,0 +1,647 @@
+package com.example.android.newsapp4;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * {@link NewsProjectionParser} parses a Guardian "search" response straight from its UTF-8 bytes,
+ * reading only the {@link News} fields of its projection.
+ * <p>
+ * Keys are matched on their bytes (a switch on their length, then byte by byte) without making a
+ * String of them, and every value that isn't read (id, apiUrl, the contributor's profile, the
+ * fields of the projection left out, ...) is skipped byte by byte without being decoded. Only the
+ * values read become Strings. The time is parsed from the decoded chars, it never is a String.
+ * <p>
+ * It reads the responses of the API the way {@link QueryUtils#readNewsArray} does, but it isn't a
+ * validating JSON parser: keys with escapes are never matched, and a value of an unexpected type
+ * reads as a missing field.
+ */
+public final class NewsProjectionParser {
+
+    /** webTitle, the title with the byline after a | */
+    public static final int TITLE = 1;
+    /** webTitle of the contributor tags (show-tags=contributor), joined */
+    public static final int AUTHOR = 1 << 1;
+    /** sectionName */
+    public static final int SECTION = 1 << 2;
+    /** webPublicationDate */
+    public static final int TIME = 1 << 3;
+    /** webUrl */
+    public static final int URL = 1 << 4;
+    /** fields.thumbnail (show-fields=thumbnail) */
+    public static final int THUMBNAIL = 1 << 5;
+    /** The contributor, keyword and series tags, see {@link NewsTags} */
+    public static final int TAGS = 1 << 6;
+    /** Every field: what the list, the cache and the search index keep */
+    public static final int ALL = TITLE | AUTHOR | SECTION | TIME | URL | THUMBNAIL | TAGS;
+
+    /** Bytes read from the stream at a time */
+    private static final int BUFFER_BYTES = 8192;
+    /** Longest key looked for, longer keys are not kept */
+    private static final int MAX_KEY_BYTES = 18;
+
+    /* The keys looked for, index into KEY_NAMES */
+    private static final int KEY_OTHER = 0;
+    private static final int KEY_RESPONSE = 1;
+    private static final int KEY_RESULTS = 2;
+    private static final int KEY_CURRENT_PAGE = 3;
+    private static final int KEY_PAGES = 4;
+    private static final int KEY_SECTION_NAME = 5;
+    private static final int KEY_WEB_PUBLICATION_DATE = 6;
+    private static final int KEY_WEB_TITLE = 7;
+    private static final int KEY_WEB_URL = 8;
+    private static final int KEY_TAGS = 9;
+    private static final int KEY_FIELDS = 10;
+    private static final int KEY_THUMBNAIL = 11;
+    private static final int KEY_ID = 12;
+    private static final int KEY_TYPE = 13;
+
+    private static final byte[][] KEY_NAMES = {
+            null,
+            ascii("response"),
+            ascii("results"),
+            ascii("currentPage"),
+            ascii("pages"),
+            ascii("sectionName"),
+            ascii("webPublicationDate"),
+            ascii("webTitle"),
+            ascii("webUrl"),
+            ascii("tags"),
+            ascii("fields"),
+            ascii("thumbnail"),
+            ascii("id"),
+            ascii("type"),
+    };
+
+    private final InputStream mIn;
+    private final int mProjection;
+    private final byte[] mBuffer = new byte[BUFFER_BYTES];
+    private int mPosition;
+    private int mLimit;
+    /** Bytes of the key just read, up to {@link #MAX_KEY_BYTES} */
+    private final byte[] mKey = new byte[MAX_KEY_BYTES];
+    /** Chars of the string value just read, grown for longer values */
+    private char[] mChars = new char[128];
+    private int mCharCount;
+    /** Collects the tags of the article being read */
+    private final NewsTags.Builder mTags = new NewsTags.Builder();
+    /** The chars of the string value just read as a CharSequence, without copying them */
+    private final CharSequence mCharView = new CharSequence() {
+        @Override
+        public int length() {
+            return mCharCount;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return mChars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(mChars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mCharCount);
+        }
+    };
+
+    private NewsProjectionParser(InputStream in, int projection) {
+        mIn = in;
+        mProjection = projection;
+    }
+
+    /**
+     * Parse a Guardian "search" response from the {@link InputStream}, handing every article to the
+     * listener (if not null) as soon as it has been read and storing the paging metadata in
+     * pageInfo (if not null). The fields left out of the projection are null (the time
+     * {@link News#NO_TIME}). The caller is responsible for closing the stream.
+     *
+     * @param projection the fields to read, e.g. {@link #ALL} or {@code URL | TIME}
+     */
+    public static ArrayList<News> parse(InputStream in, int projection, QueryUtils.OnNewsParsedListener listener,
+                                        QueryUtils.PageInfo pageInfo) throws IOException {
+        return new NewsProjectionParser(in, projection).readRoot(listener, pageInfo);
+    }
+
+    private ArrayList<News> readRoot(QueryUtils.OnNewsParsedListener listener, QueryUtils.PageInfo pageInfo)
+            throws IOException {
+        ArrayList<News> newsArticles = new ArrayList<News>();
+        if (!beginObject()) {
+            throw new IOException("Expected a JSON object");
+        }
+        for (boolean first = true; nextMember(first); first = false) {
+            if (readKey() != KEY_RESPONSE) {
+                skipValue();
+            } else if (beginObject()) {
+                readResponse(newsArticles, listener, pageInfo);
+            }
+        }
+        return newsArticles;
+    }
+
+    private void readResponse(ArrayList<News> newsArticles, QueryUtils.OnNewsParsedListener listener,
+                              QueryUtils.PageInfo pageInfo) throws IOException {
+        for (boolean first = true; nextMember(first); first = false) {
+            switch (readKey()) {
+                case KEY_RESULTS:
+                    if (!beginArray()) {
+                        break;
+                    }
+                    for (boolean firstResult = true; nextElement(firstResult); firstResult = false) {
+                        if (!beginObject()) {
+                            continue;
+                        }
+                        News news = readNews();
+                        newsArticles.add(news);
+                        if (listener != null) {
+                            listener.onNewsParsed(news);
+                        }
+                    }
+                    break;
+                case KEY_CURRENT_PAGE:
+                    if (pageInfo != null) {
+                        pageInfo.currentPage = readInt();
+                    } else {
+                        skipValue();
+                    }
+                    break;
+                case KEY_PAGES:
+                    if (pageInfo != null) {
+                        pageInfo.pages = readInt();
+                    } else {
+                        skipValue();
+                    }
+                    break;
+                default:
+                    skipValue();
+            }
+        }
+    }
+
+    /**
+     * Read one result, after its opening brace.
+     */
+    private News readNews() throws IOException {
+        String sectionName = null;
+        long timeMillis = News.NO_TIME;
+        String rawTime = null;
+        String webTitle = null;
+        String webUrl = null;
+        String authorWebTitle = null;
+        NewsTags tags = null;
+        String thumbnailUrl = null;
+        for (boolean first = true; nextMember(first); first = false) {
+            int key = readKey();
+            if (!isProjected(key)) {
+                skipValue();
+                continue;
+            }
+            switch (key) {
+                case KEY_SECTION_NAME:
+                    /* Shared by every article of the section */
+                    sectionName = StringPool.getDefault().intern(readString());
+                    break;
+                case KEY_WEB_PUBLICATION_DATE:
+                    if (readChars()) {
+                        timeMillis = NewsTimeFormatter.parseUtc(mCharView);
+                        /* Another form than 2018-05-27T08:00:20Z is kept as it came */
+                        rawTime = timeMillis == News.NO_TIME ? mCharView.toString() : null;
+                    }
+                    break;
+                case KEY_WEB_TITLE:
+                    webTitle = readString();
+                    break;
+                case KEY_WEB_URL:
+                    webUrl = readString();
+                    break;
+                case KEY_TAGS:
+                    /* Every contributor, keyword and series in this one pass */
+                    tags = readTags();
+                    if ((mProjection & AUTHOR) != 0 && tags != null) {
+                        authorWebTitle = tags.getContributors();
+                    }
+                    if ((mProjection & TAGS) == 0) {
+                        tags = null;
+                    }
+                    break;
+                case KEY_FIELDS:
+                    thumbnailUrl = readThumbnail();
+                    break;
+                default:
+                    skipValue();
+            }
+        }
+        News news = rawTime != null
+                ? new News(webTitle, authorWebTitle, sectionName, rawTime, webUrl, thumbnailUrl)
+                : new News(webTitle, authorWebTitle, sectionName, timeMillis, webUrl, thumbnailUrl);
+        news.setTags(tags);
+        return news;
+    }
+
+    /**
+     * Return whether the value of the key of a result is read, i.e. its field is in the projection.
+     */
+    private boolean isProjected(int key) {
+        switch (key) {
+            case KEY_SECTION_NAME:
+                return (mProjection & SECTION) != 0;
+            case KEY_WEB_PUBLICATION_DATE:
+                return (mProjection & TIME) != 0;
+            case KEY_WEB_TITLE:
+                return (mProjection & TITLE) != 0;
+            case KEY_WEB_URL:
+                return (mProjection & URL) != 0;
+            case KEY_TAGS:
+                return (mProjection & (AUTHOR | TAGS)) != 0;
+            case KEY_FIELDS:
+                return (mProjection & THUMBNAIL) != 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Read the tags array and return its contributors (for the author too), plus its keywords and
+     * series if they are in the projection, or null if there is none. A tag without a type is a
+     * contributor, like with show-tags=contributor.
+     */
+    private NewsTags readTags() throws IOException {
+        if (!beginArray()) {
+            return null;
+        }
+        for (boolean first = true; nextElement(first); first = false) {
+            if (!beginObject()) {
+                continue;
+            }
+            String id = null;
+            String title = null;
+            int type = NewsTags.CONTRIBUTOR;
+            for (boolean firstMember = true; nextMember(firstMember); firstMember = false) {
+                switch (readKey()) {
+                    case KEY_ID:
+                        id = readString();
+                        break;
+                    case KEY_TYPE:
+                        /* Matched on the decoded chars, no String */
+                        type = readChars() ? NewsTags.type(mCharView) : -1;
+                        break;
+                    case KEY_WEB_TITLE:
+                        title = readString();
+                        break;
+                    default:
+                        skipValue();
+                }
+            }
+            if (type == NewsTags.CONTRIBUTOR || (type >= 0 && (mProjection & TAGS) != 0)) {
+                mTags.add(type, id, title);
+            }
+        }
+        return mTags.build();
+    }
+
+    /**
+     * Read the fields object and return its thumbnail.
+     */
+    private String readThumbnail() throws IOException {
+        String thumbnail = null;
+        if (!beginObject()) {
+            return null;
+        }
+        for (boolean first = true; nextMember(first); first = false) {
+            if (readKey() == KEY_THUMBNAIL) {
+                thumbnail = readString();
+            } else {
+                skipValue();
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Read a key and its colon, after the key's opening quote, and return which one it is.
+     */
+    private int readKey() throws IOException {
+        int length = 0;
+        boolean escaped = false;
+        int b;
+        while ((b = read()) != '"') {
+            if (b == '\\') {
+                escaped = true;
+                read();
+            } else if (length < MAX_KEY_BYTES) {
+                mKey[length] = (byte) b;
+            }
+            length++;
+        }
+        if (nextToken() != ':') {
+            throw syntaxError("a colon after a key");
+        }
+        return escaped ? KEY_OTHER : lookUpKey(length);
+    }
+
+    /**
+     * Return the key of the bytes in {@link #mKey}: first by their length, then by their first
+     * byte where two keys have the same length, and only then compared byte by byte.
+     */
+    private int lookUpKey(int length) {
+        switch (length) {
+            case 2:
+                return matchKey(KEY_ID, length);
+            case 4:
+                return matchKey(mKey[1] == 'a' ? KEY_TAGS : KEY_TYPE, length);
+            case 5:
+                return matchKey(KEY_PAGES, length);
+            case 6:
+                return matchKey(mKey[0] == 'w' ? KEY_WEB_URL : KEY_FIELDS, length);
+            case 7:
+                return matchKey(KEY_RESULTS, length);
+            case 8:
+                return matchKey(mKey[0] == 'w' ? KEY_WEB_TITLE : KEY_RESPONSE, length);
+            case 9:
+                return matchKey(KEY_THUMBNAIL, length);
+            case 11:
+                return matchKey(mKey[0] == 's' ? KEY_SECTION_NAME : KEY_CURRENT_PAGE, length);
+            case 18:
+                return matchKey(KEY_WEB_PUBLICATION_DATE, length);
+            default:
+                return KEY_OTHER;
+        }
+    }
+
+    private int matchKey(int key, int length) {
+        byte[] name = KEY_NAMES[key];
+        for (int i = 0; i < length; i++) {
+            if (mKey[i] != name[i]) {
+                return KEY_OTHER;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Move to the next member of the object: true with the opening quote of its key read,
+     * false with the closing brace of the object read.
+     */
+    private boolean nextMember(boolean first) throws IOException {
+        int c = nextToken();
+        if (c == '}') {
+            return false;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw syntaxError("a comma or a closing brace");
+            }
+            c = nextToken();
+        }
+        if (c != '"') {
+            throw syntaxError("a key");
+        }
+        return true;
+    }
+
+    /**
+     * Move to the next element of the array: true before its value, false with the closing
+     * bracket of the array read.
+     */
+    private boolean nextElement(boolean first) throws IOException {
+        int c = nextToken();
+        if (c == ']') {
+            return false;
+        }
+        if (!first) {
+            if (c != ',') {
+                throw syntaxError("a comma or a closing bracket");
+            }
+            return true;
+        }
+        mPosition--;
+        return true;
+    }
+
+    /**
+     * Read the opening brace of the value, or skip the value if it isn't an object.
+     */
+    private boolean beginObject() throws IOException {
+        if (nextToken() == '{') {
+            return true;
+        }
+        mPosition--;
+        skipValue();
+        return false;
+    }
+
+    /**
+     * Read the opening bracket of the value, or skip the value if it isn't an array.
+     */
+    private boolean beginArray() throws IOException {
+        if (nextToken() == '[') {
+            return true;
+        }
+        mPosition--;
+        skipValue();
+        return false;
+    }
+
+    /**
+     * Read a string value, or return null (skipping the value) if it is null or not a string.
+     */
+    private String readString() throws IOException {
+        return readChars() ? new String(mChars, 0, mCharCount) : null;
+    }
+
+    /**
+     * Decode a string value into {@link #mChars}, or return false (skipping the value) if it is null
+     * or not a string.
+     */
+    private boolean readChars() throws IOException {
+        if (nextToken() != '"') {
+            mPosition--;
+            skipValue();
+            return false;
+        }
+        mCharCount = 0;
+        int b;
+        while ((b = read()) != '"') {
+            if (b == '\\') {
+                appendChar(readEscape());
+            } else if (b < 0x80) {
+                appendChar((char) b);
+            } else if ((b & 0xe0) == 0xc0) {
+                appendChar((char) (((b & 0x1f) << 6) | (read() & 0x3f)));
+            } else if ((b & 0xf0) == 0xe0) {
+                int second = read();
+                appendChar((char) (((b & 0x0f) << 12) | ((second & 0x3f) << 6) | (read() & 0x3f)));
+            } else {
+                int second = read();
+                int third = read();
+                int codePoint = ((b & 0x07) << 18) | ((second & 0x3f) << 12) | ((third & 0x3f) << 6)
+                        | (read() & 0x3f);
+                /* Outside the Basic Multilingual Plane (an emoji): a surrogate pair */
+                appendChar(Character.highSurrogate(codePoint));
+                appendChar(Character.lowSurrogate(codePoint));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the char of the escape sequence after its backslash.
+     */
+    private char readEscape() throws IOException {
+        int b = read();
+        switch (b) {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("a hex digit");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                /* \" \\ \/ */
+                return (char) b;
+        }
+    }
+
+    private void appendChar(char c) {
+        if (mCharCount == mChars.length) {
+            char[] chars = new char[mChars.length * 2];
+            System.arraycopy(mChars, 0, chars, 0, mCharCount);
+            mChars = chars;
+        }
+        mChars[mCharCount++] = c;
+    }
+
+    /**
+     * Read an int value, or return 0 (skipping the value) if it isn't a number.
+     */
+    private int readInt() throws IOException {
+        int c = nextToken();
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            mPosition--;
+            skipValue();
+            return 0;
+        }
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        mPosition--;
+        if (c == '.' || c == 'e' || c == 'E') {
+            /* Not an int after all, drop the rest of it */
+            skipValue();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Skip the next value, however deeply nested, without decoding any of it.
+     */
+    private void skipValue() throws IOException {
+        int c = nextToken();
+        if (c == '"') {
+            skipString();
+            return;
+        }
+        if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+            return;
+        }
+        /* A number, true, false or null: up to the next delimiter */
+        while (c != ',' && c != '}' && c != ']' && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+            c = read();
+        }
+        mPosition--;
+    }
+
+    /**
+     * Skip the rest of a string after its opening quote, up to the closing one.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            if (mPosition == mLimit) {
+                fill();
+            }
+            byte b = mBuffer[mPosition++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                /* The escaped char, a quote or not */
+                read();
+            }
+        }
+    }
+
+    /**
+     * Return the next byte that isn't whitespace.
+     */
+    private int nextToken() throws IOException {
+        int c = read();
+        while (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit) {
+            fill();
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    /**
+     * Read the next bytes of the stream into the buffer, as many as have arrived.
+     */
+    private void fill() throws IOException {
+        int count = mIn.read(mBuffer, 0, BUFFER_BYTES);
+        if (count <= 0) {
+            throw new EOFException("End of the response inside its JSON");
+        }
+        mPosition = 0;
+        mLimit = count;
+    }
+
+    private IOException syntaxError(String expected) {
+        return new IOException("Malformed JSON: expected " + expected);
+    }
+
+    private static byte[] ascii(String name) {
+        return name.getBytes(Charset.forName("US-ASCII"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.util.ArrayList;
+
+/**
+ * {@link NewsQuery} builds the query URLs of TheGuardian from the user's preferences.
+ * The activity and the background sync use it, so they ask for (and cache) exactly the same URLs.
+ */
+public final class NewsQuery {
+
+    /** URL for news data from the Guardian dataset */
+    private static final String ONLINE_JSON_URL = "https://content.guardianapis.com/search";
+    /** URL of a single article of the Guardian dataset, followed by its id */
+    private static final String CONTENT_URL = "https://content.guardianapis.com/";
+    /** Start of the webUrl of an article, followed by its id */
+    private static final String WEB_URL = "https://www.theguardian.com/";
+    private static final String GUARDIAN_KEY = "10ae015c-6c0c-4023-b776-71b81c829b45";
+    private static final String PAGE_SIZE_PARAMETER = "page-size=";
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsQuery() {
+    }
+
+    /**
+     * Build the query URLs of the first page from the user's preferences, one per chosen topic.
+     */
+    public static ArrayList<String> buildQueryUrls(Context context) {
+        return buildQueryUrls(NewsPreferences.read(context));
+    }
+
+    /**
+     * Build the query URLs of the first page of the query, one per topic, with the page size of
+     * the network now. The pages after the first one keep it, see {@link #getPageSize}.
+     */
+    public static ArrayList<String> buildQueryUrls(NewsPreferences.Query query) {
+        int pageSize = NetworkPolicy.getInstance().getConnectionClass().getPageSize();
+        ArrayList<String> queryUrls = new ArrayList<String>(query.getTopics().size());
+        for (String topicChoice : query.getTopics()) {
+            queryUrls.add(buildQueryUrl(topicChoice, query.getOrderBy(), pageSize));
+        }
+        return queryUrls;
+    }
+
+    /**
+     * Build the query URL of the first page for one topic.
+     */
+    public static String buildQueryUrl(String topicChoice, String orderBy, int pageSize) {
+        // parse breaks apart the URI string that's passed into its parameter
+        Uri baseUri = Uri.parse(ONLINE_JSON_URL);
+
+        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
+        Uri.Builder uriBuilder = baseUri.buildUpon();
+
+        // Append query parameter and its value. For example, the `page-size=20`
+        uriBuilder.appendQueryParameter("q", "technology AND " + topicChoice);
+        uriBuilder.appendQueryParameter("order-by", orderBy);
+        uriBuilder.appendQueryParameter("show-tags", NewsTags.SHOW_TAGS);
+        uriBuilder.appendQueryParameter("show-fields", "thumbnail");
+        uriBuilder.appendQueryParameter("page-size", String.valueOf(pageSize));
+        uriBuilder.appendQueryParameter("from-date", "2018-01-01");
+        uriBuilder.appendQueryParameter("api-key", GUARDIAN_KEY);
+        return uriBuilder.toString();
+    }
+
+    /**
+     * Return the number of articles a query URL asks for per page.
+     */
+    public static int getPageSize(String queryUrl) {
+        int start = queryUrl.indexOf(PAGE_SIZE_PARAMETER) + PAGE_SIZE_PARAMETER.length();
+        int end = start;
+        while (end < queryUrl.length() && Character.isDigit(queryUrl.charAt(end))) {
+            end++;
+        }
+        return Integer.parseInt(queryUrl.substring(start, end));
+    }
+
+    /**
+     * Return the query URL asking for another number of articles per page.
+     */
+    public static String withPageSize(String queryUrl, int pageSize) {
+        int start = queryUrl.indexOf(PAGE_SIZE_PARAMETER) + PAGE_SIZE_PARAMETER.length();
+        return queryUrl.substring(0, start) + pageSize
+                + queryUrl.substring(start + String.valueOf(getPageSize(queryUrl)).length());
+    }
+
+    /**
+     * Build the URL of the text of one article from its webUrl: the article's id is the path of
+     * its webUrl. Return null if the webUrl isn't one of TheGuardian.
+     */
+    public static String buildArticleUrl(String webUrl) {
+        if (webUrl == null || !webUrl.startsWith(WEB_URL) || webUrl.length() == WEB_URL.length()) {
+            return null;
+        }
+        Uri.Builder uriBuilder = Uri.parse(CONTENT_URL + webUrl.substring(WEB_URL.length())).buildUpon();
+        uriBuilder.appendQueryParameter("show-fields", "bodyText");
+        uriBuilder.appendQueryParameter("api-key", GUARDIAN_KEY);
+        return uriBuilder.toString();
+    }
+}
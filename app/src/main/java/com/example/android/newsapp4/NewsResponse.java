@@ -0,0 +1,96 @@
+package com.example.android.newsapp4;
+
+import java.util.ArrayList;
+
+/**
+ * {@link NewsResponse} is the outcome of one request to TheGuardian: either a freshly parsed
+ * list of {@link News}, or "not modified" when the validators sent with the request still match.
+ * It also carries the validators to send with the next request for the same URL.
+ */
+public class NewsResponse {
+
+    /** Parsed articles, null when the server answered 304 Not Modified */
+    private final ArrayList<News> mNews;
+
+    /** ETag header of the response, if any */
+    private final String mETag;
+
+    /** Last-Modified header of the response, if any */
+    private final String mLastModified;
+
+    /** Size of the decoded JSON body in bytes */
+    private final long mPayloadBytes;
+
+    /** Page of the results this response holds (1 based), 0 if unknown */
+    private final int mCurrentPage;
+
+    /** Total number of pages for the query, 0 if unknown */
+    private final int mPages;
+
+    /**
+     * Constructs a new {@link NewsResponse}.
+     *
+     * @param news         parsed articles, or null when not modified
+     * @param eTag         ETag header of the response
+     * @param lastModified Last-Modified header of the response
+     * @param payloadBytes size of the decoded JSON body
+     */
+    public NewsResponse(ArrayList<News> news, String eTag, String lastModified, long payloadBytes) {
+        this(news, eTag, lastModified, payloadBytes, 0, 0);
+    }
+
+    /**
+     * Constructs a new {@link NewsResponse} with its paging metadata.
+     *
+     * @param news         parsed articles, or null when not modified
+     * @param eTag         ETag header of the response
+     * @param lastModified Last-Modified header of the response
+     * @param payloadBytes size of the decoded JSON body
+     * @param currentPage  page held by this response, 0 if unknown
+     * @param pages        total number of pages, 0 if unknown
+     */
+    public NewsResponse(ArrayList<News> news, String eTag, String lastModified, long payloadBytes,
+                        int currentPage, int pages) {
+        mNews = news;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mPayloadBytes = payloadBytes;
+        mCurrentPage = currentPage;
+        mPages = pages;
+    }
+
+    /**
+     * Return a response for a 304, the previously parsed list is still valid.
+     */
+    public static NewsResponse notModified(String eTag, String lastModified) {
+        return new NewsResponse(null, eTag, lastModified, 0);
+    }
+
+    public boolean isNotModified() {
+        return mNews == null;
+    }
+
+    public ArrayList<News> getNews() {
+        return mNews;
+    }
+
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public long getPayloadBytes() {
+        return mPayloadBytes;
+    }
+
+    public int getCurrentPage() {
+        return mCurrentPage;
+    }
+
+    public int getPages() {
+        return mPages;
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * {@link NewsSearchIndex} is an on-device inverted index over the title, section and author of every
+ * {@link News} article ever fetched, so they can be searched without a request to TheGuardian.
+ * <p>
+ * Every article gets a document id in the order it was added. Each term of its fields maps to a posting
+ * list of document ids, and the terms are kept sorted, so a prefix query is one range of the dictionary.
+ * The articles themselves are appended to a log file and the index is rebuilt from it on first use.
+ * <p>
+ * The index is capped: once it holds a tenth more articles than its limit, the oldest ones (by
+ * publication time) are dropped with their postings and the log is rewritten, so neither the heap
+ * nor the file grows with the life of the install.
+ */
+public class NewsSearchIndex {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsSearchIndex.class.getSimpleName();
+
+    /** Version of the log file format, a log of another version is discarded */
+    private static final int FORMAT_VERSION = 2;
+    /** Name of the log file inside the app's files directory */
+    private static final String FILE_NAME = "news-index.log";
+    /** Rewrite the log once it holds this many replaced articles more than live ones */
+    private static final int COMPACT_THRESHOLD = 1000;
+    /** Number of articles the app's index keeps, the newest ones */
+    static final int MAX_ARTICLES = 3000;
+
+    private static NewsSearchIndex sInstance;
+
+    private final File mFile;
+    private final int mMaxArticles;
+    /** Articles by document id, null once replaced by a newer version of the same article */
+    private final ArrayList<News> mArticles = new ArrayList<News>();
+    /** Document id of the current version of every article, by webUrl */
+    private final HashMap<String, Integer> mIdsByUrl = new HashMap<String, Integer>();
+    /** Sorted term dictionary: every term with the ids of the articles that contain it */
+    private final TreeMap<String, Postings> mPostings = new TreeMap<String, Postings>();
+    /** Ids of the replaced articles, left out of every result */
+    private final BitSet mReplaced = new BitSet();
+    private boolean mLoaded;
+
+    /**
+     * Return the app wide index, stored in the app's files directory.
+     */
+    public static synchronized NewsSearchIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new NewsSearchIndex(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link NewsSearchIndex} capped at {@link #MAX_ARTICLES} articles. The log
+     * file is only read on first use.
+     *
+     * @param file log of the indexed articles
+     */
+    public NewsSearchIndex(File file) {
+        this(file, MAX_ARTICLES);
+    }
+
+    /**
+     * Constructs a new {@link NewsSearchIndex}. The log file is only read on first use.
+     *
+     * @param file        log of the indexed articles
+     * @param maxArticles number of articles kept, the newest ones
+     */
+    public NewsSearchIndex(File file, int maxArticles) {
+        mFile = file;
+        mMaxArticles = maxArticles;
+    }
+
+    /**
+     * Add the articles to the index (and its log). An article that is already indexed with the same
+     * fields is skipped; one whose fields changed replaces the indexed version.
+     */
+    public synchronized void addAll(List<News> newsArticles) {
+        ensureLoaded();
+        ArrayList<News> added = new ArrayList<News>();
+        for (News news : newsArticles) {
+            if (index(news)) {
+                added.add(news);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        if (mReplaced.cardinality() > mIdsByUrl.size() + COMPACT_THRESHOLD || isOverCap()) {
+            compact();
+        } else {
+            append(added);
+        }
+    }
+
+    /**
+     * Return the newest articles (at most limit) whose title, section or author contain every word
+     * of the query. The last word also matches as a prefix, so results show up while typing.
+     */
+    public synchronized ArrayList<News> search(String query, int limit) {
+        ensureLoaded();
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<News>();
+        }
+        BitSet matches = null;
+        for (int i = 0; i < words.size(); i++) {
+            BitSet wordMatches = i == words.size() - 1 ? prefixMatches(words.get(i)) : termMatches(words.get(i));
+            if (matches == null) {
+                matches = wordMatches;
+            } else {
+                matches.and(wordMatches);
+            }
+            if (matches.isEmpty()) {
+                return new ArrayList<News>();
+            }
+        }
+        matches.andNot(mReplaced);
+        /* Keep the newest limit articles in a heap whose head is the oldest of them */
+        PriorityQueue<News> newest = new PriorityQueue<News>(limit + 1, Collections.reverseOrder(NewsFanOut.NEWEST_FIRST));
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            News news = mArticles.get(id);
+            if (newest.size() < limit) {
+                newest.add(news);
+            } else if (NewsFanOut.NEWEST_FIRST.compare(news, newest.peek()) < 0) {
+                /* Newer than the oldest kept one: swap them */
+                newest.poll();
+                newest.add(news);
+            }
+        }
+        ArrayList<News> results = new ArrayList<News>(newest);
+        Collections.sort(results, NewsFanOut.NEWEST_FIRST);
+        return results;
+    }
+
+    /**
+     * Return the number of articles in the index.
+     */
+    public synchronized int size() {
+        ensureLoaded();
+        return mIdsByUrl.size();
+    }
+
+    /**
+     * Split a text into lower case words of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> words = new ArrayList<String>();
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean wordChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private BitSet termMatches(String term) {
+        BitSet matches = new BitSet(mArticles.size());
+        Postings postings = mPostings.get(term);
+        if (postings != null) {
+            postings.addTo(matches);
+        }
+        return matches;
+    }
+
+    private BitSet prefixMatches(String prefix) {
+        BitSet matches = new BitSet(mArticles.size());
+        /* Every term starting with the prefix sorts between the prefix and the prefix followed by the last char */
+        for (Postings postings : mPostings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            postings.addTo(matches);
+        }
+        return matches;
+    }
+
+    /**
+     * Give the article a document id and add it to the posting lists of its terms.
+     *
+     * @return false if the same article is already indexed
+     */
+    private boolean index(News news) {
+        if (news.getUrl() == null) {
+            return false;
+        }
+        Integer previousId = mIdsByUrl.get(news.getUrl());
+        if (previousId != null) {
+            /* Only what the log keeps: tags and the like are lost on a reload, News.equals would differ */
+            if (sameLoggedFields(mArticles.get(previousId), news)) {
+                return false;
+            }
+            mReplaced.set(previousId);
+            /* Drop the reference, the replaced id stays in the posting lists until the next compaction */
+            mArticles.set(previousId, null);
+        }
+        int id = mArticles.size();
+        mArticles.add(news);
+        mIdsByUrl.put(news.getUrl(), id);
+        addTerms(id, news.getNewsTitle());
+        addTerms(id, news.getSectionName());
+        addTerms(id, news.getAuthorName());
+        return true;
+    }
+
+    private void addTerms(int id, String field) {
+        for (String term : tokenize(field)) {
+            Postings postings = mPostings.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                mPostings.put(term, postings);
+            }
+            postings.add(id);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        long start = System.nanoTime();
+        DataInputStream in = null;
+        boolean intact = false;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != FORMAT_VERSION) {
+                in.close();
+                in = null;
+                mFile.delete();
+                return;
+            }
+            while (true) {
+                /* The first byte tells whether the title is there, or that the log ends here */
+                int hasTitle = in.read();
+                if (hasTitle < 0) {
+                    intact = true;
+                    break;
+                }
+                index(readNews(in, hasTitle != 0));
+            }
+        } catch (EOFException e) {
+            /* A record cut short by the app being killed while appending */
+            Log.e(LOG_TAG, "The search index ends with a partial article", e);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the search index", e);
+        } finally {
+            closeQuietly(in);
+        }
+        if (!intact || !mReplaced.isEmpty() || mIdsByUrl.size() > mMaxArticles) {
+            /* Drop the partial record (and the replaced or evicted articles) so the next append starts cleanly */
+            compact();
+        }
+        Log.v(LOG_TAG, "Loaded " + mIdsByUrl.size() + " articles in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static News readNews(DataInputStream in, boolean hasTitle) throws IOException {
+        String title = hasTitle ? in.readUTF() : null;
+        String author = StringPool.getDefault().intern(readNullableString(in));
+        String sectionName = StringPool.getDefault().intern(readNullableString(in));
+        String time = readNullableString(in);
+        String url = readNullableString(in);
+        String thumbnailUrl = readNullableString(in);
+        return new News(title, author, sectionName, time, url, thumbnailUrl);
+    }
+
+    private void append(List<News> newsArticles) {
+        boolean newFile = !mFile.exists();
+        if (newFile && mFile.getParentFile() != null) {
+            mFile.getParentFile().mkdirs();
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            if (newFile) {
+                out.writeInt(FORMAT_VERSION);
+            }
+            for (News news : newsArticles) {
+                writeNews(out, news);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the search index", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Return whether the index grew past its cap by enough to be worth a compaction: between two,
+     * it may hold a tenth more articles than its cap.
+     */
+    private boolean isOverCap() {
+        return mIdsByUrl.size() > mMaxArticles + mMaxArticles / 10;
+    }
+
+    /**
+     * Rebuild the index and rewrite its log with only the current version of every article, and
+     * only the newest ones if there are more than the cap.
+     */
+    private void compact() {
+        ArrayList<News> live = new ArrayList<News>(mIdsByUrl.size());
+        for (int id = 0; id < mArticles.size(); id++) {
+            if (!mReplaced.get(id)) {
+                live.add(mArticles.get(id));
+            }
+        }
+        if (live.size() > mMaxArticles) {
+            /* The oldest articles are the least likely to be looked for */
+            Collections.sort(live, NewsFanOut.NEWEST_FIRST);
+            live = new ArrayList<News>(live.subList(0, mMaxArticles));
+        }
+        mArticles.clear();
+        mIdsByUrl.clear();
+        mPostings.clear();
+        mReplaced.clear();
+        for (News news : live) {
+            index(news);
+        }
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(FORMAT_VERSION);
+            for (News news : live) {
+                writeNews(out, news);
+            }
+            out.close();
+            out = null;
+            /* Replace the old log only once the new one has been written completely */
+            if (!tmpFile.renameTo(mFile)) {
+                mFile.delete();
+                tmpFile.renameTo(mFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem rewriting the search index", e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeNews(DataOutputStream out, News news) throws IOException {
+        writeNullableString(out, news.getNewsTitle());
+        writeNullableString(out, news.getAuthorName());
+        writeNullableString(out, news.getSectionName());
+        writeNullableString(out, news.getTimestamp());
+        writeNullableString(out, news.getUrl());
+        writeNullableString(out, news.getThumbnailUrl());
+    }
+
+    /**
+     * Return whether the two articles have the same fields in the log, see {@link #writeNews}.
+     */
+    private static boolean sameLoggedFields(News a, News b) {
+        return equalOrNull(a.getNewsTitle(), b.getNewsTitle())
+                && equalOrNull(a.getAuthorName(), b.getAuthorName())
+                && equalOrNull(a.getSectionName(), b.getSectionName())
+                && equalOrNull(a.getTimestamp(), b.getTimestamp())
+                && equalOrNull(a.getUrl(), b.getUrl())
+                && equalOrNull(a.getThumbnailUrl(), b.getThumbnailUrl());
+    }
+
+    private static boolean equalOrNull(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the search index", e);
+            }
+        }
+    }
+
+    /**
+     * Growable, ascending list of document ids. Ids are handed out in increasing order,
+     * so adding one is an append.
+     */
+    private static class Postings {
+        private int[] mIds = new int[2];
+        private int mSize;
+
+        void add(int id) {
+            if (mSize > 0 && mIds[mSize - 1] == id) {
+                /* The same term twice in one article */
+                return;
+            }
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mIds[mSize++] = id;
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < mSize; i++) {
+                bits.set(mIds[i]);
+            }
+        }
+    }
+}
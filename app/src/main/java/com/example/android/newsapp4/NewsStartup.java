@@ -0,0 +1,179 @@
+package com.example.android.newsapp4;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * {@link NewsStartup} moves what a cold start used to do on the main thread before the first
+ * frame off it. Reading the preferences, building the query URLs, opening the cache and starting
+ * the load of the first page run on a background thread. {@link NewsApplication} starts that
+ * thread, so it overlaps with the inflation of the list. Scheduling the sync follows on the same
+ * thread, since the first frame doesn't need it.
+ * <p>
+ * It also records two spans of the start in {@link NewsMetrics}, measured from the application
+ * being created:
+ * <ul>
+ * <li>time to initial display: the first frame of the list, with cached articles or a skeleton;</li>
+ * <li>time to full display: the first articles (or an error) shown, also reported to the system
+ * with {@link Activity#reportFullyDrawn()}.</li>
+ * </ul>
+ * benchmark/startup.sh measures both from outside the app. All the methods but {@link #start} are
+ * called on the main thread.
+ */
+public final class NewsStartup {
+
+    /**
+     * Receives the query of the preferences once it has been read, on the main thread.
+     */
+    public interface Callback {
+        /**
+         * @param query     the query of the preferences at start
+         * @param queryUrls its URLs, one per topic; their first page is already loading
+         */
+        void onReady(NewsPreferences.Query query, ArrayList<String> queryUrls);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    /** Whether the background work was started, guarded by the class */
+    private static boolean sStarted;
+    /** Time the application was created */
+    private static long sStartNanos;
+    /** Whether the preferences have been read into memory, guarded by the class */
+    private static boolean sReady;
+    /** Screens waiting for the query, guarded by the class */
+    private static final ArrayList<Callback> sCallbacks = new ArrayList<Callback>();
+    /** Whether each display was recorded, only the first one of the process is a cold start */
+    private static boolean sInitialDisplayed;
+    private static boolean sFullyDisplayed;
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsStartup() {
+    }
+
+    /**
+     * Start the background work of the start, once per process, if the process is being started
+     * for a screen. Called from {@link NewsApplication#onCreate}, where that is checked, and again
+     * by the first screen.
+     */
+    public static synchronized void start(Context context) {
+        if (sStarted) {
+            return;
+        }
+        if (context instanceof NewsApplication && !isLaunchingScreen()) {
+            /* Started for the sync job or NewsBootReceiver: it has no list to show */
+            return;
+        }
+        sStarted = true;
+        sStartNanos = System.nanoTime();
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                /* The page size of the URLs depends on the network */
+                ConnectivityWatcher.start(appContext);
+                /* Loads the preferences file, the main thread would wait for the disk */
+                NewsPreferences.Query query = NewsPreferences.read(appContext);
+                ArrayList<String> queryUrls = NewsQuery.buildQueryUrls(query);
+                /* Reads the cached first page, then revalidates it, while the list is inflated */
+                NewsLoadEngine.getInstance().preload(queryUrls.toString(), new NewsLoader(appContext, queryUrls));
+                deliverReady(query, queryUrls);
+                // Keep the cache warm in the background, so the next start is a local read
+                NewsSync.schedule(appContext);
+            }
+        }, "NewsStartup").start();
+    }
+
+    /**
+     * Return whether the process is in the foreground, i.e. created to show a screen.
+     */
+    private static boolean isLaunchingScreen() {
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        return processInfo.importance == ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
+    }
+
+    /**
+     * Call the callback with the query of the preferences: straight away once they have been read
+     * into memory (it is read again, they may have changed since the start), otherwise as soon as
+     * they are. The screen shows a skeleton list meanwhile.
+     */
+    public static void whenReady(Context context, Callback callback) {
+        start(context);
+        synchronized (NewsStartup.class) {
+            if (!sReady) {
+                sCallbacks.add(callback);
+                return;
+            }
+        }
+        NewsPreferences.Query query = NewsPreferences.read(context);
+        callback.onReady(query, NewsQuery.buildQueryUrls(query));
+    }
+
+    /**
+     * Forget the callback of a screen that went away before the preferences were read.
+     */
+    public static synchronized void cancel(Callback callback) {
+        sCallbacks.remove(callback);
+    }
+
+    /**
+     * Hand the query read at start to the screens waiting for it, on the main thread.
+     */
+    private static void deliverReady(final NewsPreferences.Query query, final ArrayList<String> queryUrls) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Callback> callbacks;
+                synchronized (NewsStartup.class) {
+                    sReady = true;
+                    callbacks = new ArrayList<Callback>(sCallbacks);
+                    sCallbacks.clear();
+                }
+                for (Callback callback : callbacks) {
+                    callback.onReady(query, queryUrls);
+                }
+            }
+        });
+    }
+
+    /**
+     * Record the time to initial display, called when the first frame of the list is drawn.
+     */
+    public static void onInitialDisplay() {
+        if (sInitialDisplayed) {
+            return;
+        }
+        sInitialDisplayed = true;
+        NewsMetrics.end(NewsMetrics.Span.INITIAL_DISPLAY, startNanos());
+    }
+
+    /**
+     * Record the time to full display, called when the first articles (or an error) are shown.
+     */
+    public static void onFullDisplay(Activity activity) {
+        /* Reported for every screen, the system only keeps the first report of each */
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.KITKAT) {
+            /* KitKat throws a SecurityException without a permission only the system has */
+            activity.reportFullyDrawn();
+        }
+        if (sFullyDisplayed) {
+            return;
+        }
+        sFullyDisplayed = true;
+        NewsMetrics.end(NewsMetrics.Span.FULL_DISPLAY, startNanos());
+    }
+
+    private static long startNanos() {
+        synchronized (NewsStartup.class) {
+            return NewsMetrics.isEnabled() ? sStartNanos : 0;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.android.newsapp4;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * {@link NewsSync} keeps the {@link NewsCache} warm in the background: every few hours it revalidates
+ * the same query URLs the activity loads, stores the results and prunes the old entries, so opening
+ * the app is a local read without waiting for the network.
+ * <p>
+ * On Lollipop and later the sync is a periodic {@link NewsSyncJobService} job that only runs with a
+ * network (and, from Oreo on, when the battery isn't low); JobScheduler batches it with other jobs and
+ * backs off exponentially when it fails. On KitKat a non-waking inexact alarm starts
+ * {@link NewsSyncService}, which checks the same conditions and backs off the same way.
+ */
+public final class NewsSync {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = NewsSync.class.getSimpleName();
+
+    /** Time between two syncs (3 hours), the cached lists count as fresh for as long */
+    public static final long SYNC_INTERVAL_MILLIS = 3 * AlarmManager.INTERVAL_HOUR;
+    /** Window at the end of every interval in which the job may run, so it can share a wakeup */
+    private static final long SYNC_FLEX_MILLIS = AlarmManager.INTERVAL_HOUR;
+    /** Wait before the first retry of a failed sync, doubled on every further failure */
+    static final long INITIAL_BACKOFF_MILLIS = 30 * 1000;
+    /** Upper bound for the wait between retries (5 hours, as JobScheduler) */
+    static final long MAX_BACKOFF_MILLIS = 5 * AlarmManager.INTERVAL_HOUR;
+    /** Below this battery level (in percent) a sync is skipped unless the device is charging */
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    /** Id of the periodic sync job */
+    private static final int SYNC_JOB_ID = 1;
+    /** Request codes of the alarms that start {@link NewsSyncService} before Lollipop */
+    private static final int PERIODIC_ALARM_REQUEST_CODE = 0;
+    private static final int RETRY_ALARM_REQUEST_CODE = 1;
+    /** Preferences that count the failed syncs in a row, for the alarm back-off */
+    private static final String PREFERENCES_NAME = "news_sync";
+    private static final String KEY_FAILURES = "failures";
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsSync() {
+    }
+
+    /**
+     * Schedule the periodic sync, unless it is scheduled already.
+     */
+    public static void schedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(appContext);
+        } else {
+            scheduleAlarm(appContext);
+        }
+    }
+
+    /**
+     * Revalidate the cached first page of every chosen topic in one batch, then prune the cache.
+     * Called on a background thread.
+     *
+     * @return false if the sync failed and should be retried later
+     */
+    static boolean run(Context context) {
+        return run(context, null);
+    }
+
+    /**
+     * Run the sync like {@link #run(Context)}, until the cancellation (which may be null) is
+     * cancelled: its requests are then disconnected.
+     */
+    static boolean run(Context context, final LoadCancellation cancellation) {
+        if (!isConnected(context) || isBatteryLow(context)) {
+            /* Nothing failed, try again at the next interval */
+            Log.v(LOG_TAG, "Sync skipped: no network or low battery");
+            return true;
+        }
+        final NewsCache cache = NewsCache.getInstance(context);
+        /* The page size is part of the URLs: ask for the one the next screen on this network will */
+        ConnectivityWatcher.start(context);
+        ArrayList<String> urls = NewsQuery.buildQueryUrls(context);
+        try {
+            /* All topics at once, so the radio wakes up a single time */
+            NewsFanOut.load(urls, new NewsFanOut.Source() {
+                @Override
+                public NewsResponse load(String url) throws IOException {
+                    return cache.sync(url, cancellation);
+                }
+            }, null);
+            Log.v(LOG_TAG, "Sync done: " + NetworkStats.summary());
+            return true;
+        } catch (IOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                Log.v(LOG_TAG, "Sync stopped");
+                return false;
+            }
+            Log.e(LOG_TAG, "Problem syncing the news", e);
+            return false;
+        } finally {
+            cache.trim();
+        }
+    }
+
+    /**
+     * Return the wait before retrying after the given number of failed syncs in a row.
+     */
+    static long backoffMillis(int failures) {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int i = 1; i < failures && backoff < MAX_BACKOFF_MILLIS; i++) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Record the outcome of an alarm started sync and schedule a retry if it failed.
+     * JobScheduler does this itself for the job.
+     */
+    static void onAlarmSyncFinished(Context context, boolean succeeded) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (succeeded) {
+            preferences.edit().remove(KEY_FAILURES).apply();
+            return;
+        }
+        int failures = preferences.getInt(KEY_FAILURES, 0) + 1;
+        preferences.edit().putInt(KEY_FAILURES, failures).apply();
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        /* ELAPSED_REALTIME doesn't wake the device, the retry waits for the next wakeup */
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + backoffMillis(failures),
+                syncIntent(context, RETRY_ALARM_REQUEST_CODE, PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                /* Scheduling again would restart its interval */
+                return;
+            }
+        }
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_JOB_ID, new ComponentName(context, NewsSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            builder.setPeriodic(SYNC_INTERVAL_MILLIS, SYNC_FLEX_MILLIS);
+        } else {
+            builder.setPeriodic(SYNC_INTERVAL_MILLIS);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+        if (jobScheduler.schedule(builder.build()) != JobScheduler.RESULT_SUCCESS) {
+            Log.e(LOG_TAG, "Could not schedule the news sync job");
+        }
+    }
+
+    private static void scheduleAlarm(Context context) {
+        if (syncIntent(context, PERIODIC_ALARM_REQUEST_CODE, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        /* Inexact and not waking the device, so the system can deliver it together with other alarms */
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS,
+                syncIntent(context, PERIODIC_ALARM_REQUEST_CODE, 0));
+    }
+
+    private static PendingIntent syncIntent(Context context, int requestCode, int flags) {
+        return PendingIntent.getService(context, requestCode, new Intent(context, NewsSyncService.class), flags);
+    }
+
+    private static boolean isConnected(Context context) {
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    private static boolean isBatteryLow(Context context) {
+        /* Sticky broadcast: registering a null receiver just returns the last battery status */
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        return !charging && level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+    }
+}
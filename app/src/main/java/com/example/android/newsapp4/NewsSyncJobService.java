@@ -0,0 +1,46 @@
+package com.example.android.newsapp4;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * {@link NewsSyncJobService} runs the periodic {@link NewsSync} job on Lollipop and later.
+ * A failed sync asks JobScheduler to reschedule it, which backs off exponentially. A sync stopped
+ * by the system has its requests disconnected, so it doesn't overlap with the rescheduled one.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncJobService extends JobService {
+
+    /** Cancels the sync in flight, only touched on the main thread */
+    private LoadCancellation mCancellation;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final LoadCancellation cancellation = new LoadCancellation();
+        mCancellation = cancellation;
+        /* onStartJob runs on the main thread, the requests go on their own thread */
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean succeeded = NewsSync.run(getApplicationContext(), cancellation);
+                /* A stopped job is finished already, onStopJob asked for it to be rescheduled */
+                if (!cancellation.isCancelled()) {
+                    jobFinished(params, !succeeded);
+                }
+            }
+        }, "NewsSync").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mCancellation != null) {
+            mCancellation.cancel();
+            mCancellation = null;
+        }
+        /* The conditions went away before the sync finished, run it again once they are back */
+        return true;
+    }
+}
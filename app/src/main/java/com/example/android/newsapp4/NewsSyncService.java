@@ -0,0 +1,21 @@
+package com.example.android.newsapp4;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * {@link NewsSyncService} runs {@link NewsSync} when its alarm goes off, before Lollipop
+ * (there is no JobScheduler). A failed sync schedules its own retry with an exponential back-off.
+ */
+public class NewsSyncService extends IntentService {
+
+    public NewsSyncService() {
+        super("NewsSyncService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        boolean succeeded = NewsSync.run(getApplicationContext());
+        NewsSync.onAlarmSyncFinished(getApplicationContext(), succeeded);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.newsapp4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NewsTagIndex} maps every tag id (a contributor's profile, a keyword, a series) of a list
+ * of articles to the articles that carry it, so filtering the list by an author or a tag is one
+ * lookup instead of a scan of the list (or another request).
+ * <p>
+ * It is built from the {@link NewsTags} the parser extracted with the rest of every article, no
+ * field is parsed again, on the background thread that made the list (see {@link NewsList}). The
+ * screen then keeps the index of the list it shows up to date page by page, without scanning the
+ * list. Not thread safe: hand it over to the thread that uses it, and only that one.
+ */
+public class NewsTagIndex {
+
+    private final HashMap<String, ArrayList<News>> mArticles;
+
+    /**
+     * Constructs an empty {@link NewsTagIndex}.
+     */
+    public NewsTagIndex() {
+        this(16);
+    }
+
+    private NewsTagIndex(int expectedTags) {
+        mArticles = new HashMap<String, ArrayList<News>>(expectedTags * 2);
+    }
+
+    /**
+     * Index the articles, in their order.
+     */
+    public static NewsTagIndex build(List<News> newsArticles) {
+        /* Most tags are shared, a few per article is plenty */
+        NewsTagIndex index = new NewsTagIndex(newsArticles.size() * 2);
+        for (int i = 0; i < newsArticles.size(); i++) {
+            index.add(newsArticles.get(i));
+        }
+        return index;
+    }
+
+    /**
+     * Add an article after the ones indexed already.
+     */
+    public void add(News news) {
+        NewsTags tags = news.getTags();
+        if (tags == null) {
+            return;
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            String id = tags.getId(i);
+            if (id == null) {
+                continue;
+            }
+            ArrayList<News> articles = mArticles.get(id);
+            if (articles == null) {
+                articles = new ArrayList<News>(4);
+                mArticles.put(id, articles);
+            }
+            /* The same tag twice on one article counts once */
+            if (articles.isEmpty() || articles.get(articles.size() - 1) != news) {
+                articles.add(news);
+            }
+        }
+    }
+
+    /**
+     * Add the articles of another index after the ones indexed already, e.g. a page appended to
+     * the list. The other index isn't changed.
+     */
+    public void addAll(NewsTagIndex other) {
+        for (Map.Entry<String, ArrayList<News>> entry : other.mArticles.entrySet()) {
+            ArrayList<News> articles = mArticles.get(entry.getKey());
+            if (articles == null) {
+                mArticles.put(entry.getKey(), new ArrayList<News>(entry.getValue()));
+            } else {
+                articles.addAll(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add the articles of another index before the ones indexed already, e.g. a page prepended to
+     * the list. The other index isn't changed.
+     */
+    public void addAllFirst(NewsTagIndex other) {
+        for (Map.Entry<String, ArrayList<News>> entry : other.mArticles.entrySet()) {
+            ArrayList<News> articles = mArticles.get(entry.getKey());
+            if (articles == null) {
+                mArticles.put(entry.getKey(), new ArrayList<News>(entry.getValue()));
+            } else {
+                articles.addAll(0, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Remove the article (this instance, not an equal one), e.g. one dropped from the list.
+     */
+    public void remove(News news) {
+        NewsTags tags = news.getTags();
+        if (tags == null) {
+            return;
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            String id = tags.getId(i);
+            ArrayList<News> articles = id != null ? mArticles.get(id) : null;
+            if (articles == null) {
+                continue;
+            }
+            for (int j = articles.size() - 1; j >= 0; j--) {
+                if (articles.get(j) == news) {
+                    articles.remove(j);
+                    break;
+                }
+            }
+            if (articles.isEmpty()) {
+                mArticles.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Return the articles with the tag, in the order of the list, read only. It is a view: copy it
+     * to keep it past the next change of the index.
+     */
+    public List<News> lookUp(String tagId) {
+        ArrayList<News> articles = mArticles.get(tagId);
+        return articles == null ? Collections.<News>emptyList() : Collections.unmodifiableList(articles);
+    }
+
+    /**
+     * Return the number of distinct tags.
+     */
+    public int size() {
+        return mArticles.size();
+    }
+}
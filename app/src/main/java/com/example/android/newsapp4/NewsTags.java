@@ -0,0 +1,255 @@
+package com.example.android.newsapp4;
+
+import java.util.Arrays;
+
+/**
+ * {@link NewsTags} holds the tags of one article (show-tags=contributor,keyword,series): every
+ * contributor, keyword and series, in the order of the response. Three parallel arrays, the ids and
+ * titles shared with the other articles through {@link StringPool}: a keyword like
+ * "technology/android" is held once however many articles carry it. The keywords and series have
+ * a pool of their own: there are thousands of them, in the shared pool they would push out the
+ * sections and authors it is sized for.
+ */
+public final class NewsTags {
+
+    /** type "contributor": an author, its id is the author's profile, e.g. "profile/alexhern" */
+    public static final int CONTRIBUTOR = 0;
+    /** type "keyword", e.g. "technology/android" */
+    public static final int KEYWORD = 1;
+    /** type "series", e.g. "technology/series/chips-with-everything" */
+    public static final int SERIES = 2;
+
+    /** Value of show-tags that asks for every type kept */
+    static final String SHOW_TAGS = "contributor,keyword,series";
+
+    /** Separates the contributors in the byline */
+    private static final String BYLINE_SEPARATOR = " and ";
+    /** Type letters of {@link #encode()}, indexed by type */
+    private static final char[] TYPE_LETTERS = {'c', 'k', 's'};
+    /** Enough for the keywords and series of every cached page */
+    private static final int KEYWORD_POOL_CAPACITY = 4096;
+
+    /** Pools the ids and titles of the keywords and series, the contributors go to the shared pool */
+    private static final StringPool sKeywordPool = new StringPool(KEYWORD_POOL_CAPACITY);
+
+    private final byte[] mTypes;
+    private final String[] mIds;
+    private final String[] mTitles;
+
+    private NewsTags(byte[] types, String[] ids, String[] titles) {
+        mTypes = types;
+        mIds = ids;
+        mTitles = titles;
+    }
+
+    /**
+     * Return the type of a tag type name of the API, or -1 for the types that aren't kept.
+     */
+    static int type(CharSequence name) {
+        if (contentEquals(name, "contributor")) {
+            return CONTRIBUTOR;
+        }
+        if (contentEquals(name, "keyword")) {
+            return KEYWORD;
+        }
+        if (contentEquals(name, "series")) {
+            return SERIES;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return mTypes.length;
+    }
+
+    public int getType(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * Return the id of the tag, what {@link NewsTagIndex} looks articles up by, or null if it has none.
+     */
+    public String getId(int index) {
+        return mIds[index];
+    }
+
+    public String getTitle(int index) {
+        return mTitles[index];
+    }
+
+    /**
+     * Return the names of the contributors joined with " and " (pooled: a pair of authors often
+     * writes together), or null if there is none.
+     */
+    public String getContributors() {
+        StringBuilder byline = null;
+        for (int i = 0; i < mTypes.length; i++) {
+            if (mTypes[i] != CONTRIBUTOR) {
+                continue;
+            }
+            if (byline == null) {
+                byline = new StringBuilder(mTitles[i]);
+            } else {
+                byline.append(BYLINE_SEPARATOR).append(mTitles[i]);
+            }
+        }
+        return byline == null ? null : StringPool.getDefault().intern(byline.toString());
+    }
+
+    /**
+     * Return the tags as one String, for {@link NewsBatch}: a line per tag, its type letter, its id,
+     * a tab and its title. A newline, tab or backslash in an id or title is escaped with a backslash.
+     */
+    String encode() {
+        StringBuilder encoded = new StringBuilder(mTypes.length * 48);
+        for (int i = 0; i < mTypes.length; i++) {
+            if (i > 0) {
+                encoded.append('\n');
+            }
+            encoded.append(TYPE_LETTERS[mTypes[i]]);
+            if (mIds[i] != null) {
+                escape(encoded, mIds[i]);
+            }
+            encoded.append('\t');
+            escape(encoded, mTitles[i]);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Return the tags of a String of {@link #encode()}, or null if it is null or has none.
+     */
+    static NewsTags decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        Builder builder = new Builder();
+        int start = 0;
+        while (start < encoded.length()) {
+            int end = encoded.indexOf('\n', start);
+            if (end < 0) {
+                end = encoded.length();
+            }
+            int tab = encoded.indexOf('\t', start);
+            int type = -1;
+            for (int t = 0; t < TYPE_LETTERS.length; t++) {
+                if (encoded.charAt(start) == TYPE_LETTERS[t]) {
+                    type = t;
+                }
+            }
+            if (type >= 0 && tab > start && tab < end) {
+                builder.add(type, tab > start + 1 ? unescape(encoded.substring(start + 1, tab)) : null,
+                        unescape(encoded.substring(tab + 1, end)));
+            }
+            start = end + 1;
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NewsTags)) {
+            return false;
+        }
+        NewsTags other = (NewsTags) o;
+        return Arrays.equals(mTypes, other.mTypes) && Arrays.equals(mIds, other.mIds)
+                && Arrays.equals(mTitles, other.mTitles);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mIds);
+    }
+
+    private static void escape(StringBuilder encoded, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n') {
+                encoded.append("\\n");
+            } else if (c == '\t') {
+                encoded.append("\\t");
+            } else if (c == '\\') {
+                encoded.append("\\\\");
+            } else {
+                encoded.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        /* Almost every id and title has nothing escaped, keep the substring */
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                unescaped.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static boolean contentEquals(CharSequence chars, String name) {
+        if (chars.length() != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (chars.charAt(i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the tags of one article while it is parsed, reused for the next one.
+     */
+    static final class Builder {
+        private byte[] mTypes = new byte[8];
+        private String[] mIds = new String[8];
+        private String[] mTitles = new String[8];
+        private int mSize;
+
+        /**
+         * Add a tag, its id and title are pooled by type. A tag without a title is dropped.
+         */
+        void add(int type, String id, String title) {
+            if (title == null) {
+                return;
+            }
+            if (mSize == mTypes.length) {
+                mTypes = Arrays.copyOf(mTypes, mSize * 2);
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+                mTitles = Arrays.copyOf(mTitles, mSize * 2);
+            }
+            StringPool pool = type == CONTRIBUTOR ? StringPool.getDefault() : sKeywordPool;
+            mTypes[mSize] = (byte) type;
+            mIds[mSize] = pool.intern(id);
+            mTitles[mSize] = pool.intern(title);
+            mSize++;
+        }
+
+        /**
+         * Return the tags added since the last build (null if none) and start over.
+         */
+        NewsTags build() {
+            if (mSize == 0) {
+                return null;
+            }
+            NewsTags tags = new NewsTags(Arrays.copyOf(mTypes, mSize), Arrays.copyOf(mIds, mSize),
+                    Arrays.copyOf(mTitles, mSize));
+            Arrays.fill(mIds, 0, mSize, null);
+            Arrays.fill(mTitles, 0, mSize, null);
+            mSize = 0;
+            return tags;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.android.newsapp4;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * {@link NewsTimeFormatter} turns the Guardian's UTC timestamps (2018-05-27T08:00:20Z) into
+ * the local time shown in the list (2018-05-27 11:00).
+ * <p>
+ * SimpleDateFormat is expensive to create and not thread safe, so every thread keeps its own
+ * pair of formatters. The output formatter depends on the device's timezone and locale: call
+ * {@link #invalidate()} when either changes and every formatter (and every display time cached
+ * in a {@link News}) is rebuilt on its next use.
+ */
+public final class NewsTimeFormatter {
+
+    /** Format of webPublicationDate */
+    private static final String INPUT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+    /** Format of the time shown in the list */
+    private static final String OUTPUT_PATTERN = "yyyy-MM-dd HH:mm";
+
+    /** Incremented whenever the timezone or locale changes */
+    private static volatile int sGeneration;
+
+    private static final ThreadLocal<Formatters> sFormatters = new ThreadLocal<Formatters>();
+
+    /**
+     * Only static methods, no instances.
+     */
+    private NewsTimeFormatter() {
+    }
+
+    /**
+     * Return the timestamp in the device's timezone and locale, or the timestamp itself
+     * when it can't be parsed (or null when it is null).
+     */
+    public static String format(String timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        Formatters formatters = formatters();
+        try {
+            Date date = formatters.input.parse(timestamp);
+            return formatters.output.format(date);
+        } catch (ParseException e) {
+            return timestamp;
+        }
+    }
+
+    /**
+     * Return the epoch milliseconds in the device's timezone and locale, or null for {@link News#NO_TIME}.
+     */
+    public static String format(long millis) {
+        if (millis == News.NO_TIME) {
+            return null;
+        }
+        return formatters().output.format(new Date(millis));
+    }
+
+    /**
+     * Throw away the formatters and cached display times, the timezone or locale changed.
+     */
+    public static void invalidate() {
+        sGeneration++;
+    }
+
+    /**
+     * Return the current generation, display times formatted in another generation are stale.
+     */
+    public static int generation() {
+        return sGeneration;
+    }
+
+    /**
+     * Return the epoch milliseconds of a timestamp of the form 2018-05-27T08:00:20Z,
+     * or {@link News#NO_TIME} if it has another form. Allocates nothing, the parser hands the
+     * chars it decoded without making a String of them.
+     */
+    static long parseUtc(CharSequence timestamp) {
+        if (timestamp == null || timestamp.length() != 20 || timestamp.charAt(4) != '-'
+                || timestamp.charAt(7) != '-' || timestamp.charAt(10) != 'T' || timestamp.charAt(13) != ':'
+                || timestamp.charAt(16) != ':' || timestamp.charAt(19) != 'Z') {
+            return News.NO_TIME;
+        }
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 2);
+        int day = digits(timestamp, 8, 2);
+        int hour = digits(timestamp, 11, 2);
+        int minute = digits(timestamp, 14, 2);
+        int second = digits(timestamp, 17, 2);
+        /* 2018-02-31 would come back as 2018-03-03, keep such timestamps as strings */
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return News.NO_TIME;
+        }
+        return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L;
+    }
+
+    /**
+     * Return the timestamp (2018-05-27T08:00:20Z) of epoch milliseconds, in UTC.
+     */
+    static String formatUtc(long millis) {
+        long days = floorDiv(millis, 86400000L);
+        int secondOfDay = (int) ((millis - days * 86400000L) / 1000);
+        /* civil_from_days, proleptic Gregorian calendar */
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        char[] chars = new char[20];
+        putDigits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        putDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        putDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        putDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        putDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        putDigits(chars, 17, secondOfDay % 60, 2);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    /**
+     * Number of days of the month (1 to 12) of the year, in the proleptic Gregorian calendar.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days between 1970-01-01 and the date, days_from_civil of the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Division rounded towards negative infinity (Math.floorDiv needs API 24).
+     */
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if (dividend % divisor != 0 && (dividend < 0) != (divisor < 0)) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    /**
+     * Return the number written with count decimal digits from start, or -1 if there is another char.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void putDigits(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static Formatters formatters() {
+        int generation = sGeneration;
+        Formatters formatters = sFormatters.get();
+        if (formatters == null || formatters.generation != generation) {
+            formatters = new Formatters(generation);
+            sFormatters.set(formatters);
+        }
+        return formatters;
+    }
+
+    /**
+     * The formatters of one thread, for one generation.
+     */
+    private static final class Formatters {
+        final int generation;
+        final SimpleDateFormat input;
+        final SimpleDateFormat output;
+
+        Formatters(int generation) {
+            this.generation = generation;
+            // Get the time String with specific pattern
+            input = new SimpleDateFormat(INPUT_PATTERN, Locale.US);
+            // Set the timezone of the article
+            input.setTimeZone(TimeZone.getTimeZone("UTC"));
+            // Set output format for time string
+            output = new SimpleDateFormat(OUTPUT_PATTERN, Locale.getDefault());
+            // Change timezone to be displayed at user's phone timezone
+            output.setTimeZone(TimeZone.getDefault());
+        }
+    }
+}
@@ -1,14 +1,13 @@
 package com.example.android.newsapp4;
 
-import android.util.JsonReader;
 import android.util.Log;
 
+import com.google.gson.stream.JsonReader;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
@@ -33,32 +32,80 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
+    /**
+     * Callback that receives every {@link News} object as soon as it has been parsed,
+     * before the rest of the response has been downloaded.
+     */
+    public interface OnNewsParsedListener {
+        void onNewsParsed(News news);
+    }
+
+    /**
+     * Paging metadata of a response ("currentPage" and "pages" under "response").
+     */
+    public static class PageInfo {
+        int currentPage;
+        int pages;
+    }
+
     /**
      * Return a list of {@link News} objects that has been built up from
      * parsing a JSON response.
      */
     public static ArrayList<News> extractNews(String url) throws IOException {
+        return extractNews(url, null);
+    }
 
-        URL newsUrl = createUrl(url);
+    /**
+     * Return a list of {@link News} objects parsed straight off the connection's stream.
+     * The response is never buffered into a String; each article is handed to the
+     * listener (if any) as soon as it has been read.
+     */
+    public static ArrayList<News> extractNews(String url, OnNewsParsedListener listener) throws IOException {
+        return NewsHttpClient.getInstance().fetchNews(url, null, listener).getNews();
+    }
 
-        String jsonResponse = makeHttpRequest(newsUrl);
+    /**
+     * Parse a Guardian JSON response directly from the {@link InputStream}.
+     * The caller is responsible for closing the stream.
+     */
+    public static ArrayList<News> parseNews(InputStream inputStream, OnNewsParsedListener listener) throws IOException {
+        return parseNews(inputStream, listener, null);
+    }
 
-        // Create an empty ArrayList that we can start adding news articles to
-        /* Create a JsonReader from the Json String */
-        JsonReader reader = new JsonReader(new StringReader(jsonResponse));
+    /**
+     * Parse a Guardian JSON response directly from the {@link InputStream}, storing its
+     * paging metadata in pageInfo (if not null).
+     * The caller is responsible for closing the stream.
+     */
+    public static ArrayList<News> parseNews(InputStream inputStream, OnNewsParsedListener listener,
+                                            PageInfo pageInfo) throws IOException {
+        return parseNews(inputStream, NewsProjectionParser.ALL, listener, pageInfo);
+    }
 
-        // Try to parse the SAMPLE_JSON_RESPONSE. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
-        try {
-            return readNewsArray(reader);
-        } finally {
-            /* close the reader */
-            reader.close();
-        }
+    /**
+     * Parse only the given {@link News} fields of a Guardian JSON response directly from the
+     * {@link InputStream}, the rest of the response is skipped without being decoded.
+     * The caller is responsible for closing the stream.
+     *
+     * @param projection the fields to read, see {@link NewsProjectionParser}
+     */
+    public static ArrayList<News> parseNews(InputStream inputStream, int projection, OnNewsParsedListener listener,
+                                            PageInfo pageInfo) throws IOException {
+        /* Straight off the stream's bytes, no intermediate String and no String for the keys */
+        return NewsProjectionParser.parse(inputStream, projection, listener, pageInfo);
     }
 
     public static ArrayList<News> readNewsArray(JsonReader reader) throws IOException {
+        return readNewsArray(reader, null, null);
+    }
+
+    public static ArrayList<News> readNewsArray(JsonReader reader, OnNewsParsedListener listener) throws IOException {
+        return readNewsArray(reader, listener, null);
+    }
+
+    public static ArrayList<News> readNewsArray(JsonReader reader, OnNewsParsedListener listener,
+                                                PageInfo pageInfo) throws IOException {
         /* Create an array to store the newsArticles list */
         ArrayList<News> newsArticles = new ArrayList<News>();
 
@@ -73,9 +120,17 @@ public final class QueryUtils {
                         reader.beginArray();
                         while (reader.hasNext()) {
                             /* add news object which is under "results" */
-                            newsArticles.add(readNews(reader));
+                            News news = readNews(reader);
+                            newsArticles.add(news);
+                            if (listener != null) {
+                                listener.onNewsParsed(news);
+                            }
                         }
                         reader.endArray();
+                    } else if (name.equals("currentPage") && pageInfo != null) {
+                        pageInfo.currentPage = reader.nextInt();
+                    } else if (name.equals("pages") && pageInfo != null) {
+                        pageInfo.pages = reader.nextInt();
                     } else {
                         /* skip all values that are not under "results" key */
                         reader.skipValue();
@@ -97,13 +152,16 @@ public final class QueryUtils {
         String webTitle = null;
         String webUrl = null;
         String authorWebTitle = null;
+        NewsTags tags = null;
+        NewsTags.Builder tagsBuilder = new NewsTags.Builder();
+        String thumbnailUrl = null;
 
         reader.beginObject();
         while (reader.hasNext()) {
             String name = reader.nextName();
             if (name.equals("sectionName")) {
-                /* store String value of key sectionName to variable sectionName */
-                sectionName = reader.nextString();
+                /* store String value of key sectionName to variable sectionName, shared by every article of the section */
+                sectionName = StringPool.getDefault().intern(reader.nextString());
             } else if (name.equals("webPublicationDate")) {
                 /* store String value of key webPublicationDate to variable place */
                 webPublicationDate = reader.nextString();
@@ -114,35 +172,104 @@ public final class QueryUtils {
                 /* store string value of key webUrl to variable webUrl */
                 webUrl = reader.nextString();
             } else if (name.equals("tags")) {
-                /* get in tags array, get webTitle for Author name */
+                /* get in tags array: every contributor (the author names), keyword and series */
                 reader.beginArray();
                 while (reader.hasNext()) {
+                    String tagId = null;
+                    String tagTitle = null;
+                    int tagType = NewsTags.CONTRIBUTOR;
                     reader.beginObject();
                     while (reader.hasNext()) {
                         name = reader.nextName();
-                        if (name.equals("webTitle")) {
-                            authorWebTitle = reader.nextString();
+                        if (name.equals("id")) {
+                            tagId = reader.nextString();
+                        } else if (name.equals("type")) {
+                            tagType = NewsTags.type(reader.nextString());
+                        } else if (name.equals("webTitle")) {
+                            tagTitle = reader.nextString();
                         } else {
                             reader.skipValue();
                         }
                     }
                     reader.endObject();
+                    if (tagType >= 0) {
+                        tagsBuilder.add(tagType, tagId, tagTitle);
+                    }
                 }
                 reader.endArray();
+                tags = tagsBuilder.build();
+                authorWebTitle = tags != null ? tags.getContributors() : null;
+            } else if (name.equals("fields")) {
+                /* get in fields object (show-fields=thumbnail), get thumbnail for the image URL */
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("thumbnail")) {
+                        thumbnailUrl = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
             } else {
                 /* don't do anything with values of other keys */
                 reader.skipValue();
             }
         }
         reader.endObject();
-        /* Create new News object and return it */
-        return new News(webTitle, authorWebTitle, sectionName, webPublicationDate, webUrl);
+        /* Create new News object and return it, its display fields are computed here on the loader thread */
+        News news = new News(webTitle, authorWebTitle, sectionName, webPublicationDate, webUrl, thumbnailUrl);
+        news.setTags(tags);
+        return news;
+    }
+
+    /**
+     * Parse the text of an article from a Guardian "content" response asked for with
+     * show-fields=bodyText (response.content.fields.bodyText), or return null if it has none.
+     * The caller is responsible for closing the stream.
+     */
+    public static String parseBodyText(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        String bodyText = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("response")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("content")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("fields")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("bodyText")) {
+                            bodyText = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return bodyText;
     }
 
     /**
      * Returns new URL object from the given string URL.
      */
-    private static URL createUrl(String stringUrl) {
+    static URL createUrl(String stringUrl) {
         URL url = null;
         try {
             url = new URL(stringUrl);
@@ -152,46 +279,6 @@ public final class QueryUtils {
         return url;
     }
 
-    /**
-     * Make an HTTP request to the given URL and return a String assr the response.
-     */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
-
-        /* If the URL is null, then return early. */
-        if (url == null) {
-            return jsonResponse;
-        }
-
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
-        try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.setReadTimeout(10000);
-            urlConnection.setConnectTimeout(15000);
-            urlConnection.connect();
-            // If the request was successful (response code 200),
-            // then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readNewsFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
-            }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving the news JSON results.", e);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return jsonResponse;
-    }
-
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
@@ -209,4 +296,4 @@ public final class QueryUtils {
         }
         return output.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package com.example.android.newsapp4;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-app reader of one article. The text is read from the {@link ArticleBodyStore}, where the
+ * {@link ArticlePrefetcher} usually put it while the article was on screen in the list, so opening
+ * it is a local read. Otherwise it is downloaded (and stored) first. The menu still opens the
+ * article in the browser.
+ */
+public class ReaderActivity extends AppCompatActivity {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ReaderActivity.class.getSimpleName();
+
+    private static final String EXTRA_URL = "com.example.android.newsapp4.extra.URL";
+    private static final String EXTRA_TITLE = "com.example.android.newsapp4.extra.TITLE";
+    private static final String EXTRA_BYLINE = "com.example.android.newsapp4.extra.BYLINE";
+
+    private String mUrl;
+    private TextView mBodyTextView;
+    private ProgressBar mProgressBar;
+    /** Reads (or downloads) the text off the main thread */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    /** Disconnects the download when the reader is closed before it is done */
+    private final LoadCancellation mCancellation = new LoadCancellation();
+
+    /**
+     * Return the intent that opens the article in the reader.
+     */
+    public static Intent newIntent(Context context, News news) {
+        Intent intent = new Intent(context, ReaderActivity.class);
+        intent.putExtra(EXTRA_URL, news.getUrl());
+        intent.putExtra(EXTRA_TITLE, news.getDisplayTitle());
+        String byline = news.getDisplayByline();
+        String time = news.getDisplayTime();
+        if (time != null) {
+            byline = byline.isEmpty() ? time : byline + ", " + time;
+        }
+        intent.putExtra(EXTRA_BYLINE, byline);
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        final long openStart = NewsMetrics.start();
+        setContentView(R.layout.activity_reader);
+        mUrl = getIntent().getStringExtra(EXTRA_URL);
+        ((TextView) findViewById(R.id.reader_title)).setText(getIntent().getStringExtra(EXTRA_TITLE));
+        ((TextView) findViewById(R.id.reader_byline)).setText(getIntent().getStringExtra(EXTRA_BYLINE));
+        mBodyTextView = (TextView) findViewById(R.id.reader_body);
+        mProgressBar = (ProgressBar) findViewById(R.id.reader_progress);
+        if (mUrl == null) {
+            finish();
+            return;
+        }
+
+        final ArticleBodyStore store = ArticleBodyStore.getInstance(this);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String body = store.get(mUrl);
+                if (body == null) {
+                    NewsMetrics.count(NewsMetrics.Counter.BODY_MISSES);
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mProgressBar.setVisibility(View.VISIBLE);
+                        }
+                    });
+                    try {
+                        body = ArticlePrefetcher.download(store, mUrl, mCancellation);
+                    } catch (IOException e) {
+                        if (!mCancellation.isCancelled()) {
+                            Log.e(LOG_TAG, "Problem downloading the article " + mUrl, e);
+                        }
+                    }
+                }
+                final String text = body;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mProgressBar.setVisibility(View.GONE);
+                        if (text != null) {
+                            mBodyTextView.setText(text);
+                        } else {
+                            mBodyTextView.setText(getResources().getText(R.string.reader_no_body));
+                        }
+                        NewsMetrics.end(NewsMetrics.Span.OPEN_ARTICLE, openStart);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mExecutor.shutdownNow();
+        mCancellation.cancel();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            Intent browserIntent = new Intent(Intent.ACTION_VIEW);
+            browserIntent.setData(Uri.parse(mUrl));
+            startActivity(browserIntent);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -3,12 +3,15 @@ package com.example.android.newsapp4;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.ListPreference;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 
+import java.util.Set;
+
 public class SettingsActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,6 +35,9 @@ public class SettingsActivity extends AppCompatActivity {
         @Override
         public boolean onPreferenceChange(Preference preference, Object newValue) {
             // The code in this method takes care of updating the displayed preference summary after it has been changed
+            if (preference instanceof MultiSelectListPreference) {
+                return onTopicsChange((MultiSelectListPreference) preference, (Set<?>) newValue);
+            }
             String stringValue = newValue.toString();
             /** For multiple preferences, we implement the following lines **/
             if (preference instanceof ListPreference) {
@@ -47,9 +53,36 @@ public class SettingsActivity extends AppCompatActivity {
             return true;
         }
 
+        /**
+         * Show the labels of the chosen topics as the summary; at least one topic has to stay chosen.
+         */
+        private boolean onTopicsChange(MultiSelectListPreference preference, Set<?> topics) {
+            if (topics.isEmpty()) {
+                return false;
+            }
+            StringBuilder summary = new StringBuilder();
+            CharSequence[] values = preference.getEntryValues();
+            CharSequence[] labels = preference.getEntries();
+            for (int i = 0; i < values.length; i++) {
+                if (topics.contains(values[i].toString())) {
+                    if (summary.length() > 0) {
+                        summary.append(", ");
+                    }
+                    summary.append(labels[i]);
+                }
+            }
+            preference.setSummary(summary);
+            return true;
+        }
+
         private void bindPrefereneSummaryToValue (Preference preference) {
             preference.setOnPreferenceChangeListener(this);
             SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(preference.getContext());
+            if (preference instanceof MultiSelectListPreference) {
+                onPreferenceChange(preference, preferences.getStringSet(preference.getKey(),
+                        ((MultiSelectListPreference) preference).getValues()));
+                return;
+            }
             String preferenceString = preferences.getString(preference.getKey(), "");
             onPreferenceChange(preference, preferenceString);
         }
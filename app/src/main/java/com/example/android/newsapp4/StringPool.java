@@ -0,0 +1,63 @@
+package com.example.android.newsapp4;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link StringPool} makes equal Strings share one instance, like {@link String#intern()} but
+ * bounded and collectable. The parser creates a new String for every value it reads: the section
+ * names and authors repeat across thousands of articles, and pooling them keeps one copy of each.
+ * <p>
+ * The pool holds at most a fixed number of Strings and drops the least recently used one when full,
+ * so a value that never repeats (a title, a URL) must not be pooled: it would only push out the
+ * useful ones.
+ */
+public class StringPool {
+
+    /** Enough for every section and the regular authors */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final StringPool sDefault = new StringPool(DEFAULT_CAPACITY);
+
+    private final LinkedHashMap<String, String> mStrings;
+
+    /**
+     * Constructs a new {@link StringPool}.
+     *
+     * @param capacity most Strings held at once
+     */
+    public StringPool(final int capacity) {
+        mStrings = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the pool shared by the parser, the cache and the search index.
+     */
+    public static StringPool getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Return the pooled String equal to value, pooling value if there is none (null stays null).
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = mStrings.get(value);
+        if (pooled == null) {
+            mStrings.put(value, value);
+            pooled = value;
+        }
+        return pooled;
+    }
+
+    public synchronized int size() {
+        return mStrings.size();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.android.newsapp4;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * {@link ThumbnailDiskCache} keeps the downloaded thumbnail images on disk, as they came off the
+ * network (they are JPEGs already, compressing them again gains nothing), so they can be decoded
+ * straight from their file. The least recently used images are evicted once the cache grows past
+ * its size limit.
+ */
+public class ThumbnailDiskCache {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ThumbnailDiskCache.class.getSimpleName();
+
+    /** Extension of the image files */
+    private static final String IMAGE_SUFFIX = ".img";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Writes the image into the cache, e.g. from the network.
+     */
+    public interface Source {
+        /**
+         * Write the image to the stream.
+         *
+         * @return false if there is no image, nothing is stored then
+         */
+        boolean writeTo(OutputStream out) throws IOException;
+    }
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    /** Total size of the files, or -1 until it has been counted */
+    private long mSizeBytes = -1;
+
+    /**
+     * Constructs a new {@link ThumbnailDiskCache}.
+     *
+     * @param directory where the images are stored
+     * @param maxBytes  upper bound for the total size of the files
+     */
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return the file of the image with the given URL, or null if it isn't cached.
+     */
+    public File get(String url) {
+        File file = imageFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        /* Most recently used images are evicted last */
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Store the image written by the source under the given URL, then trim the cache.
+     * Several threads may store images at the same time.
+     *
+     * @return the file of the image, or null if the source had none or it could not be stored
+     */
+    public File put(String url, Source source) throws IOException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create the thumbnail cache " + mDirectory);
+            return null;
+        }
+        File file = imageFile(url);
+        /* Written aside (one file per thread) and renamed, so a decoder never sees half an image */
+        File temporary = new File(mDirectory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temporary));
+        boolean stored = false;
+        try {
+            if (!source.writeTo(out)) {
+                return null;
+            }
+            out.close();
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Can't rename " + temporary);
+            }
+            stored = true;
+        } finally {
+            if (!stored) {
+                out.close();
+                temporary.delete();
+            }
+        }
+        added(file.length());
+        return file;
+    }
+
+    /**
+     * Delete the least recently used images until the cache fits its size limit.
+     */
+    public synchronized void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            mSizeBytes = 0;
+            return;
+        }
+        long totalBytes = 0;
+        ArrayList<File> images = new ArrayList<File>(files.length);
+        for (File file : files) {
+            if (file.getName().endsWith(IMAGE_SUFFIX)) {
+                images.add(file);
+                totalBytes += file.length();
+            }
+        }
+        if (totalBytes > mMaxBytes) {
+            File[] sorted = DiskLru.leastRecentlyUsedFirst(images);
+            for (int i = 0; i < sorted.length && totalBytes > mMaxBytes; i++) {
+                totalBytes -= sorted[i].length();
+                sorted[i].delete();
+            }
+        }
+        mSizeBytes = totalBytes;
+    }
+
+    /**
+     * Return the total size of the cached files.
+     */
+    public synchronized long sizeBytes() {
+        if (mSizeBytes < 0) {
+            trim();
+        }
+        return mSizeBytes;
+    }
+
+    /**
+     * Count a stored image and trim the cache once it is over its limit. The size is kept up to
+     * date in memory, so storing an image doesn't list the whole directory.
+     */
+    private synchronized void added(long bytes) {
+        if (mSizeBytes < 0) {
+            trim();
+        } else {
+            /* A replaced image is counted twice until the next trim, which errs on the safe side */
+            mSizeBytes += bytes;
+            if (mSizeBytes > mMaxBytes) {
+                trim();
+            }
+        }
+    }
+
+    /**
+     * Return the file that holds the image with the given URL, named after the MD5 of the URL.
+     */
+    private File imageFile(String url) {
+        return new File(mDirectory, hash(url) + IMAGE_SUFFIX);
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes(UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            /* Every Java platform has MD5 */
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
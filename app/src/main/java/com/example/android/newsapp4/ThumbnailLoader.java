@@ -0,0 +1,380 @@
+package com.example.android.newsapp4;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ThumbnailLoader} shows the thumbnails of the list: from a memory cache when the row is
+ * bound, otherwise from the {@link ThumbnailDiskCache} or the network on a background thread.
+ * <p>
+ * Images are decoded at the size of their view (a power of two inSampleSize, in RGB_565: thumbnails
+ * have no transparency), into the memory of an evicted bitmap from the {@link BitmapPool} when one
+ * fits. The newest request runs first, so a fling loads the rows it stops on before the ones it flew
+ * past, and a request whose row was recycled before it ran is dropped. A download that already
+ * started is finished into the disk cache, only its decode is skipped.
+ * <p>
+ * On a slow network (see {@link NetworkPolicy}) the Guardian's smaller rendition of an image is
+ * downloaded instead, unless the one served is on disk already.
+ * <p>
+ * The memory cache, the requests and the views are only touched on the main thread.
+ */
+public class ThumbnailLoader {
+
+    /** Tag for log messages */
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /** Name of the folder inside the app's cache directory */
+    private static final String DIRECTORY_NAME = "thumbnails";
+    /** Upper bound for the total size of the images on disk (10 MB, a few hundred thumbnails) */
+    private static final long DISK_MAX_BYTES = 10 * 1024 * 1024;
+    /** Threads downloading and decoding at the same time */
+    private static final int THREADS = 2;
+    /** Size of the decode buffer of every thread, reused for every image */
+    private static final int TEMP_STORAGE_BYTES = 16 * 1024;
+    /** Host of the Guardian's images, their last path segment is their width, e.g. 500.jpg */
+    private static final String MEDIA_URL = "https://media.guim.co.uk/";
+    /** Width of the smaller rendition of an image */
+    private static final int SMALL_WIDTH = 140;
+
+    private static ThumbnailLoader sInstance;
+
+    private final ThumbnailDiskCache mDiskCache;
+    private final BitmapPool mBitmapPool;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /** Disconnects the downloads in flight when the loader is released */
+    private final LoadCancellation mCancellation = new LoadCancellation();
+    /** Pending request of every view */
+    private final WeakHashMap<ImageView, Request> mRequests = new WeakHashMap<ImageView, Request>();
+    /** Bitmap shown by every view */
+    private final WeakHashMap<ImageView, Bitmap> mShown = new WeakHashMap<ImageView, Bitmap>();
+    /** Number of views showing every bitmap: a bitmap on screen must never be decoded into */
+    private final IdentityHashMap<Bitmap, Integer> mShownCounts = new IdentityHashMap<Bitmap, Integer>();
+
+    /** Decode buffer of every loader thread */
+    private static final ThreadLocal<byte[]> sTempStorage = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[TEMP_STORAGE_BYTES];
+        }
+    };
+
+    /**
+     * Return the app wide loader. Its memory cache takes an eighth of the heap, the pool of
+     * bitmaps to reuse a thirty-second.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            File directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+            sInstance = new ThumbnailLoader(new ThumbnailDiskCache(directory, DISK_MAX_BYTES),
+                    (int) Math.min(maxMemory / 8, Integer.MAX_VALUE), new BitmapPool(maxMemory / 32));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Return the app wide loader if it has been created, otherwise null.
+     */
+    public static synchronized ThumbnailLoader peekInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Constructs a new {@link ThumbnailLoader}.
+     *
+     * @param diskCache        where the downloaded images are kept
+     * @param memoryCacheBytes upper bound for the total size of the bitmaps kept in memory
+     * @param bitmapPool       where evicted bitmaps wait to be decoded into
+     */
+    ThumbnailLoader(ThumbnailDiskCache diskCache, int memoryCacheBytes, BitmapPool bitmapPool) {
+        mDiskCache = diskCache;
+        mBitmapPool = bitmapPool;
+        mMemoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String url, Bitmap oldBitmap, Bitmap newBitmap) {
+                /* Called on the main thread, where the cache is used */
+                if (!mShownCounts.containsKey(oldBitmap)) {
+                    mBitmapPool.put(oldBitmap);
+                }
+            }
+        };
+        /* Last in, first out: the rows bound last are the ones on screen now */
+        mExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingDeque<Runnable>() {
+                    @Override
+                    public boolean offer(Runnable runnable) {
+                        return offerFirst(runnable);
+                    }
+                }, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ThumbnailLoader");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Show the thumbnail with the given URL in the view, decoded at the given size, instead of
+     * whatever the view showed or was waiting for. A null URL only clears the view.
+     * Must be called on the main thread.
+     */
+    public void bind(ImageView view, String url, int width, int height) {
+        Request pending = mRequests.get(view);
+        if (pending != null && pending.mUrl.equals(url)) {
+            /* Already on its way */
+            return;
+        }
+        clear(view);
+        if (url == null) {
+            return;
+        }
+        Bitmap cached = mMemoryCache.get(url);
+        if (cached != null) {
+            NewsMetrics.count(NewsMetrics.Counter.THUMBNAIL_MEMORY_HITS);
+            show(view, cached);
+            return;
+        }
+        Request request = new Request(view, url, width, height);
+        mRequests.put(view, request);
+        mExecutor.execute(request);
+    }
+
+    /**
+     * Cancel the request of the view (e.g. its row was recycled) and stop showing its bitmap.
+     * Must be called on the main thread.
+     */
+    public void clear(ImageView view) {
+        Request pending = mRequests.remove(view);
+        if (pending != null) {
+            pending.mCancelled = true;
+            NewsMetrics.count(NewsMetrics.Counter.THUMBNAILS_CANCELLED);
+        }
+        Bitmap shown = mShown.remove(view);
+        if (shown != null) {
+            Integer count = mShownCounts.remove(shown);
+            if (count != null && count > 1) {
+                mShownCounts.put(shown, count - 1);
+            }
+        }
+        view.setImageDrawable(null);
+    }
+
+    /**
+     * Stop every download and decode, the loader can't be used anymore.
+     */
+    public void release() {
+        mExecutor.shutdownNow();
+        mCancellation.cancel();
+        mMemoryCache.evictAll();
+        mBitmapPool.clear();
+    }
+
+    /**
+     * Give back the memory of the bitmaps that aren't shown, as much as the level of
+     * {@link ComponentCallbacks2#onTrimMemory} asks for; they are decoded from the disk cache
+     * again. Must be called on the main thread.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            /* Also on TRIM_MEMORY_UI_HIDDEN: keep the most recent half for when the list is back */
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        } else {
+            return;
+        }
+        /* After the eviction, which pools the bitmaps it drops */
+        mBitmapPool.clear();
+    }
+
+    private void show(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        mShown.put(view, bitmap);
+        Integer count = mShownCounts.get(bitmap);
+        mShownCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Deliver a decoded bitmap on the main thread, to its view if the view still wants it.
+     */
+    private void deliver(final Request request, final Bitmap bitmap) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ImageView view = request.mView.get();
+                if (view == null || mRequests.get(view) != request) {
+                    /* The row was recycled while decoding: the bitmap was never shown, reuse it */
+                    mBitmapPool.put(bitmap);
+                    return;
+                }
+                mRequests.remove(view);
+                mMemoryCache.put(request.mUrl, bitmap);
+                show(view, bitmap);
+            }
+        });
+    }
+
+    /**
+     * Download (unless cached on disk) and decode one thumbnail, on a loader thread.
+     */
+    private Bitmap load(final Request request) throws IOException {
+        File file = mDiskCache.get(request.mUrl);
+        String url = request.mUrl;
+        if (file == null && !NetworkPolicy.getInstance().getConnectionClass().isFullQualityThumbnails()) {
+            url = smallRendition(request.mUrl);
+            file = mDiskCache.get(url);
+        }
+        if (file == null) {
+            final String downloadUrl = url;
+            file = mDiskCache.put(downloadUrl, new ThumbnailDiskCache.Source() {
+                @Override
+                public boolean writeTo(OutputStream out) throws IOException {
+                    return NewsHttpClient.download(downloadUrl, out, mCancellation);
+                }
+            });
+            if (file == null) {
+                return null;
+            }
+            NewsMetrics.count(NewsMetrics.Counter.THUMBNAIL_DOWNLOADS);
+        }
+        if (request.mCancelled) {
+            return null;
+        }
+        long decodeStart = NewsMetrics.start();
+        Bitmap bitmap = decode(file.getPath(), request.mWidth, request.mHeight);
+        NewsMetrics.end(NewsMetrics.Span.DECODE_THUMBNAIL, decodeStart);
+        return bitmap;
+    }
+
+    /**
+     * Decode the image file at the given size (at least, within a power of two), into a pooled
+     * bitmap when one is large enough.
+     */
+    private Bitmap decode(String path, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTempStorage = sTempStorage.get();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(LOG_TAG, "Not an image: " + path);
+            new File(path).delete();
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = mBitmapPool.get(sampledWidth * sampledHeight * 2, Bitmap.Config.RGB_565);
+        if (options.inBitmap != null) {
+            try {
+                Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+                NewsMetrics.count(NewsMetrics.Counter.BITMAPS_REUSED);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                /* The decoder refused the pooled bitmap, decode into a new one */
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Return the URL of the smaller rendition of a Guardian image, or the URL itself for another image.
+     */
+    static String smallRendition(String url) {
+        int lastSlash = url.lastIndexOf('/');
+        if (!url.startsWith(MEDIA_URL) || !url.endsWith(".jpg") || lastSlash < MEDIA_URL.length()) {
+            return url;
+        }
+        for (int i = lastSlash + 1; i < url.length() - ".jpg".length(); i++) {
+            if (!Character.isDigit(url.charAt(i))) {
+                return url;
+            }
+        }
+        return url.substring(0, lastSlash + 1) + SMALL_WIDTH + ".jpg";
+    }
+
+    /**
+     * Return the largest power of two sample size that keeps the decoded image at least as large
+     * as the requested size in both dimensions, so it is scaled down (never up) to fill its view.
+     */
+    static int calculateInSampleSize(int imageWidth, int imageHeight, int requestedWidth, int requestedHeight) {
+        int inSampleSize = 1;
+        if (requestedWidth <= 0 || requestedHeight <= 0) {
+            return inSampleSize;
+        }
+        while (imageWidth / (inSampleSize * 2) >= requestedWidth
+                && imageHeight / (inSampleSize * 2) >= requestedHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * The thumbnail one view waits for.
+     */
+    private final class Request implements Runnable {
+        final WeakReference<ImageView> mView;
+        final String mUrl;
+        final int mWidth;
+        final int mHeight;
+        /** Set on the main thread when the view is rebound or recycled */
+        volatile boolean mCancelled;
+
+        Request(ImageView view, String url, int width, int height) {
+            mView = new WeakReference<ImageView>(view);
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            try {
+                Bitmap bitmap = load(this);
+                if (bitmap != null) {
+                    deliver(this, bitmap);
+                }
+            } catch (IOException e) {
+                if (!mCancellation.isCancelled()) {
+                    Log.e(LOG_TAG, "Problem loading the thumbnail " + mUrl, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the compressed article store of the reader: round trip, least recently read eviction,
+ * and that the stored articles are read back from the disk alone.
+ */
+public class ArticleBodyStoreTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("bodies", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void storedBody_isReadBackCompressed() {
+        ArticleBodyStore store = new ArticleBodyStore(mDirectory, 1024 * 1024);
+        String body = body(0);
+        assertFalse(store.contains("https://www.theguardian.com/a"));
+        assertNull(store.get("https://www.theguardian.com/a"));
+
+        store.put("https://www.theguardian.com/a", body);
+        assertTrue(store.contains("https://www.theguardian.com/a"));
+        assertEquals(body, store.get("https://www.theguardian.com/a"));
+        assertTrue("stored " + store.sizeBytes() + " bytes of " + body.length(),
+                store.sizeBytes() < body.getBytes(Charset.forName("UTF-8")).length / 2);
+    }
+
+    @Test
+    public void leastRecentlyRead_isEvictedFirst() {
+        ArticleBodyStore store = new ArticleBodyStore(mDirectory, Long.MAX_VALUE);
+        store.put("https://www.theguardian.com/old", body(1));
+        store.put("https://www.theguardian.com/read", body(2));
+        long oneBody = store.sizeBytes() / 2;
+        /* Both stored a minute ago: file times may only have a one second resolution */
+        for (File file : mDirectory.listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 60000);
+        }
+        assertNotNull(store.get("https://www.theguardian.com/read"));
+
+        ArticleBodyStore smallStore = new ArticleBodyStore(mDirectory, oneBody * 5 / 2);
+        smallStore.put("https://www.theguardian.com/new", body(3));
+        assertFalse(smallStore.contains("https://www.theguardian.com/old"));
+        assertTrue(smallStore.contains("https://www.theguardian.com/read"));
+        assertTrue(smallStore.contains("https://www.theguardian.com/new"));
+    }
+
+    @Test
+    public void sizeBytes_followsStoresAndReplacements() {
+        ArticleBodyStore store = new ArticleBodyStore(mDirectory, 4 * 1024 * 1024);
+        store.put("https://www.theguardian.com/a", body(1));
+        store.put("https://www.theguardian.com/b", body(2));
+        /* The running size, against a store that counts the files */
+        assertEquals(new ArticleBodyStore(mDirectory, 4 * 1024 * 1024).sizeBytes(), store.sizeBytes());
+        store.put("https://www.theguardian.com/a", body(3) + body(4));
+        assertEquals(new ArticleBodyStore(mDirectory, 4 * 1024 * 1024).sizeBytes(), store.sizeBytes());
+    }
+
+    @Test
+    public void everyStoredArticle_isReadBackByAnotherStore() {
+        ArticleBodyStore store = new ArticleBodyStore(mDirectory, 4 * 1024 * 1024);
+        int articles = 50;
+        for (int i = 0; i < articles; i++) {
+            store.put("https://www.theguardian.com/article-" + i, body(i));
+        }
+        /* What the reader opens after the process was restarted: the disk alone */
+        ArticleBodyStore reopened = new ArticleBodyStore(mDirectory, 4 * 1024 * 1024);
+        for (int i = 0; i < articles; i++) {
+            assertEquals(body(i), reopened.get("https://www.theguardian.com/article-" + i));
+        }
+        assertEquals(store.sizeBytes(), reopened.sizeBytes());
+    }
+
+    @Test
+    public void parseBodyText_readsTheContentField() throws IOException {
+        String json = "{\"response\":{\"status\":\"ok\",\"total\":1,\"content\":{\"id\":\"technology/a\","
+                + "\"type\":\"article\",\"webTitle\":\"Title\",\"fields\":{\"headline\":\"Title\","
+                + "\"bodyText\":\"First line. \\\"Quoted\\\" second line.\"},\"isHosted\":false}}}";
+        assertEquals("First line. \"Quoted\" second line.",
+                QueryUtils.parseBodyText(new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")))));
+
+        String withoutFields = "{\"response\":{\"status\":\"ok\",\"content\":{\"id\":\"technology/a\"}}}";
+        assertNull(QueryUtils.parseBodyText(new ByteArrayInputStream(withoutFields.getBytes(Charset.forName("UTF-8")))));
+    }
+
+    /**
+     * Return the text of an article, about 6000 characters of varied sentences.
+     */
+    private static String body(int seed) {
+        String[] words = {"phones", "apps", "the", "future", "of", "web", "battery", "screen", "privacy",
+                "search", "cloud", "data", "regulators", "said", "users", "companies", "new", "year"};
+        StringBuilder body = new StringBuilder(6000);
+        int state = seed * 7919 + 1;
+        while (body.length() < 6000) {
+            state = state * 1103515245 + 12345;
+            body.append(words[(state >>> 16) % words.length]);
+            body.append((state & 0xF) == 0 ? ". " : " ");
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link CircuitBreaker} of the API calls.
+ */
+public class CircuitBreakerTest {
+
+    private final ManualClock mClock = new ManualClock();
+
+    @Test
+    public void opensAfterFailuresInARow_thenLetsOneProbeThrough() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 50, mClock);
+        assertFalse(breaker.onFailure());
+        assertFalse(breaker.onFailure());
+        breaker.onSuccess();
+        assertFalse(breaker.onFailure());
+        assertFalse(breaker.onFailure());
+        assertTrue(breaker.onFailure());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        mClock.advance(49);
+        assertFalse(breaker.allowRequest());
+        mClock.advance(1);
+        assertTrue("the probe", breaker.allowRequest());
+        assertFalse("only one probe at a time", breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbe_reopens() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, mClock);
+        assertTrue(breaker.onFailure());
+        mClock.advance(60);
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.onFailure());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void lostProbe_isReplacedAfterACoolDown() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, mClock);
+        assertTrue(breaker.onFailure());
+        mClock.advance(50);
+        assertTrue(breaker.allowRequest());
+        mClock.advance(49);
+        assertFalse(breaker.allowRequest());
+        mClock.advance(1);
+        assertTrue("the probe never reported back", breaker.allowRequest());
+    }
+
+    @Test
+    public void openFor_keepsTheBreakerOpenForTheGivenTime() {
+        CircuitBreaker breaker = new CircuitBreaker(5, 10, mClock);
+        assertTrue(breaker.openFor(100));
+        mClock.advance(30);
+        assertFalse(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        mClock.advance(70);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.newsapp4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds Guardian "search" responses shaped like the ones requested by {@link NewsActivity},
+ * so the parser can be exercised on the JVM without a network.
+ */
+final class GuardianFixtures {
+
+    private static final String[] SECTIONS = {"Technology", "Science", "Business", "Opinion"};
+    private static final String[] AUTHORS = {"Alex Hern", "Samuel Gibbs", "Hannah Devlin", "John Naughton"};
+    private static final String[] KEYWORDS = {"Android", "Apps", "Smartphones"};
+
+    private GuardianFixtures() {
+    }
+
+    /**
+     * Return a JSON response with the given number of results.
+     */
+    static String response(int results) {
+        StringBuilder json = new StringBuilder(results * 700);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(results * 10)
+                .append(",\"startIndex\":1,\"pageSize\":").append(results)
+                .append(",\"currentPage\":1,\"pages\":10,\"orderBy\":\"newest\",\"results\":[");
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendResult(json, i);
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * Return a JSON response with the given articles as its results, e.g. what a mock server
+     * picked for a query.
+     */
+    static String response(List<News> newsArticles) {
+        StringBuilder json = new StringBuilder(newsArticles.size() * 300);
+        json.append("{\"response\":{\"status\":\"ok\",\"total\":").append(newsArticles.size())
+                .append(",\"currentPage\":1,\"pages\":1,\"results\":[");
+        for (int i = 0; i < newsArticles.size(); i++) {
+            News news = newsArticles.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"sectionName\":\"").append(news.getSectionName())
+                    .append("\",\"webPublicationDate\":\"").append(news.getTimestamp())
+                    .append("\",\"webTitle\":\"").append(news.getNewsTitle())
+                    .append("\",\"webUrl\":\"").append(news.getUrl()).append("\"}");
+        }
+        json.append("]}}");
+        return json.toString();
+    }
+
+    /**
+     * Return the response as UTF-8 bytes, the way it comes off the socket.
+     */
+    static byte[] responseBytes(int results) {
+        return response(results).getBytes(Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Return the articles of a response with the given number of results, parsed by {@link QueryUtils}.
+     */
+    static ArrayList<News> parse(int results) throws IOException {
+        return QueryUtils.parseNews(new ByteArrayInputStream(responseBytes(results)), null);
+    }
+
+    private static void appendResult(StringBuilder json, int i) {
+        String section = SECTIONS[i % SECTIONS.length];
+        String author = AUTHORS[i % AUTHORS.length];
+        String slug = "technology/2018/jun/" + (i % 28 + 1) + "/article-" + i;
+        json.append("{\"id\":\"").append(slug)
+                .append("\",\"type\":\"article\",\"sectionId\":\"").append(section.toLowerCase())
+                .append("\",\"sectionName\":\"").append(section)
+                .append("\",\"webPublicationDate\":\"2018-06-")
+                .append(String.format("%02d", i % 28 + 1))
+                .append("T").append(String.format("%02d", i % 24)).append(":00:20Z")
+                .append("\",\"webTitle\":\"Article number ").append(i)
+                .append(" about phones, apps and the future of the web | ").append(author)
+                .append("\",\"webUrl\":\"https://www.theguardian.com/").append(slug)
+                .append("\",\"apiUrl\":\"https://content.guardianapis.com/").append(slug)
+                .append("\",\"tags\":[{\"id\":\"profile/").append(author.toLowerCase().replace(' ', '-'))
+                .append("\",\"type\":\"contributor\",\"webTitle\":\"").append(author)
+                .append("\",\"webUrl\":\"https://www.theguardian.com/profile/")
+                .append(author.toLowerCase().replace(' ', '-'))
+                .append("\",\"apiUrl\":\"https://content.guardianapis.com/profile/")
+                .append(author.toLowerCase().replace(' ', '-'))
+                .append("\",\"references\":[],\"firstName\":\"").append(author.split(" ")[0])
+                .append("\",\"lastName\":\"").append(author.split(" ")[1])
+                .append("\"}");
+        if (i % 3 == 2) {
+            /* Every third article has a second author */
+            String coAuthor = AUTHORS[(i + 1) % AUTHORS.length];
+            json.append(",{\"id\":\"profile/").append(coAuthor.toLowerCase().replace(' ', '-'))
+                    .append("\",\"type\":\"contributor\",\"webTitle\":\"").append(coAuthor)
+                    .append("\",\"references\":[]}");
+        }
+        json.append(",{\"id\":\"technology/").append(KEYWORDS[i % KEYWORDS.length].toLowerCase())
+                .append("\",\"type\":\"keyword\",\"sectionId\":\"technology\",\"webTitle\":\"")
+                .append(KEYWORDS[i % KEYWORDS.length]).append("\",\"references\":[]}");
+        if (i % 10 == 0) {
+            json.append(",{\"id\":\"technology/series/chips-with-everything\",\"type\":\"series\",")
+                    .append("\"webTitle\":\"Chips with everything\",\"references\":[]}");
+        }
+        json.append("],");
+        if (i % 5 != 4) {
+            /* Every fifth article has no thumbnail, like the odd live blog */
+            json.append("\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/").append(i)
+                    .append("/master/500.jpg\"},");
+        }
+        json.append("\"isHosted\":false,\"pillarId\":\"pillar/news\",\"pillarName\":\"News\"}");
+    }
+}
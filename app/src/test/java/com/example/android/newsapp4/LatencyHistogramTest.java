@@ -0,0 +1,69 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the log-linear {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueWithinOneSixteenth() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456, 10000000, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(value + " <= " + upperBound, value <= upperBound);
+            assertTrue(value + " within 1/16 of " + upperBound, upperBound - value <= value / 16);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(500.5, histogram.getMeanMicros(), 0.001);
+        assertEquals(500, histogram.getPercentileMicros(50), 500 / 16);
+        assertEquals(990, histogram.getPercentileMicros(99), 990 / 16);
+        assertEquals(1000, histogram.getPercentileMicros(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void metrics_recordNothingWhileDisabled() {
+        NewsMetrics.reset();
+        NewsMetrics.setEnabled(false);
+        assertEquals(0, NewsMetrics.start());
+        NewsMetrics.recordNanos(NewsMetrics.Span.PARSE, 5000);
+        NewsMetrics.count(NewsMetrics.Counter.LOADS);
+        assertEquals(0, NewsMetrics.getHistogram(NewsMetrics.Span.PARSE).getCount());
+        assertEquals(0, NewsMetrics.getCount(NewsMetrics.Counter.LOADS));
+
+        NewsMetrics.setEnabled(true);
+        try {
+            NewsMetrics.end(NewsMetrics.Span.PARSE, NewsMetrics.start());
+            for (int i = 0; i < NewsMetrics.BIND_SAMPLE_RATE; i++) {
+                NewsMetrics.end(NewsMetrics.Span.BIND, NewsMetrics.startBind());
+            }
+            assertEquals(1, NewsMetrics.getHistogram(NewsMetrics.Span.PARSE).getCount());
+            assertEquals(1, NewsMetrics.getHistogram(NewsMetrics.Span.BIND).getCount());
+            assertEquals(NewsMetrics.BIND_SAMPLE_RATE, NewsMetrics.getCount(NewsMetrics.Counter.BINDS));
+            assertTrue(NewsMetrics.dump().contains("parse"));
+        } finally {
+            NewsMetrics.setEnabled(false);
+            NewsMetrics.reset();
+        }
+    }
+}
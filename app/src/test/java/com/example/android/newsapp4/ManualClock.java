@@ -0,0 +1,25 @@
+package com.example.android.newsapp4;
+
+/**
+ * A {@link Clock} that only moves when a test advances it. It starts at the current time, so the
+ * times it gives stay comparable with the times of the files the test writes.
+ */
+class ManualClock implements Clock {
+
+    private final long mStartMillis = System.currentTimeMillis();
+    private long mElapsedMillis;
+
+    synchronized void advance(long millis) {
+        mElapsedMillis += millis;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return mStartMillis + mElapsedMillis;
+    }
+
+    @Override
+    public synchronized long elapsedMillis() {
+        return mElapsedMillis;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link NetworkPolicy} classifies a network from the round trips and downloads
+ * measured on it, follows it when it gets faster or slower, and starts over on another network.
+ */
+public class NetworkPolicyTest {
+
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void unmeasuredNetwork_usesTheHint() {
+        NetworkPolicy policy = new NetworkPolicy();
+        assertEquals(NetworkPolicy.DEFAULT_HINT, policy.getConnectionClass());
+
+        policy.onNetworkChanged("MOBILE/EDGE", NetworkPolicy.ConnectionClass.POOR);
+        NetworkPolicy.ConnectionClass poor = policy.getConnectionClass();
+        assertEquals(NetworkPolicy.ConnectionClass.POOR, poor);
+        assertEquals(10, poor.getPageSize());
+        assertFalse(poor.isNextPagePrefetched());
+        assertTrue(poor.getBodiesPrefetchedAhead() < 0);
+        assertFalse(poor.isFullQualityThumbnails());
+    }
+
+    @Test
+    public void slowDownloads_makeAPoorNetwork() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        /* 40 KB in 4 s: 80 kbit/s */
+        policy.recordRoundTrip(400 * MILLIS);
+        policy.recordDownload(40 * 1024, 4000 * MILLIS);
+        assertEquals(NetworkPolicy.ConnectionClass.POOR, policy.getConnectionClass());
+    }
+
+    @Test
+    public void fastDownloadsAndShortRoundTrips_makeAnExcellentNetwork() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        /* 100 KB in 50 ms: 16 Mbit/s */
+        policy.recordRoundTrip(40 * MILLIS);
+        policy.recordDownload(100 * 1024, 50 * MILLIS);
+
+        NetworkPolicy.ConnectionClass excellent = policy.getConnectionClass();
+        assertEquals(NetworkPolicy.ConnectionClass.EXCELLENT, excellent);
+        assertTrue(excellent.getPageSize() > NetworkPolicy.ConnectionClass.GOOD.getPageSize());
+        assertTrue(excellent.getReadTimeoutMillis() < NetworkPolicy.ConnectionClass.POOR.getReadTimeoutMillis());
+    }
+
+    @Test
+    public void slowerOfRoundTripAndThroughput_wins() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("MOBILE/LTE", NetworkPolicy.ConnectionClass.GOOD);
+        /* Plenty of bandwidth, but every request waits 2 s for its answer, e.g. a satellite link */
+        policy.recordDownload(100 * 1024, 50 * MILLIS);
+        policy.recordRoundTrip(2000 * MILLIS);
+        assertEquals(NetworkPolicy.ConnectionClass.POOR, policy.getConnectionClass());
+
+        /* Only a round trip measured: the hint stands in for the throughput */
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        policy.recordRoundTrip(20 * MILLIS);
+        assertEquals(NetworkPolicy.ConnectionClass.GOOD, policy.getConnectionClass());
+    }
+
+    @Test
+    public void smallBodies_areNotAThroughput() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        /* 2 KB in 200 ms is mostly the round trip, not 80 kbit/s */
+        policy.recordDownload(2 * 1024, 200 * MILLIS);
+        assertEquals(NetworkPolicy.ConnectionClass.GOOD, policy.getConnectionClass());
+    }
+
+    @Test
+    public void recentLoads_weighTheMost() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("MOBILE/HSPA", NetworkPolicy.ConnectionClass.MODERATE);
+        for (int i = 0; i < 10; i++) {
+            policy.recordRoundTrip(300 * MILLIS);
+            policy.recordDownload(40 * 1024, 4000 * MILLIS);
+        }
+        assertEquals(NetworkPolicy.ConnectionClass.POOR, policy.getConnectionClass());
+
+        /* Out of the tunnel: a few fast loads are enough to leave the poor class */
+        int loads = 0;
+        while (policy.getConnectionClass() == NetworkPolicy.ConnectionClass.POOR) {
+            policy.recordRoundTrip(100 * MILLIS);
+            policy.recordDownload(100 * 1024, 100 * MILLIS);
+            loads++;
+        }
+        assertTrue("took " + loads + " loads", loads <= 3);
+    }
+
+    @Test
+    public void anotherNetwork_startsOver() {
+        NetworkPolicy policy = new NetworkPolicy();
+        policy.onNetworkChanged("MOBILE/EDGE", NetworkPolicy.ConnectionClass.POOR);
+        policy.recordDownload(40 * 1024, 4000 * MILLIS);
+
+        /* The same network announced again keeps what was measured */
+        policy.onNetworkChanged("MOBILE/EDGE", NetworkPolicy.ConnectionClass.POOR);
+        assertEquals(NetworkPolicy.ConnectionClass.POOR, policy.getConnectionClass());
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        assertEquals(NetworkPolicy.ConnectionClass.GOOD, policy.getConnectionClass());
+    }
+
+    @Test
+    public void listener_isToldOfEveryNewClass() {
+        NetworkPolicy policy = new NetworkPolicy();
+        final ArrayList<String> changes = new ArrayList<String>();
+        policy.setListener(new NetworkPolicy.Listener() {
+            @Override
+            public void onConnectionClassChanged(String network, NetworkPolicy.ConnectionClass connectionClass) {
+                changes.add(network + " " + connectionClass);
+            }
+        });
+        policy.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.GOOD);
+        policy.recordRoundTrip(40 * MILLIS);
+        policy.recordDownload(100 * 1024, 50 * MILLIS);
+        /* Still excellent: nothing to remember */
+        policy.recordDownload(100 * 1024, 50 * MILLIS);
+        assertEquals(Arrays.asList("WIFI/ GOOD", "WIFI/ EXCELLENT"), changes);
+
+        /* A network remembered as excellent starts as such, the next process asks for its page size */
+        NetworkPolicy next = new NetworkPolicy();
+        next.onNetworkChanged("WIFI/", NetworkPolicy.ConnectionClass.EXCELLENT);
+        assertEquals(50, next.getConnectionClass().getPageSize());
+    }
+
+    @Test
+    public void smallRendition_isOnlyAskedOfTheGuardian() {
+        assertEquals("https://media.guim.co.uk/4f5a/0_0_3500_2100/140.jpg",
+                ThumbnailLoader.smallRendition("https://media.guim.co.uk/4f5a/0_0_3500_2100/500.jpg"));
+        assertEquals("https://example.com/image/500.jpg",
+                ThumbnailLoader.smallRendition("https://example.com/image/500.jpg"));
+        assertEquals("https://media.guim.co.uk/4f5a/master.jpg",
+                ThumbnailLoader.smallRendition("https://media.guim.co.uk/4f5a/master.jpg"));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the binary {@link NewsBatch} format, with a size comparison against the
+ * Guardian JSON it replaces; NewsBatchBenchmark in the benchmark module compares their speed.
+ */
+public class NewsBatchTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(System.getProperty("java.io.tmpdir"), "news-batch-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void roundTrip_keepsEveryField() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(50);
+        newsArticles.add(new News("No author, no time", "Technology", "https://example.com/1"));
+        newsArticles.add(new News("Odd time", null, null, "yesterday", "https://example.com/2"));
+        newsArticles.add(new News("Impossible date", "Science", "2018-02-31T10:00:00Z", "https://example.com/3"));
+        newsArticles.add(new News("\u00dcn\u00efc\u00f6d\u00e9 \u2713 | Zo\u00eb", "Kultur", "1969-12-31T23:59:59Z", null));
+
+        NewsBatch batch = NewsBatch.wrap(ByteBuffer.wrap(NewsBatch.encode(newsArticles)));
+
+        assertEquals(newsArticles.size(), batch.size());
+        assertEquals(newsArticles, batch.toList());
+    }
+
+    @Test
+    public void mappedFile_readsSingleRecords() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(200);
+        NewsBatch.write(newsArticles, mFile);
+
+        NewsBatch batch = NewsBatch.map(mFile);
+        assertEquals(200, batch.size());
+        assertEquals(newsArticles.get(137), batch.get(137));
+        assertEquals(newsArticles.get(5).getUrl(), batch.getUrl(5));
+        assertEquals(newsArticles.get(99).getTimeMillis(), batch.getTimeMillis(99));
+        /* Shared strings are decoded once */
+        assertSame(batch.get(0).getSectionName(), batch.get(4).getSectionName());
+    }
+
+    @Test
+    public void timestamps_matchTheCalendar() {
+        assertEquals(0, NewsTimeFormatter.parseUtc("1970-01-01T00:00:00Z"));
+        assertEquals(1527408020000L, NewsTimeFormatter.parseUtc("2018-05-27T08:00:20Z"));
+        assertEquals(951782400000L, NewsTimeFormatter.parseUtc("2000-02-29T00:00:00Z"));
+        assertEquals("2018-05-27T08:00:20Z", NewsTimeFormatter.formatUtc(1527408020000L));
+        assertEquals("1969-12-31T23:59:59Z", NewsTimeFormatter.formatUtc(-1000));
+        assertEquals(Long.MIN_VALUE, NewsTimeFormatter.parseUtc("2018-5-27T08:00:20Z"));
+    }
+
+    @Test
+    public void corruptBatch_isRefused() {
+        byte[] bytes = NewsBatch.encode(Arrays.asList(new News("Title", "Section", "https://example.com")));
+        try {
+            NewsBatch.wrap(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 3)));
+            fail("a truncated batch should be refused");
+        } catch (IOException expected) {
+            // Refused
+        }
+        /* The title of the only record refers to a string past the table */
+        ByteBuffer badIndex = ByteBuffer.wrap(bytes.clone());
+        badIndex.putInt(16, 1000);
+        try {
+            NewsBatch.wrap(badIndex);
+            fail("a string index past the table should be refused");
+        } catch (IOException expected) {
+            // Refused
+        }
+        /* The first string starts past the end of the batch */
+        ByteBuffer badOffset = ByteBuffer.wrap(bytes.clone());
+        badOffset.putInt(16 + 36, bytes.length);
+        try {
+            NewsBatch.wrap(badOffset);
+            fail("a string offset past the end should be refused");
+        } catch (IOException expected) {
+            // Refused
+        }
+    }
+
+    @Test
+    public void comparedToJson_aFractionOfTheSize() throws IOException {
+        int results = 200;
+        byte[] json = GuardianFixtures.responseBytes(results);
+        ArrayList<News> newsArticles = GuardianFixtures.parse(results);
+        byte[] binary = NewsBatch.encode(newsArticles);
+
+        assertTrue(binary.length * 3 < json.length);
+        /* The same articles as parsing the JSON, whole or one record at a time */
+        NewsBatch batch = NewsBatch.wrap(ByteBuffer.wrap(binary));
+        assertEquals(QueryUtils.parseNews(new ByteArrayInputStream(json), null), batch.toList());
+        assertEquals(newsArticles.get(results / 2), batch.get(results / 2));
+    }
+}
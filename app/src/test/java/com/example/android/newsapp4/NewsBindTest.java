@@ -0,0 +1,106 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the fields a row binds are precomputed at parse time and give what splitting the
+ * title and formatting the time on every bind (as NewsAdapter.getView used to) gave. Their cost
+ * is compared by NewsBindBenchmark in the benchmark module.
+ */
+public class NewsBindTest {
+
+    @Test
+    public void displayFields_matchTheOldBindLogic() {
+        News withAuthor = new News("Phones are getting bigger | Alex Hern", "Alex Hern",
+                "Technology", "2018-05-27T08:00:20Z", "https://www.theguardian.com/a");
+        News titleAuthorOnly = new News("Phones are getting bigger | Alex Hern",
+                "Technology", "2018-05-27T08:00:20Z", "https://www.theguardian.com/b");
+        News noAuthor = new News("Phones are getting bigger", "Technology", "https://www.theguardian.com/c");
+
+        for (News news : new News[]{withAuthor, titleAuthorOnly, noAuthor}) {
+            String[] old = bindTheOldWay(news);
+            assertEquals(old[0], news.getDisplayTitle());
+            assertEquals(old[1], news.getDisplayByline());
+            assertEquals(old[2], news.getDisplayTime());
+        }
+    }
+
+    @Test
+    public void displayTime_followsTimezoneChanges() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            NewsTimeFormatter.invalidate();
+            News news = new News("Title", "Technology", "2018-05-27T08:00:20Z", "https://www.theguardian.com/a");
+            assertEquals("2018-05-27 08:00", news.getDisplayTime());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("GMT+03:00"));
+            NewsTimeFormatter.invalidate();
+            assertEquals("2018-05-27 11:00", news.getDisplayTime());
+        } finally {
+            TimeZone.setDefault(original);
+            NewsTimeFormatter.invalidate();
+        }
+    }
+
+    @Test
+    public void bind_onlyReadsWhatParsingPrepared() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+        for (News news : newsArticles) {
+            String title = news.getDisplayTitle();
+            String byline = news.getDisplayByline();
+            String time = news.getDisplayTime();
+            /* Binding the row again splits and formats nothing: the very same Strings come back */
+            for (int bind = 0; bind < 3; bind++) {
+                assertSame(title, news.getDisplayTitle());
+                assertSame(byline, news.getDisplayByline());
+                assertSame(time, news.getDisplayTime());
+            }
+        }
+    }
+
+    /**
+     * What NewsAdapter.getView used to compute on every bind: title, byline and time.
+     */
+    private static String[] bindTheOldWay(News news) {
+        String fullArticleName = news.getNewsTitle();
+        String titlePart1;
+        String titlePart2;
+        if (fullArticleName.contains(" | ")) {
+            titlePart1 = fullArticleName.substring(0, fullArticleName.indexOf(" | ", 0));
+            titlePart2 = fullArticleName.substring(fullArticleName.indexOf(" | ", 0) + 3, fullArticleName.length());
+        } else {
+            titlePart1 = fullArticleName;
+            titlePart2 = "";
+        }
+        String byline = titlePart2;
+        String authorName = news.getAuthorName();
+        if (authorName != null && !authorName.equals("")) {
+            byline = authorName;
+        }
+        String time = news.getTimestamp();
+        if (time != null) {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+            SimpleDateFormat output = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+            output.setTimeZone(TimeZone.getDefault());
+            try {
+                Date d = sdf.parse(time);
+                time = output.format(d);
+            } catch (ParseException e) {
+                // Keep the raw timestamp
+            }
+        }
+        return new String[]{titlePart1, byline, time};
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the on-disk {@link NewsCache}.
+ */
+public class NewsCacheTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?q=technology%20AND%20android";
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(System.getProperty("java.io.tmpdir"), "news-cache-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void putThenGet_returnsSameArticles() {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        ArrayList<News> newsArticles = articles(20);
+        cache.put(URL, newsArticles);
+        assertEquals(newsArticles, cache.get(URL));
+        assertNull(cache.get(URL + "&page=2"));
+    }
+
+    @Test
+    public void expiredEntry_isNotReturned() {
+        ManualClock clock = new ManualClock();
+        NewsCache cache = new NewsCache(mDirectory, 1000, 1024 * 1024, null,
+                new NewsMemoryCache(4, 256 * 1024), clock);
+        cache.put(URL, articles(5));
+        clock.advance(1000);
+        assertNotNull(cache.get(URL));
+        clock.advance(1);
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void isSynced_notForTheEntriesOfAScreen() {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        assertFalse(cache.isSynced(URL, 60000));
+        cache.put(URL, articles(5));
+        assertFalse(cache.isSynced(URL, 60000));
+        /* Nor from the disk, without the memory tiers */
+        assertFalse(new NewsCache(mDirectory, 60000, 1024 * 1024).isSynced(URL, 60000));
+    }
+
+    @Test
+    public void corruptEntry_isAMissAndIsDeleted() throws IOException {
+        new NewsCache(mDirectory, 60000, 1024 * 1024).put(URL, articles(5));
+        File file = mDirectory.listFiles()[0];
+        /* A batch length no file of the cache could hold, it mustn't be allocated */
+        RandomAccessFile entry = new RandomAccessFile(file, "rw");
+        try {
+            entry.seek(file.length() - NewsBatch.encode(articles(5)).length - 4);
+            entry.writeInt(Integer.MAX_VALUE);
+        } finally {
+            entry.close();
+        }
+        assertNull(new NewsCache(mDirectory, 60000, 1024 * 1024).getEntry(URL));
+        assertFalse(file.exists());
+
+        /* Truncated in the middle of the batch */
+        new NewsCache(mDirectory, 60000, 1024 * 1024).put(URL, articles(5));
+        entry = new RandomAccessFile(file, "rw");
+        try {
+            entry.setLength(file.length() - 10);
+        } finally {
+            entry.close();
+        }
+        assertNull(new NewsCache(mDirectory, 60000, 1024 * 1024).getEntry(URL));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void trim_evictsLeastRecentlyUsedEntries() {
+        NewsCache unbounded = new NewsCache(mDirectory, 60000, Long.MAX_VALUE);
+        unbounded.put(URL + "&q=1", articles(20));
+        long entryBytes = mDirectory.listFiles()[0].length();
+
+        /* Room for two entries: the third one evicts the least recently used */
+        NewsCache cache = new NewsCache(mDirectory, 60000, entryBytes * 2);
+        backdateEntries();
+        cache.put(URL + "&q=2", articles(20));
+        backdateEntries();
+        cache.put(URL + "&q=3", articles(20));
+
+        assertNull(cache.get(URL + "&q=1"));
+        assertNotNull(cache.get(URL + "&q=2"));
+        assertNotNull(cache.get(URL + "&q=3"));
+    }
+
+    /**
+     * Make every existing entry look one second older, file times are not precise enough otherwise.
+     */
+    private void backdateEntries() {
+        for (File file : mDirectory.listFiles()) {
+            file.setLastModified(file.lastModified() - 1000);
+        }
+    }
+
+    private static ArrayList<News> articles(int count) {
+        ArrayList<News> newsArticles = new ArrayList<News>();
+        for (int i = 0; i < count; i++) {
+            newsArticles.add(new News("Title " + i + " | Author", i % 2 == 0 ? "Author " + i : null,
+                    "Technology", "2018-06-01T08:00:20Z", "https://www.theguardian.com/technology/" + i));
+        }
+        return newsArticles;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.android.newsapp4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the delta sync of {@link NewsCache} against a local mock Guardian server that honours
+ * from-date, to check that a sync only downloads what was published since the last one.
+ */
+public class NewsDeltaSyncTest {
+
+    /** Time of the first article on the server, every further one is a minute newer */
+    private static final long START_MILLIS = NewsTimeFormatter.parseUtc("2018-06-01T08:00:00Z");
+
+    private HttpServer mServer;
+    private String mUrl;
+    private File mDirectory;
+    /** Every article on the server, oldest first */
+    private final List<News> mPublished = new ArrayList<News>();
+    private volatile String mLastQuery;
+    private volatile int mLastResponseBytes;
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        publish(100);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                mLastQuery = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                byte[] body = GuardianFixtures.response(search(mLastQuery)).getBytes(Charset.forName("UTF-8"));
+                mLastResponseBytes = body.length;
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/search?q=technology&order-by=newest&page-size=20&from-date=2018-01-01&api-key=test";
+        mDirectory = new File(System.getProperty("java.io.tmpdir"), "news-delta-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void sync_onlyDownloadsWhatIsNew() throws IOException {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        NewsResponse first = cache.revalidate(mUrl);
+        assertTrue(mLastQuery.contains("from-date=2018-01-01&"));
+        assertEquals(newest(20), first.getNews());
+        int fullBytes = mLastResponseBytes;
+
+        publish(3);
+        NewsResponse second = cache.revalidate(mUrl);
+        assertTrue(mLastQuery, mLastQuery.contains("from-date=2018-06-01T09:39:00Z&"));
+        assertEquals("the merged page is the server's first page", newest(20), second.getNews());
+        assertEquals(newest(20), cache.get(mUrl));
+        int deltaBytes = mLastResponseBytes;
+
+        NewsResponse third = cache.revalidate(mUrl);
+        assertEquals(second.getNews(), third.getNews());
+        /* 3 new articles are a fraction of the page, nothing new less still */
+        assertTrue(deltaBytes + " of " + fullBytes + " B", deltaBytes < fullBytes / 4);
+        assertTrue(mLastResponseBytes + " of " + deltaBytes + " B", mLastResponseBytes < deltaBytes);
+    }
+
+    @Test
+    public void moreNewArticlesThanAPage_replaceThePage() throws IOException {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        cache.revalidate(mUrl);
+        publish(30);
+        assertEquals(newest(20), cache.revalidate(mUrl).getNews());
+    }
+
+    @Test
+    public void syncedEntry_isALocalRead() throws IOException {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        cache.sync(mUrl, null);
+        assertTrue(cache.isSynced(mUrl, 60000));
+        assertTrue(new NewsCache(mDirectory, 60000, 1024 * 1024).isSynced(mUrl, 60000));
+
+        int requests = mRequests.get();
+        assertEquals(newest(20), load(cache));
+        assertEquals(requests, mRequests.get());
+    }
+
+    @Test
+    public void entryOfAScreen_isRevalidatedByTheNextLoad() throws IOException {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        cache.put(mUrl, new NewsResponse(new ArrayList<News>(newest(20)), null, null, 0));
+        publish(1);
+
+        int requests = mRequests.get();
+        assertEquals(newest(20), load(cache));
+        assertEquals(requests + 1, mRequests.get());
+        /* Still not a synced entry: the load after it asks again */
+        load(cache);
+        assertEquals(requests + 2, mRequests.get());
+    }
+
+    @Test
+    public void deltaUrl_onlyForTheFirstPageOfNewestFirstQueries() {
+        String query = "https://content.guardianapis.com/search?q=technology&order-by=newest&from-date=2018-01-01&api-key=k";
+        assertEquals("https://content.guardianapis.com/search?q=technology&order-by=newest"
+                        + "&from-date=2018-06-01T08%3A00%3A00Z&api-key=k",
+                NewsCache.deltaUrl(query, START_MILLIS));
+        assertNull(NewsCache.deltaUrl(query, News.NO_TIME));
+        assertNull(NewsCache.deltaUrl(query + "&page=2", START_MILLIS));
+        assertNull(NewsCache.deltaUrl(query.replace("newest", "relevance"), START_MILLIS));
+    }
+
+    /**
+     * Run a {@link NewsLoader} of the query on the cache and return its final result.
+     */
+    private ArrayList<News> load(NewsCache cache) {
+        NewsLoader loader = new NewsLoader(cache, Collections.singletonList(mUrl));
+        return loader.load(new NewsLoadEngine.Publisher() {
+            @Override
+            public void publish(ArrayList<News> newsArticles) {
+            }
+        }, new LoadCancellation());
+    }
+
+    /**
+     * Publish the given number of articles on the server, each one a minute after the last.
+     */
+    private void publish(int count) {
+        for (int i = 0; i < count; i++) {
+            int number = mPublished.size();
+            mPublished.add(new News("Article " + number + " | Author", "Technology",
+                    NewsTimeFormatter.formatUtc(START_MILLIS + number * 60000L),
+                    "https://www.theguardian.com/technology/" + number));
+        }
+    }
+
+    /**
+     * Return the count newest articles on the server, newest first.
+     */
+    private List<News> newest(int count) {
+        ArrayList<News> newest = new ArrayList<News>(count);
+        for (int i = mPublished.size() - 1; i >= 0 && newest.size() < count; i--) {
+            newest.add(mPublished.get(i));
+        }
+        return newest;
+    }
+
+    /**
+     * Answer the query like the Guardian: newest first, published on or after from-date, one page.
+     */
+    private List<News> search(String query) {
+        String fromDate = query.substring(query.indexOf("from-date=") + "from-date=".length());
+        fromDate = fromDate.substring(0, fromDate.indexOf('&'));
+        long from = fromDate.length() == 10 ? NewsTimeFormatter.parseUtc(fromDate + "T00:00:00Z")
+                : NewsTimeFormatter.parseUtc(fromDate);
+        ArrayList<News> results = new ArrayList<News>();
+        for (News news : newest(mPublished.size())) {
+            if (news.getTimeMillis() >= from && results.size() < 20) {
+                results.add(news);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the multi-topic {@link NewsFanOut}.
+ */
+public class NewsFanOutTest {
+
+    /** Upper bound for the wait of a query for the others, only reached if they never start */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void merge_sortsNewestFirstAndDropsDuplicateUrls() {
+        ArrayList<News> android = new ArrayList<News>(Arrays.asList(
+                news("a", "2018-06-03T10:00:00Z"),
+                news("shared", "2018-06-02T10:00:00Z")));
+        ArrayList<News> google = new ArrayList<News>(Arrays.asList(
+                news("shared", "2018-06-02T10:00:00Z"),
+                news("b", "2018-06-04T10:00:00Z"),
+                news("c", "2018-06-01T10:00:00Z")));
+
+        ArrayList<News> merged = NewsFanOut.merge(Arrays.asList(android, google));
+
+        assertEquals(4, merged.size());
+        assertEquals("b", merged.get(0).getUrl());
+        assertEquals("a", merged.get(1).getUrl());
+        assertEquals("shared", merged.get(2).getUrl());
+        assertEquals("c", merged.get(3).getUrl());
+    }
+
+    @Test
+    public void load_runsTheQueriesAtTheSameTime() throws IOException {
+        List<String> urls = Arrays.asList("android", "google", "science");
+        /* Every query waits until all of them have started: one run after another, none gets past it */
+        final CountDownLatch started = new CountDownLatch(urls.size());
+        final List<String> overlapped = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> arrivals = Collections.synchronizedList(new ArrayList<String>());
+
+        NewsResponse response = NewsFanOut.load(urls, new NewsFanOut.Source() {
+            @Override
+            public NewsResponse load(String url) throws IOException {
+                started.countDown();
+                try {
+                    if (!started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        throw new IOException(url + " ran without the other queries");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                overlapped.add(url);
+                ArrayList<News> page = new ArrayList<News>();
+                page.add(news(url + "/1", "2018-06-01T10:00:00Z"));
+                page.add(news(url + "/2", "2018-06-02T10:00:00Z"));
+                return new NewsResponse(page, null, null, 0, 1, url.length());
+            }
+        }, new NewsFanOut.OnTopicLoadedListener() {
+            @Override
+            public void onTopicLoaded(String url, NewsResponse response) {
+                arrivals.add(url);
+            }
+        });
+
+        assertEquals(3, overlapped.size());
+        assertEquals(6, response.getNews().size());
+        assertEquals(7, response.getPages());
+        assertEquals(3, arrivals.size());
+    }
+
+    @Test
+    public void load_keepsTheTopicsThatSucceeded() throws IOException {
+        NewsResponse response = NewsFanOut.load(Arrays.asList("ok", "broken"), new NewsFanOut.Source() {
+            @Override
+            public NewsResponse load(String url) throws IOException {
+                if (url.equals("broken")) {
+                    throw new IOException("Error response code: 500");
+                }
+                ArrayList<News> page = new ArrayList<News>();
+                page.add(news(url, "2018-06-01T10:00:00Z"));
+                return new NewsResponse(page, null, null, 0);
+            }
+        }, null);
+        assertEquals(1, response.getNews().size());
+    }
+
+    private static News news(String url, String time) {
+        return new News("Title of " + url, "Technology", time, url);
+    }
+}
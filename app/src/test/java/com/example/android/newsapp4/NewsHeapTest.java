@@ -0,0 +1,152 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the Strings kept by 10k articles: the old representation (every field a String of its
+ * own, the title stored whole and split, the raw timestamp) against {@link News} with its time as
+ * a long and its section and author pooled.
+ */
+public class NewsHeapTest {
+
+    private static final int ARTICLES = 10000;
+
+    @Test
+    public void compactNews_keepsFewerAndShorterStrings() throws Exception {
+        ArrayList<News> parsed = GuardianFixtures.parse(ARTICLES);
+        StringPool pool = new StringPool(1024);
+        /* The thumbnails are the parser's in both, shared: only the other fields are compared */
+        Set<String> shared = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (News news : parsed) {
+            shared.add(news.getThumbnailUrl());
+        }
+
+        ArrayList<OldNews> before = new ArrayList<OldNews>(ARTICLES);
+        ArrayList<News> after = new ArrayList<News>(ARTICLES);
+        for (News news : parsed) {
+            /* The parser hands out a new String for every value it reads */
+            before.add(new OldNews(copy(news.getNewsTitle()), copy(news.getAuthorName()),
+                    copy(news.getSectionName()), copy(news.getTimestamp()), copy(news.getUrl())));
+            News compact = new News(copy(news.getNewsTitle()), pool.intern(copy(news.getAuthorName())),
+                    pool.intern(copy(news.getSectionName())), copy(news.getTimestamp()), copy(news.getUrl()),
+                    news.getThumbnailUrl());
+            compact.setTags(news.getTags());
+            after.add(compact);
+        }
+        assertEquals(parsed.get(1234), after.get(1234));
+
+        long[] beforeStrings = retainedStrings(before, shared);
+        long[] afterStrings = retainedStrings(after, shared);
+        /* Pooled authors and sections, no whole title next to its parts, no raw timestamp */
+        assertTrue("before " + beforeStrings[0] + " Strings, after " + afterStrings[0],
+                afterStrings[0] < beforeStrings[0]);
+        assertTrue("before " + beforeStrings[1] + " chars, after " + afterStrings[1],
+                afterStrings[1] < beforeStrings[1]);
+    }
+
+    /**
+     * Return the number of distinct Strings the String fields of the objects hold, and their
+     * total length in chars, leaving the shared ones out. Unlike the used heap of the runtime
+     * it is the same on every run.
+     */
+    private static long[] retainedStrings(List<?> objects, Set<String> shared) throws IllegalAccessException {
+        Set<String> seen = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        seen.addAll(shared);
+        long[] strings = new long[2];
+        for (Object object : objects) {
+            for (Field field : object.getClass().getDeclaredFields()) {
+                if (field.getType() != String.class || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                String value = (String) field.get(object);
+                if (value != null && seen.add(value)) {
+                    strings[0]++;
+                    strings[1] += value.length();
+                }
+            }
+        }
+        return strings;
+    }
+
+    @Test
+    public void compactNews_rebuildsItsFields() {
+        News news = new News("Phones are getting bigger | Alex Hern", null, "Technology",
+                "2018-05-27T08:00:20Z", "https://www.theguardian.com/a");
+        assertEquals("Phones are getting bigger | Alex Hern", news.getNewsTitle());
+        assertEquals("2018-05-27T08:00:20Z", news.getTimestamp());
+        assertEquals(1527408020000L, news.getTimeMillis());
+        assertEquals("Alex Hern", news.getDisplayByline());
+
+        News unusualTime = new News("Title", "Technology", "27 May 2018", "https://www.theguardian.com/b");
+        assertEquals("27 May 2018", unusualTime.getTimestamp());
+        assertEquals(News.NO_TIME, unusualTime.getTimeMillis());
+        assertEquals("27 May 2018", unusualTime.getDisplayTime());
+
+        News noTitle = new News(null, "Technology", "https://www.theguardian.com/c");
+        assertNull(noTitle.getNewsTitle());
+        assertEquals("", noTitle.getDisplayTitle());
+    }
+
+    @Test
+    public void stringPool_sharesEqualStringsAndStaysBounded() {
+        StringPool pool = new StringPool(2);
+        String technology = pool.intern(copy("Technology"));
+        assertSame(technology, pool.intern(copy("Technology")));
+        assertNull(pool.intern(null));
+
+        pool.intern("Science");
+        pool.intern("Business");
+        assertEquals(2, pool.size());
+        /* Technology was the least recently used one */
+        assertNotSame(technology, pool.intern(copy("Technology")));
+    }
+
+    private static String copy(String value) {
+        return value == null ? null : new String(value.toCharArray());
+    }
+
+    /**
+     * {@link News} as it was: the five Strings as parsed plus the display fields computed from them.
+     */
+    private static final class OldNews {
+        final String mTitle;
+        final String mAuthor;
+        final String mSectionName;
+        final String mTime;
+        final String mUrl;
+        final String mDisplayTitle;
+        final String mDisplayByline;
+        final String mDisplayTime;
+        final int mDisplayTimeGeneration;
+
+        OldNews(String title, String author, String sectionName, String time, String url) {
+            mTitle = title;
+            mAuthor = author;
+            mSectionName = sectionName;
+            mTime = time;
+            mUrl = url;
+            String titlePart2 = "";
+            int separator = title.indexOf(" | ");
+            if (separator >= 0) {
+                mDisplayTitle = title.substring(0, separator);
+                titlePart2 = title.substring(separator + 3);
+            } else {
+                mDisplayTitle = title;
+            }
+            mDisplayByline = (author == null || author.isEmpty()) ? titlePart2 : author;
+            mDisplayTimeGeneration = NewsTimeFormatter.generation();
+            mDisplayTime = NewsTimeFormatter.format(time);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.android.newsapp4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link NewsHttpClient} against a local mock Guardian server to check connection reuse,
+ * request coalescing, retries and cancellation. NewsHttpClientBenchmark in the benchmark module
+ * measures the latency per request.
+ */
+public class NewsHttpClientTest {
+
+    private static final String ETAG = "\"results-v1\"";
+
+    private HttpServer mServer;
+    private String mUrl;
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final Set<Integer> mClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    /** Counted down by the first request that reaches the server */
+    private final CountDownLatch mArrived = new CountDownLatch(1);
+    private volatile CountDownLatch mRelease;
+    /** Status codes answered (in order) before the server answers normally again */
+    private final ConcurrentLinkedQueue<Integer> mErrors = new ConcurrentLinkedQueue<Integer>();
+    private volatile String mRetryAfter;
+
+    @Before
+    public void setUp() throws IOException {
+        final byte[] body = gzip(GuardianFixtures.responseBytes(20));
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mHits.incrementAndGet();
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                mArrived.countDown();
+                CountDownLatch release = mRelease;
+                if (release != null) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                Integer error = mErrors.poll();
+                if (error != null) {
+                    if (mRetryAfter != null) {
+                        exchange.getResponseHeaders().set("Retry-After", mRetryAfter);
+                    }
+                    exchange.sendResponseHeaders(error, -1);
+                    exchange.close();
+                    return;
+                }
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/search?q=technology";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void sequentialRequests_reuseOneConnection() throws IOException {
+        NewsHttpClient client = NewsHttpClient.getInstance();
+        int requests = 20;
+        for (int i = 0; i < requests; i++) {
+            assertEquals(20, client.fetchNews(mUrl, null, null).getNews().size());
+        }
+
+        assertEquals(requests, mHits.get());
+        assertEquals("every request should reuse the kept-alive connection", 1, mClientPorts.size());
+    }
+
+    @Test
+    public void notModified_isAnsweredWithoutBody() throws IOException {
+        NewsHttpClient client = NewsHttpClient.getInstance();
+        NewsResponse first = client.fetchNews(mUrl, null, null);
+        assertEquals(ETAG, first.getETag());
+        assertTrue(first.getPayloadBytes() > 0);
+
+        NewsResponse second = client.fetchNews(mUrl, first, null);
+        assertTrue(second.isNotModified());
+        assertEquals(ETAG, second.getETag());
+        assertEquals(1, mClientPorts.size());
+    }
+
+    @Test
+    public void concurrentIdenticalRequests_areCoalesced() throws Exception {
+        mRelease = new CountDownLatch(1);
+        final List<NewsResponse> responses = Collections.synchronizedList(new ArrayList<NewsResponse>());
+        final long coalesced = NetworkStats.getCoalescedCount();
+        List<Thread> callers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        responses.add(NewsHttpClient.getInstance().fetchNews(mUrl, null, null));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        /* The server holds the first request until the other callers have joined it */
+        assertTrue(mArrived.await(5, TimeUnit.SECONDS));
+        waitUntil(new Counter() {
+            @Override
+            public long get() {
+                return NetworkStats.getCoalescedCount() - coalesced;
+            }
+        }, 3);
+        mRelease.countDown();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+
+        assertEquals(1, mHits.get());
+        assertEquals(4, responses.size());
+        for (NewsResponse response : responses) {
+            assertSame(responses.get(0), response);
+        }
+    }
+
+    @Test
+    public void serverErrors_areRetried() throws IOException {
+        mErrors.add(503);
+        mErrors.add(502);
+        NewsResponse response = NewsHttpClient.getInstance().fetchNews(mUrl, null, null);
+        assertEquals(20, response.getNews().size());
+        assertEquals(3, mHits.get());
+    }
+
+    @Test
+    public void tooManyRequests_isRetriedAfterRetryAfter() throws IOException {
+        mErrors.add(429);
+        mRetryAfter = "1";
+        NewsResponse response = NewsHttpClient.getInstance().fetchNews(mUrl, null, null);
+        assertEquals(20, response.getNews().size());
+        assertEquals(2, mHits.get());
+    }
+
+    @Test
+    public void clientErrors_areNotRetried() {
+        mErrors.add(404);
+        try {
+            NewsHttpClient.getInstance().fetchNews(mUrl, null, null);
+            fail("404 should throw");
+        } catch (NewsHttpClient.HttpStatusException e) {
+            assertEquals(404, e.getResponseCode());
+        } catch (IOException e) {
+            fail("unexpected " + e);
+        }
+        assertEquals(1, mHits.get());
+    }
+
+    @Test
+    public void cancel_disconnectsTheRequestInFlight() throws Exception {
+        mRelease = new CountDownLatch(1);
+        final LoadCancellation cancellation = new LoadCancellation();
+        final IOException[] failure = new IOException[1];
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NewsHttpClient.getInstance().fetchNews(mUrl, null, null, cancellation);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        caller.start();
+        /* The server holds the response, the caller is blocked reading it */
+        assertTrue(mArrived.await(5, TimeUnit.SECONDS));
+        cancellation.cancel();
+        caller.join(5000);
+        mRelease.countDown();
+
+        /* Released only after the join: a caller that wasn't disconnected is still blocked, or got a response */
+        assertFalse(caller.isAlive());
+        assertTrue("expected InterruptedIOException, got " + failure[0], failure[0] instanceof InterruptedIOException);
+        assertEquals("a cancelled request is not retried", 1, mHits.get());
+    }
+
+    @Test
+    public void cancelOfOneCaller_leavesTheSharedRequestToTheOthers() throws Exception {
+        mRelease = new CountDownLatch(1);
+        final LoadCancellation ownerCancellation = new LoadCancellation();
+        final IOException[] ownerFailure = new IOException[1];
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NewsHttpClient.getInstance().fetchNews(mUrl, null, null, ownerCancellation);
+                } catch (IOException e) {
+                    ownerFailure[0] = e;
+                }
+            }
+        });
+        final NewsResponse[] joinerResponse = new NewsResponse[1];
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    joinerResponse[0] = NewsHttpClient.getInstance().fetchNews(mUrl, null, null, new LoadCancellation());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        owner.start();
+        /* The server holds the owner's request, the joiner shares it */
+        assertTrue(mArrived.await(5, TimeUnit.SECONDS));
+        final long coalesced = NetworkStats.getCoalescedCount();
+        joiner.start();
+        waitUntil(new Counter() {
+            @Override
+            public long get() {
+                return NetworkStats.getCoalescedCount() - coalesced;
+            }
+        }, 1);
+        ownerCancellation.cancel();
+        mRelease.countDown();
+        owner.join(5000);
+        joiner.join(5000);
+
+        assertTrue("expected InterruptedIOException, got " + ownerFailure[0],
+                ownerFailure[0] instanceof InterruptedIOException);
+        assertNotNull(joinerResponse[0]);
+        assertEquals(20, joinerResponse[0].getNews().size());
+        assertEquals(1, mHits.get());
+    }
+
+    @Test
+    public void parseRetryAfter_secondsAndDates() {
+        assertEquals(-1, NewsHttpClient.parseRetryAfter(null));
+        assertEquals(120000, NewsHttpClient.parseRetryAfter("120"));
+        assertEquals(0, NewsHttpClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals(-1, NewsHttpClient.parseRetryAfter("soon"));
+    }
+
+    /** A counter polled by {@link #waitUntil} */
+    private interface Counter {
+        long get();
+    }
+
+    private static void waitUntil(Counter counter, long value) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counter.get() < value && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(value, counter.get());
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link NewsLoadEngine} loads a key once for every screen attached to it, keeps the
+ * result across screens and cancels the load of a screen that goes away.
+ */
+public class NewsLoadEngineTest {
+
+    private static final String KEY = "[https://content.guardianapis.com/search?q=technology]";
+    private static final ArrayList<News> RESULT = new ArrayList<News>(Collections.singletonList(
+            new News("Title", "Technology", "2018-05-27T08:00:20Z", "https://www.theguardian.com/a")));
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    /** Deliveries run on the calling thread, like Handler.post would on the main thread */
+    private final Executor mMainThread = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void reattachedScreen_getsTheResultWithoutLoadingAgain() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        CountingTask task = new CountingTask(null);
+        RecordingObserver first = new RecordingObserver();
+        engine.attach(KEY, task, first);
+        assertSame(RESULT, first.take());
+
+        /* A rotation: the activity detaches without cancelling and the new one attaches */
+        engine.detach(KEY, first, false);
+        RecordingObserver second = new RecordingObserver();
+        engine.attach(KEY, task, second);
+        assertSame(RESULT, second.take());
+        engine.reloadIfStale(KEY);
+
+        assertEquals(1, task.mLoads.get());
+    }
+
+    @Test
+    public void staleResult_isShownThenLoadedAgain() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 0);
+        CountingTask task = new CountingTask(null);
+        RecordingObserver observer = new RecordingObserver();
+        engine.attach(KEY, task, observer);
+        assertSame(RESULT, observer.take());
+
+        engine.reloadIfStale(KEY);
+        assertSame(RESULT, observer.take());
+        assertEquals(2, task.mLoads.get());
+    }
+
+    @Test
+    public void screensAttachingWhileLoading_joinOneLoad() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingTask task = new CountingTask(release);
+        List<RecordingObserver> observers = Arrays.asList(
+                new RecordingObserver(), new RecordingObserver(), new RecordingObserver());
+        for (RecordingObserver observer : observers) {
+            engine.attach(KEY, task, observer);
+        }
+        release.countDown();
+        for (RecordingObserver observer : observers) {
+            assertSame(RESULT, observer.take());
+        }
+        assertEquals(1, task.mLoads.get());
+    }
+
+    @Test
+    public void finishedScreen_cancelsTheLoad() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingTask task = new CountingTask(release);
+        RecordingObserver observer = new RecordingObserver();
+        engine.attach(KEY, task, observer);
+        assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+
+        engine.detach(KEY, observer, true);
+        assertTrue("the load should see its cancellation", task.mCancelled.await(5, TimeUnit.SECONDS));
+        assertNull("nothing is delivered after detaching", observer.mResults.poll(200, TimeUnit.MILLISECONDS));
+
+        /* Nothing was kept, the next screen loads again */
+        RecordingObserver next = new RecordingObserver();
+        engine.attach(KEY, new CountingTask(null), next);
+        assertSame(RESULT, next.take());
+    }
+
+    @Test
+    public void earlyResults_areDeliveredBeforeTheFinalOne() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        final ArrayList<News> early = new ArrayList<News>();
+        RecordingObserver observer = new RecordingObserver();
+        engine.attach(KEY, new NewsLoadEngine.Task() {
+            @Override
+            public ArrayList<News> load(NewsLoadEngine.Publisher publisher, LoadCancellation cancellation) {
+                publisher.publish(early);
+                return RESULT;
+            }
+        }, observer);
+        assertSame(early, observer.take());
+        assertSame(RESULT, observer.take());
+    }
+
+    @Test
+    public void seededResult_isDeliveredWithoutLoading() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        CountingTask task = new CountingTask(null);
+        /* The order-by preference changed: the loaded page, sorted on the device */
+        engine.seed(KEY, RESULT);
+        RecordingObserver observer = new RecordingObserver();
+        engine.attach(KEY, task, observer);
+        assertSame(RESULT, observer.take());
+        engine.reloadIfStale(KEY);
+
+        assertEquals(0, task.mLoads.get());
+    }
+
+    @Test
+    public void preloadedKey_isJoinedByTheFirstScreen() throws Exception {
+        NewsLoadEngine engine = new NewsLoadEngine(mExecutor, mMainThread, 60000);
+        CountDownLatch release = new CountDownLatch(1);
+        CountingTask task = new CountingTask(release);
+        /* Started from the application, before the activity is created */
+        engine.preload(KEY, task);
+        assertTrue(task.mStarted.await(5, TimeUnit.SECONDS));
+
+        RecordingObserver observer = new RecordingObserver();
+        engine.attach(KEY, task, observer);
+        release.countDown();
+        assertSame(RESULT, observer.take());
+        engine.preload(KEY, task);
+
+        assertEquals(1, task.mLoads.get());
+    }
+
+    /**
+     * Returns {@link #RESULT}, after waiting for the release latch (if any) or its cancellation.
+     */
+    private static final class CountingTask implements NewsLoadEngine.Task {
+        final AtomicInteger mLoads = new AtomicInteger();
+        final CountDownLatch mStarted = new CountDownLatch(1);
+        final CountDownLatch mCancelled = new CountDownLatch(1);
+        private final CountDownLatch mRelease;
+
+        CountingTask(CountDownLatch release) {
+            mRelease = release;
+        }
+
+        @Override
+        public ArrayList<News> load(NewsLoadEngine.Publisher publisher, LoadCancellation cancellation) {
+            mLoads.incrementAndGet();
+            mStarted.countDown();
+            if (mRelease != null) {
+                try {
+                    mRelease.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    /* Interrupted by the cancellation */
+                }
+            }
+            if (cancellation.isCancelled()) {
+                mCancelled.countDown();
+            }
+            return RESULT;
+        }
+    }
+
+    private static final class RecordingObserver implements NewsLoadEngine.Observer {
+        final LinkedBlockingQueue<ArrayList<News>> mResults = new LinkedBlockingQueue<ArrayList<News>>();
+
+        @Override
+        public void onNewsLoaded(ArrayList<News> newsArticles) {
+            mResults.add(newsArticles);
+        }
+
+        ArrayList<News> take() throws InterruptedException {
+            ArrayList<News> result = mResults.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no result delivered", result);
+            return result;
+        }
+    }
+}
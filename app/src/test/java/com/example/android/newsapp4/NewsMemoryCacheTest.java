@@ -0,0 +1,137 @@
+package com.example.android.newsapp4;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link NewsCache} answers from the hot tier, then the warm one, then the disk, that
+ * each memory warning demotes or evicts its tier, and that nothing fetched is lost to one.
+ */
+public class NewsMemoryCacheTest {
+
+    private static final String URL = "https://content.guardianapis.com/search?q=technology&page-size=20";
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(System.getProperty("java.io.tmpdir"), "news-memory-cache-test-" + System.nanoTime());
+        NewsMetrics.reset();
+        NewsMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        NewsMetrics.setEnabled(false);
+        NewsMetrics.reset();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void lookUps_goThroughTheTiers() throws IOException {
+        NewsMemoryCache memoryCache = new NewsMemoryCache(4, 256 * 1024);
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024, null, memoryCache);
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+        cache.put(URL, newsArticles);
+
+        assertEquals(newsArticles, cache.get(URL));
+        assertEquals(1, NewsMetrics.getCount(NewsMetrics.Counter.CACHE_HOT_HITS));
+
+        /* The list is in the background: its responses are only kept encoded */
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, memoryCache.getHotCount());
+        assertEquals(1, memoryCache.getWarmCount());
+        assertEquals(newsArticles, cache.get(URL));
+        assertEquals(1, NewsMetrics.getCount(NewsMetrics.Counter.CACHE_WARM_HITS));
+        assertEquals(1, memoryCache.getHotCount());
+
+        /* About to be killed: only the disk is left, and it still has everything */
+        cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, memoryCache.getWarmCount());
+        assertEquals(0, memoryCache.getWarmBytes());
+        assertEquals(newsArticles, cache.get(URL));
+        assertEquals(1, NewsMetrics.getCount(NewsMetrics.Counter.CACHE_DISK_HITS));
+        assertEquals(newsArticles, cache.get(URL));
+        assertEquals(2, NewsMetrics.getCount(NewsMetrics.Counter.CACHE_HOT_HITS));
+
+        assertNull(cache.get(URL + "&page=2"));
+        assertEquals("hot 40%, warm 20%, disk 20% of 5 lookups", NewsMetrics.cacheTiers());
+    }
+
+    @Test
+    public void hits_areCopies() throws IOException {
+        NewsCache cache = new NewsCache(mDirectory, 60000, 1024 * 1024);
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+        cache.put(URL, newsArticles);
+        cache.get(URL).clear();
+        newsArticles.remove(0);
+        assertEquals(20, cache.get(URL).size());
+    }
+
+    @Test
+    public void tiers_evictTheLeastRecentlyUsed() throws IOException {
+        byte[] batch = NewsBatch.encode(GuardianFixtures.parse(20));
+        NewsResponse response = new NewsResponse(GuardianFixtures.parse(20), "\"v1\"", null, 0);
+        /* Room for 2 decoded responses and 3 encoded ones */
+        NewsMemoryCache memoryCache = new NewsMemoryCache(2, 3 * (batch.length + 256));
+        for (int page = 1; page <= 4; page++) {
+            memoryCache.put(URL + "&page=" + page, response, batch, System.currentTimeMillis(), page == 2);
+        }
+        assertEquals(2, memoryCache.getHotCount());
+        assertEquals(3, memoryCache.getWarmCount());
+        assertNull(memoryCache.get(URL + "&page=1", 0));
+        assertNotNull(memoryCache.get(URL + "&page=2", 0));
+        assertEquals(1, NewsMetrics.getCount(NewsMetrics.Counter.CACHE_WARM_HITS));
+        assertEquals("\"v1\"", memoryCache.get(URL + "&page=2", 0).getETag());
+
+        /* Page 2 is the most recently used now, page 3 goes first */
+        memoryCache.trimWarm(memoryCache.getWarmBytes() - 1);
+        assertEquals(2, memoryCache.getWarmCount());
+        assertEquals(NewsMemoryCache.NOT_IN_MEMORY, memoryCache.getSyncedAt(URL + "&page=3"));
+        assertEquals(NewsMemoryCache.NOT_SYNCED, memoryCache.getSyncedAt(URL + "&page=4"));
+        assertTrue(memoryCache.getSyncedAt(URL + "&page=2") > 0);
+    }
+
+    @Test
+    public void entriesEvictedFromTheDisk_leaveTheMemoryToo() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+        long entryBytes = NewsBatch.encode(newsArticles).length + URL.length() + 100;
+        NewsCache cache = new NewsCache(mDirectory, 60000, entryBytes * 2);
+        cache.put(URL + "&page=1", newsArticles);
+        cache.put(URL + "&page=2", newsArticles);
+        /* Apart by more than the precision of the file times */
+        new File(mDirectory, Integer.toHexString((URL + "&page=1").hashCode()) + ".news").setLastModified(1000);
+        cache.put(URL + "&page=3", newsArticles);
+
+        assertNull(cache.get(URL + "&page=1"));
+        assertEquals(newsArticles, cache.get(URL + "&page=2"));
+        assertEquals(newsArticles, cache.get(URL + "&page=3"));
+    }
+
+    @Test
+    public void expiredEntry_isNotServedFromMemory() throws IOException {
+        ManualClock clock = new ManualClock();
+        NewsMemoryCache memoryCache = new NewsMemoryCache(4, 256 * 1024);
+        NewsCache cache = new NewsCache(mDirectory, 50, 1024 * 1024, null, memoryCache, clock);
+        cache.put(URL, GuardianFixtures.parse(5));
+        assertEquals(1, memoryCache.getWarmCount());
+        clock.advance(60);
+        assertNull(cache.get(URL));
+        assertEquals(0, memoryCache.getWarmCount());
+    }
+}
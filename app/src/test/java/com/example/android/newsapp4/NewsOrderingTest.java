@@ -0,0 +1,44 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link NewsOrdering} re-sorts loaded articles for another order-by preference.
+ */
+public class NewsOrderingTest {
+
+    private static final News OLD_ANDROID = new News("Android security update | Alex Hern", "Technology",
+            "2018-05-25T08:00:00Z", "https://www.theguardian.com/technology/1");
+    private static final News NEW_GAMES = new News("The best games of the month | Keith Stuart", "Games",
+            "2018-05-27T08:00:00Z", "https://www.theguardian.com/games/2");
+    private static final News MIDDLE_ANDROID = new News("Phones | Samuel Gibbs", "Android",
+            "2018-05-26T08:00:00Z", "https://www.theguardian.com/technology/3");
+    private static final List<News> LOADED = Arrays.asList(OLD_ANDROID, NEW_GAMES, MIDDLE_ANDROID);
+
+    @Test
+    public void newest_sortsByTime() {
+        assertEquals(Arrays.asList(NEW_GAMES, MIDDLE_ANDROID, OLD_ANDROID),
+                NewsOrdering.sort(LOADED, NewsOrdering.NEWEST, Collections.singleton("android")));
+    }
+
+    @Test
+    public void relevance_ranksTitleMatchesFirstAndKeepsTies() {
+        /* Title match (3) before section match (1), the article without a match keeps its place after them */
+        assertEquals(Arrays.asList(OLD_ANDROID, MIDDLE_ANDROID, NEW_GAMES),
+                NewsOrdering.sort(LOADED, NewsOrdering.RELEVANCE, Collections.singleton("Android")));
+        /* No match at all: the order stays as it is */
+        assertEquals(LOADED, NewsOrdering.sort(LOADED, NewsOrdering.RELEVANCE, Collections.singleton("politics")));
+    }
+
+    @Test
+    public void unknownOrderOrEmptyTopic_changeNothing() {
+        assertEquals(LOADED, NewsOrdering.sort(LOADED, "oldest", Collections.singleton("android")));
+        assertEquals(LOADED, NewsOrdering.sort(LOADED, NewsOrdering.RELEVANCE, Collections.singleton("")));
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.newsapp4;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link NewsProjectionParser} reads the same articles as the JsonReader based
+ * {@link QueryUtils#readNewsArray}, and only the fields of its projection. QueryUtilsBenchmark in
+ * the benchmark module measures the bytes both allocate per call.
+ */
+public class NewsProjectionParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void allFields_matchTheJsonReaderParser() throws IOException {
+        byte[] body = GuardianFixtures.responseBytes(200);
+        ArrayList<News> expected = parseWithJsonReader(new ByteArrayInputStream(body));
+        QueryUtils.PageInfo pageInfo = new QueryUtils.PageInfo();
+        ArrayList<News> parsed = NewsProjectionParser.parse(new ByteArrayInputStream(body),
+                NewsProjectionParser.ALL, null, pageInfo);
+
+        assertEquals(expected, parsed);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getAuthorName(), parsed.get(i).getAuthorName());
+            assertEquals(expected.get(i).getTimeMillis(), parsed.get(i).getTimeMillis());
+        }
+        assertEquals(1, pageInfo.currentPage);
+        assertEquals(10, pageInfo.pages);
+    }
+
+    @Test
+    public void fieldsLeftOut_areNotRead() throws IOException {
+        ArrayList<News> parsed = NewsProjectionParser.parse(new ByteArrayInputStream(GuardianFixtures.responseBytes(5)),
+                NewsProjectionParser.URL | NewsProjectionParser.TIME, null, null);
+
+        assertEquals(5, parsed.size());
+        News news = parsed.get(0);
+        assertEquals("https://www.theguardian.com/technology/2018/jun/1/article-0", news.getUrl());
+        assertEquals(NewsTimeFormatter.parseUtc("2018-06-01T00:00:20Z"), news.getTimeMillis());
+        assertNull(news.getNewsTitle());
+        assertNull(news.getAuthorName());
+        assertNull(news.getSectionName());
+        assertNull(news.getThumbnailUrl());
+    }
+
+    @Test
+    public void escapesAndNonAsciiText_areDecoded() throws IOException {
+        String json = "{\"response\":{\"results\":[{\"webTitle\":\"\\\"Caf\\u00e9\\\" \u00e9t\u00e9 \u20ac \ud83d\udcf1"
+                + " \\\\ \\/ | Zo\u00eb\",\"tags\":[{\"id\":\"}]{[\\\"\",\"webTitle\":\"Zo\u00eb\",\"references\":[[{}],[]]}],"
+                + "\"webPublicationDate\":\"yesterday\",\"isHosted\":false,\"weight\":-1.5e3,"
+                + "\"webUrl\":\"https://www.theguardian.com/a\"}],\"pages\":7}}";
+        byte[] body = json.getBytes(UTF_8);
+        ArrayList<News> expected = parseWithJsonReader(new ByteArrayInputStream(body));
+        QueryUtils.PageInfo pageInfo = new QueryUtils.PageInfo();
+        ArrayList<News> parsed = NewsProjectionParser.parse(new ByteArrayInputStream(body),
+                NewsProjectionParser.ALL, null, pageInfo);
+
+        assertEquals(expected, parsed);
+        assertEquals("\"Caf\u00e9\" \u00e9t\u00e9 \u20ac \ud83d\udcf1 \\ / | Zo\u00eb", parsed.get(0).getNewsTitle());
+        assertEquals("Zo\u00eb", parsed.get(0).getAuthorName());
+        assertEquals("yesterday", parsed.get(0).getTimestamp());
+        assertEquals(7, pageInfo.pages);
+    }
+
+    @Test
+    public void truncatedResponse_throws() {
+        byte[] body = GuardianFixtures.responseBytes(5);
+        try {
+            NewsProjectionParser.parse(new ByteArrayInputStream(body, 0, body.length / 2),
+                    NewsProjectionParser.ALL, null, null);
+            fail("a truncated response should not parse");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * The JsonReader path parseNews took before the projection parser.
+     */
+    private static ArrayList<News> parseWithJsonReader(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, UTF_8));
+        try {
+            return QueryUtils.readNewsArray(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
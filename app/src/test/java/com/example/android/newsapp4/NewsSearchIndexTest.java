@@ -0,0 +1,167 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the on-device {@link NewsSearchIndex}. NewsSearchIndexBenchmark in the
+ * benchmark module times its searches.
+ */
+public class NewsSearchIndexTest {
+
+    private static final String[] WORDS = {"android", "google", "science", "pixel", "chrome", "privacy",
+            "robot", "battery", "camera", "search", "cloud", "quantum", "climate", "space", "chip", "apple"};
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(System.getProperty("java.io.tmpdir"), "news-index-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void search_matchesTermsOfTitleSectionAndAuthor() {
+        NewsSearchIndex index = new NewsSearchIndex(mFile);
+        index.addAll(Arrays.asList(
+                new News("Android P beta is out | Alex Hern", null, "Technology", "2018-06-01T10:00:00Z", "u1"),
+                new News("Google's new Pixel", "Samuel Gibbs", "Technology", "2018-06-02T10:00:00Z", "u2"),
+                new News("Black holes", "Ian Sample", "Science", "2018-06-03T10:00:00Z", "u3")));
+
+        assertEquals(urls("u1"), urls(index.search("android", 10)));
+        assertEquals(urls("u2"), urls(index.search("GOOGLE pixel", 10)));
+        assertEquals(urls("u3"), urls(index.search("science", 10)));
+        assertEquals(urls("u2"), urls(index.search("gibbs", 10)));
+        assertEquals(urls("u1"), urls(index.search("hern", 10)));
+        assertTrue(index.search("android science", 10).isEmpty());
+    }
+
+    @Test
+    public void search_lastWordMatchesAsPrefix_newestFirst() {
+        NewsSearchIndex index = new NewsSearchIndex(mFile);
+        index.addAll(Arrays.asList(
+                new News("Android tablets", "Technology", "2018-06-01T10:00:00Z", "u1"),
+                new News("Androids dream", "Technology", "2018-06-03T10:00:00Z", "u2"),
+                new News("Anderson", "Technology", "2018-06-02T10:00:00Z", "u3")));
+
+        assertEquals(urls("u2", "u1"), urls(index.search("andr", 10)));
+        assertEquals(urls("u2", "u3", "u1"), urls(index.search("and", 10)));
+        assertEquals(urls("u2"), urls(index.search("and", 1)));
+        /* Only the last word is a prefix */
+        assertEquals(urls("u1"), urls(index.search("android tab", 10)));
+        assertTrue(index.search("andr tablets", 10).isEmpty());
+    }
+
+    @Test
+    public void addAll_replacesChangedArticlesAndSurvivesReload() {
+        NewsSearchIndex index = new NewsSearchIndex(mFile);
+        index.addAll(Arrays.asList(new News("Old headline", "Technology", "2018-06-01T10:00:00Z", "u1")));
+        index.addAll(Arrays.asList(new News("New headline", "Technology", "2018-06-01T10:00:00Z", "u1"),
+                new News("Other", "Technology", "2018-06-01T10:00:00Z", "u2")));
+        assertTrue(index.search("old", 10).isEmpty());
+        assertEquals(urls("u1"), urls(index.search("new", 10)));
+        assertEquals(2, index.size());
+
+        NewsSearchIndex reloaded = new NewsSearchIndex(mFile);
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.search("old", 10).isEmpty());
+        assertEquals(urls("u1"), urls(reloaded.search("headline", 10)));
+    }
+
+    @Test
+    public void sameArticlesAfterAReload_areNotLoggedAgain() throws Exception {
+        NewsSearchIndex index = new NewsSearchIndex(mFile);
+        index.addAll(GuardianFixtures.parse(20));
+        long length = mFile.length();
+
+        /* The log doesn't keep the tags, the reloaded articles have none */
+        NewsSearchIndex reloaded = new NewsSearchIndex(mFile);
+        reloaded.addAll(GuardianFixtures.parse(20));
+        assertEquals(length, mFile.length());
+        assertEquals(20, reloaded.size());
+    }
+
+    @Test
+    public void search_tensOfThousandsOfArticles() {
+        int count = 30000;
+        NewsSearchIndex index = new NewsSearchIndex(mFile, count);
+        ArrayList<News> newsArticles = new ArrayList<News>(count);
+        for (int i = 0; i < count; i++) {
+            String title = WORDS[i % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length]
+                    + " story number" + i + " | Writer" + (i % 500);
+            String time = String.format(Locale.ROOT, "2018-%02d-%02dT10:00:00Z", 1 + i % 12, 1 + i % 28);
+            newsArticles.add(new News(title, WORDS[(i / 3) % WORDS.length], time, "https://example.com/" + i));
+        }
+        index.addAll(newsArticles);
+        assertEquals(count, index.size());
+
+        /* The last word is a prefix: number123, number1230 to number1239, number12300... */
+        ArrayList<News> results = index.search("number123", 50);
+        assertEquals(50, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).getNewsTitle(), results.get(i).getNewsTitle().contains(" number123"));
+            if (i > 0) {
+                assertTrue(results.get(i - 1).getTimeMillis() >= results.get(i).getTimeMillis());
+            }
+        }
+        /* Every term must match, in the title or the section */
+        ArrayList<News> both = index.search("quantum writer42", 50);
+        assertFalse(both.isEmpty());
+        for (News news : both) {
+            String text = news.getNewsTitle() + " " + news.getSectionName();
+            assertTrue(text, text.contains("quantum"));
+            assertTrue(text, text.contains("| Writer42"));
+        }
+    }
+
+    @Test
+    public void cap_dropsTheOldestArticlesFromTheIndexAndTheLog() {
+        NewsSearchIndex index = new NewsSearchIndex(mFile, 100);
+        /* Ten fetches of 20 articles, each newer than the last */
+        for (int fetch = 0; fetch < 10; fetch++) {
+            ArrayList<News> newsArticles = new ArrayList<News>();
+            for (int i = 0; i < 20; i++) {
+                int number = fetch * 20 + i;
+                String time = String.format(Locale.ROOT, "2018-06-%02dT%02d:00:00Z", 1 + number / 24, number % 24);
+                newsArticles.add(new News("Story number" + number, "Technology", time, "u" + number));
+            }
+            index.addAll(newsArticles);
+            assertTrue("size " + index.size(), index.size() <= 110);
+        }
+        assertTrue(index.size() >= 100);
+        assertTrue(index.search("number0", 10).isEmpty());
+        assertTrue(index.search("number99", 10).isEmpty());
+        assertEquals(urls("u199"), urls(index.search("number199", 10)));
+        assertEquals(10, index.search("technology", 10).size());
+
+        /* The log was rewritten without them */
+        NewsSearchIndex reloaded = new NewsSearchIndex(mFile, 100);
+        assertEquals(index.size(), reloaded.size());
+        assertTrue(reloaded.search("number0", 10).isEmpty());
+        assertEquals(urls("u199"), urls(reloaded.search("number199", 10)));
+    }
+
+    private static ArrayList<String> urls(String... urls) {
+        return new ArrayList<String>(Arrays.asList(urls));
+    }
+
+    private static ArrayList<String> urls(ArrayList<News> newsArticles) {
+        ArrayList<String> urls = new ArrayList<String>();
+        for (News news : newsArticles) {
+            urls.add(news.getUrl());
+        }
+        return urls;
+    }
+}
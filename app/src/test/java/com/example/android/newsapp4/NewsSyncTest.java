@@ -0,0 +1,24 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the back-off of the background {@link NewsSync}.
+ */
+public class NewsSyncTest {
+
+    @Test
+    public void backoff_doublesAfterEveryFailure() {
+        assertEquals(NewsSync.INITIAL_BACKOFF_MILLIS, NewsSync.backoffMillis(1));
+        assertEquals(2 * NewsSync.INITIAL_BACKOFF_MILLIS, NewsSync.backoffMillis(2));
+        assertEquals(8 * NewsSync.INITIAL_BACKOFF_MILLIS, NewsSync.backoffMillis(4));
+    }
+
+    @Test
+    public void backoff_isCapped() {
+        assertEquals(NewsSync.MAX_BACKOFF_MILLIS, NewsSync.backoffMillis(30));
+        assertEquals(NewsSync.MAX_BACKOFF_MILLIS, NewsSync.backoffMillis(Integer.MAX_VALUE));
+    }
+}
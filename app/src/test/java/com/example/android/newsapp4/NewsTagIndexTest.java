@@ -0,0 +1,127 @@
+package com.example.android.newsapp4;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the parser keeps every contributor, keyword and series of an article in one pass,
+ * that they survive a {@link NewsBatch}, and that {@link NewsTagIndex} finds the same articles as
+ * a scan of the list.
+ */
+public class NewsTagIndexTest {
+
+    @Test
+    public void everyContributorAndTag_isKept() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+
+        NewsTags tags = newsArticles.get(0).getTags();
+        assertEquals(3, tags.size());
+        assertEquals(NewsTags.CONTRIBUTOR, tags.getType(0));
+        assertEquals("profile/alex-hern", tags.getId(0));
+        assertEquals(NewsTags.KEYWORD, tags.getType(1));
+        assertEquals("Android", tags.getTitle(1));
+        assertEquals(NewsTags.SERIES, tags.getType(2));
+        assertEquals("technology/series/chips-with-everything", tags.getId(2));
+        assertEquals("Alex Hern", newsArticles.get(0).getAuthorName());
+
+        /* Two authors: both are in the byline, not only the last one */
+        assertEquals("Hannah Devlin and John Naughton", newsArticles.get(2).getAuthorName());
+        assertEquals(3, newsArticles.get(2).getTags().size());
+        /* Shared through the pool, whatever article they came with */
+        assertSame(newsArticles.get(3).getTags().getId(0), newsArticles.get(2).getTags().getId(1));
+    }
+
+    @Test
+    public void tags_surviveABatch() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(20);
+        ArrayList<News> decoded = NewsBatch.wrap(ByteBuffer.wrap(NewsBatch.encode(newsArticles))).toList();
+        assertEquals(newsArticles, decoded);
+        for (int i = 0; i < newsArticles.size(); i++) {
+            assertEquals(newsArticles.get(i).getTags(), decoded.get(i).getTags());
+        }
+    }
+
+    @Test
+    public void lookUp_findsWhatAScanFinds() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(2000);
+        NewsTagIndex index = NewsTagIndex.build(newsArticles);
+
+        String[] tagIds = {"profile/john-naughton", "technology/apps", "technology/series/chips-with-everything",
+                "profile/nobody"};
+        for (String tagId : tagIds) {
+            assertEquals(tagId, scan(newsArticles, tagId), index.lookUp(tagId));
+        }
+        assertEquals(200, index.lookUp("technology/series/chips-with-everything").size());
+        /* 4 authors, 3 keywords and 1 series */
+        assertEquals(8, index.size());
+    }
+
+    @Test
+    public void separatorsInIdsAndTitles_surviveTheEncoding() {
+        NewsTags.Builder builder = new NewsTags.Builder();
+        builder.add(NewsTags.KEYWORD, "technology/tabs\tand\nlines", "Tabs\tand\nlines");
+        builder.add(NewsTags.SERIES, "technology/series/a\tb", "Two\nlines\\n");
+        builder.add(NewsTags.CONTRIBUTOR, null, "No profile\t");
+        NewsTags tags = builder.build();
+
+        NewsTags decoded = NewsTags.decode(tags.encode());
+        assertEquals(tags, decoded);
+        assertEquals(3, decoded.size());
+        assertEquals("Two\nlines\\n", decoded.getTitle(1));
+        assertNull(decoded.getId(2));
+    }
+
+    @Test
+    public void keywords_stayOutOfTheSharedPool() throws IOException {
+        NewsTags tags = GuardianFixtures.parse(1).get(0).getTags();
+        /* The author is shared with the rest of the parser's strings, the keyword isn't */
+        assertSame(tags.getId(0), StringPool.getDefault().intern(new String(tags.getId(0))));
+        assertNotSame(tags.getId(1), StringPool.getDefault().intern(new String(tags.getId(1))));
+    }
+
+    @Test
+    public void indexesOfPages_addUpToTheIndexOfTheList() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(100);
+        NewsList first = new NewsList(newsArticles.subList(0, 20));
+        NewsList second = new NewsList(newsArticles.subList(20, 40));
+        NewsList third = new NewsList(newsArticles.subList(40, 60));
+
+        /* Second and third page appended, then the first one dropped and scrolled back to */
+        NewsTagIndex index = new NewsTagIndex();
+        index.addAll(first.getTagIndex());
+        index.addAll(second.getTagIndex());
+        index.addAll(third.getTagIndex());
+        for (News news : first) {
+            index.remove(news);
+        }
+        assertEquals(scan(newsArticles.subList(20, 60), "technology/apps"), index.lookUp("technology/apps"));
+        index.addAllFirst(first.getTagIndex());
+
+        List<News> shown = newsArticles.subList(0, 60);
+        for (String tagId : new String[]{"profile/john-naughton", "technology/apps", "profile/nobody"}) {
+            assertEquals(tagId, scan(shown, tagId), index.lookUp(tagId));
+        }
+        /* The pages' own indexes are left as they were */
+        assertEquals(scan(first, "technology/apps"), first.getTagIndex().lookUp("technology/apps"));
+    }
+
+    private static List<News> scan(List<News> newsArticles, String tagId) {
+        ArrayList<News> found = new ArrayList<News>();
+        for (News news : newsArticles) {
+            NewsTags tags = news.getTags();
+            for (int i = 0; tags != null && i < tags.size(); i++) {
+                if (tagId.equals(tags.getId(i))) {
+                    found.add(news);
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+}
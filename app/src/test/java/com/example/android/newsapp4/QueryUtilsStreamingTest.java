@@ -0,0 +1,80 @@
+package com.example.android.newsapp4;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the streaming {@link QueryUtils#parseNews} path parses what the old "buffer the body
+ * into a String, then parse" path did. QueryUtilsBenchmark in the benchmark module compares their
+ * time, allocation and time to the first article.
+ */
+public class QueryUtilsStreamingTest {
+
+    @Test
+    public void streamingPath_matchesStringPath() throws IOException {
+        byte[] body = GuardianFixtures.responseBytes(200);
+
+        ArrayList<News> buffered = parseBuffered(new ByteArrayInputStream(body));
+        ArrayList<News> streamed = QueryUtils.parseNews(new ByteArrayInputStream(body), null);
+
+        assertEquals(200, streamed.size());
+        assertEquals(buffered.size(), streamed.size());
+        for (int i = 0; i < buffered.size(); i++) {
+            assertEquals(buffered.get(i).getUrl(), streamed.get(i).getUrl());
+            assertEquals(buffered.get(i).getNewsTitle(), streamed.get(i).getNewsTitle());
+            assertEquals(buffered.get(i).getAuthorName(), streamed.get(i).getAuthorName());
+        }
+    }
+
+    @Test
+    public void streamingPath_listenerReceivesEveryArticleInOrder() throws IOException {
+        final ArrayList<News> received = new ArrayList<News>();
+        ArrayList<News> result = QueryUtils.parseNews(
+                new ByteArrayInputStream(GuardianFixtures.responseBytes(20)),
+                new QueryUtils.OnNewsParsedListener() {
+                    @Override
+                    public void onNewsParsed(News news) {
+                        received.add(news);
+                    }
+                });
+        assertEquals(result, received);
+    }
+
+    @Test
+    public void thumbnail_isReadFromTheFields() throws IOException {
+        ArrayList<News> newsArticles = GuardianFixtures.parse(5);
+        assertEquals("https://media.guim.co.uk/0/master/500.jpg", newsArticles.get(0).getThumbnailUrl());
+        assertNull(newsArticles.get(4).getThumbnailUrl());
+        assertEquals("Alex Hern", newsArticles.get(0).getAuthorName());
+    }
+
+    @Test
+    public void streamingPath_readsPagingMetadata() throws IOException {
+        QueryUtils.PageInfo pageInfo = new QueryUtils.PageInfo();
+        QueryUtils.parseNews(new ByteArrayInputStream(GuardianFixtures.responseBytes(20)), null, pageInfo);
+        assertEquals(1, pageInfo.currentPage);
+        assertEquals(10, pageInfo.pages);
+    }
+
+    /**
+     * The pre-streaming path: read the whole body into a String, then parse it.
+     */
+    private static ArrayList<News> parseBuffered(InputStream in) throws IOException {
+        String json = QueryUtils.readNewsFromStream(in);
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            return QueryUtils.readNewsArray(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
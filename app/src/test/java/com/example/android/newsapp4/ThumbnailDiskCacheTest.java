@@ -0,0 +1,117 @@
+package com.example.android.newsapp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the thumbnail disk cache (least recently used eviction, nothing stored for a failed
+ * download) and the sample size the thumbnails are decoded at.
+ */
+public class ThumbnailDiskCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("thumbnails", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void storedImage_isReadBackFromItsFile() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDirectory, 1024 * 1024);
+        assertNull(cache.get("https://media.guim.co.uk/1/master/500.jpg"));
+
+        File file = cache.put("https://media.guim.co.uk/1/master/500.jpg", image(1000));
+        assertNotNull(file);
+        assertEquals(file, cache.get("https://media.guim.co.uk/1/master/500.jpg"));
+        assertEquals(1000, file.length());
+        assertEquals(1000, cache.sizeBytes());
+        assertNull(cache.get("https://media.guim.co.uk/2/master/500.jpg"));
+    }
+
+    @Test
+    public void failedDownload_storesNothing() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDirectory, 1024 * 1024);
+        assertNull(cache.put("https://media.guim.co.uk/1/master/500.jpg", new ThumbnailDiskCache.Source() {
+            @Override
+            public boolean writeTo(OutputStream out) throws IOException {
+                out.write(new byte[100]);
+                return false;
+            }
+        }));
+        try {
+            cache.put("https://media.guim.co.uk/1/master/500.jpg", new ThumbnailDiskCache.Source() {
+                @Override
+                public boolean writeTo(OutputStream out) throws IOException {
+                    out.write(new byte[100]);
+                    throw new IOException("Connection reset");
+                }
+            });
+            fail("the failure should reach the caller");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertNull(cache.get("https://media.guim.co.uk/1/master/500.jpg"));
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedFirst() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(mDirectory, 2500);
+        cache.put("https://media.guim.co.uk/old.jpg", image(1000));
+        cache.put("https://media.guim.co.uk/used.jpg", image(1000));
+        /* Both stored a minute ago: file times may only have a one second resolution */
+        for (File file : mDirectory.listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 60000);
+        }
+        assertNotNull(cache.get("https://media.guim.co.uk/used.jpg"));
+
+        cache.put("https://media.guim.co.uk/new.jpg", image(1000));
+        assertNull(cache.get("https://media.guim.co.uk/old.jpg"));
+        assertNotNull(cache.get("https://media.guim.co.uk/used.jpg"));
+        assertNotNull(cache.get("https://media.guim.co.uk/new.jpg"));
+        assertEquals(2000, cache.sizeBytes());
+    }
+
+    @Test
+    public void sampleSize_keepsTheImageAtLeastAsLargeAsItsView() {
+        /* A 500x300 Guardian thumbnail in a 96x64dp view */
+        assertEquals(1, ThumbnailLoader.calculateInSampleSize(500, 300, 288, 192));
+        assertEquals(2, ThumbnailLoader.calculateInSampleSize(500, 300, 192, 128));
+        assertEquals(4, ThumbnailLoader.calculateInSampleSize(500, 300, 96, 64));
+        /* The dimension that would drop below the view decides */
+        assertEquals(1, ThumbnailLoader.calculateInSampleSize(1000, 300, 96, 200));
+        assertEquals(1, ThumbnailLoader.calculateInSampleSize(100, 100, 200, 200));
+        assertEquals(1, ThumbnailLoader.calculateInSampleSize(500, 300, 0, 0));
+    }
+
+    private static ThumbnailDiskCache.Source image(final int bytes) {
+        return new ThumbnailDiskCache.Source() {
+            @Override
+            public boolean writeTo(OutputStream out) throws IOException {
+                out.write(new byte[bytes]);
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.android.newsapp4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * JMH benchmarks of reading a cached page: parsing the Guardian JSON against decoding the
+ * {@link NewsBatch} the cache stores instead, whole or a single record.
+ */
+@State(Scope.Benchmark)
+public class NewsBatchBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"20", "200", "2000"})
+    public int results;
+
+    /** Response body as it comes off the socket */
+    private byte[] mJson;
+    /** The same articles as a batch */
+    private byte[] mBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = QueryUtilsBenchmark.response(QueryUtilsBenchmark.readFixture(), results).getBytes(UTF_8);
+        mBatch = NewsBatch.encode(QueryUtils.parseNews(new ByteArrayInputStream(mJson), null));
+    }
+
+    /**
+     * The JSON, parsed straight off the stream.
+     */
+    @Benchmark
+    public ArrayList<News> parseJson() throws IOException {
+        return QueryUtils.parseNews(new ByteArrayInputStream(mJson), null);
+    }
+
+    /**
+     * Every article of the batch.
+     */
+    @Benchmark
+    public ArrayList<News> decodeBatch() throws IOException {
+        return NewsBatch.wrap(ByteBuffer.wrap(mBatch)).toList();
+    }
+
+    /**
+     * One article from the middle of the batch, nothing else decoded.
+     */
+    @Benchmark
+    public News decodeOneRecord() throws IOException {
+        return NewsBatch.wrap(ByteBuffer.wrap(mBatch)).get(results / 2);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.newsapp4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * JMH benchmarks of the work done per row bind, for a page of 200 articles: splitting the title
+ * and formatting the time on every bind (as NewsAdapter.getView used to) against reading the
+ * fields {@link News} precomputed at parse time.
+ */
+@State(Scope.Benchmark)
+public class NewsBindBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int ARTICLES = 200;
+
+    private ArrayList<News> mNewsArticles;
+
+    @Setup
+    public void setUp() throws IOException {
+        String fixture = QueryUtilsBenchmark.readFixture();
+        mNewsArticles = QueryUtils.parseNews(new ByteArrayInputStream(
+                QueryUtilsBenchmark.response(fixture, ARTICLES).getBytes(UTF_8)), null);
+    }
+
+    /**
+     * Bind every row of the page the old way.
+     */
+    @Benchmark
+    public void bindTheOldWay(Blackhole blackhole) {
+        for (News news : mNewsArticles) {
+            blackhole.consume(bindTheOldWay(news));
+        }
+    }
+
+    /**
+     * Bind every row of the page from the precomputed fields.
+     */
+    @Benchmark
+    public void bindPrecomputed(Blackhole blackhole) {
+        for (News news : mNewsArticles) {
+            blackhole.consume(news.getDisplayTitle());
+            blackhole.consume(news.getDisplayByline());
+            blackhole.consume(news.getSectionName());
+            blackhole.consume(news.getDisplayTime());
+        }
+    }
+
+    /**
+     * What NewsAdapter.getView used to compute on every bind: title, byline and time.
+     */
+    private static String[] bindTheOldWay(News news) {
+        String fullArticleName = news.getNewsTitle();
+        String titlePart1;
+        String titlePart2;
+        if (fullArticleName.contains(" | ")) {
+            titlePart1 = fullArticleName.substring(0, fullArticleName.indexOf(" | ", 0));
+            titlePart2 = fullArticleName.substring(fullArticleName.indexOf(" | ", 0) + 3, fullArticleName.length());
+        } else {
+            titlePart1 = fullArticleName;
+            titlePart2 = "";
+        }
+        String byline = titlePart2;
+        String authorName = news.getAuthorName();
+        if (authorName != null && !authorName.equals("")) {
+            byline = authorName;
+        }
+        String time = news.getTimestamp();
+        if (time != null) {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+            SimpleDateFormat output = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+            output.setTimeZone(TimeZone.getDefault());
+            try {
+                Date d = sdf.parse(time);
+                time = output.format(d);
+            } catch (ParseException e) {
+                // Keep the raw timestamp
+            }
+        }
+        return new String[]{titlePart1, byline, time};
+    }
+}
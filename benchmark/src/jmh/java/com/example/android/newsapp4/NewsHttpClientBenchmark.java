@@ -0,0 +1,92 @@
+package com.example.android.newsapp4;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JMH benchmarks of a request of {@link NewsHttpClient} to a local mock Guardian server: the
+ * latency of a page fetched over the kept-alive connection, and of a revalidation answered with
+ * 304 Not Modified.
+ */
+@State(Scope.Benchmark)
+public class NewsHttpClientBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ETAG = "\"results-v1\"";
+
+    private HttpServer mServer;
+    private String mUrl;
+    /** A response carrying the ETag, to revalidate */
+    private NewsResponse mPrevious;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] body = gzip(QueryUtilsBenchmark.response(QueryUtilsBenchmark.readFixture(), 20).getBytes(UTF_8));
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/search?q=technology";
+        mPrevious = NewsHttpClient.getInstance().fetchNews(mUrl, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    /**
+     * A page of 20 results, downloaded and parsed.
+     */
+    @Benchmark
+    public NewsResponse fetchNews() throws IOException {
+        return NewsHttpClient.getInstance().fetchNews(mUrl, null, null);
+    }
+
+    /**
+     * The same page revalidated with its ETag: no body.
+     */
+    @Benchmark
+    public NewsResponse fetchNewsNotModified() throws IOException {
+        return NewsHttpClient.getInstance().fetchNews(mUrl, mPrevious, null);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.newsapp4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * JMH benchmarks of searching the {@link NewsSearchIndex} when it holds tens of thousands of
+ * articles: common and rare words, short and long prefixes, several terms.
+ */
+@State(Scope.Benchmark)
+public class NewsSearchIndexBenchmark {
+
+    private static final String[] WORDS = {"android", "google", "science", "pixel", "chrome", "privacy",
+            "robot", "battery", "camera", "search", "cloud", "quantum", "climate", "space", "chip", "apple"};
+
+    private static final int ARTICLES = 30000;
+
+    @Param({"android", "goo", "s", "pixel cam", "quantum chip", "number123", "writer42"})
+    public String query;
+
+    private File mFile;
+    private NewsSearchIndex mIndex;
+
+    @Setup
+    public void setUp() {
+        mFile = new File(System.getProperty("java.io.tmpdir"), "news-index-benchmark-" + System.nanoTime());
+        mIndex = new NewsSearchIndex(mFile, ARTICLES);
+        ArrayList<News> newsArticles = new ArrayList<News>(ARTICLES);
+        for (int i = 0; i < ARTICLES; i++) {
+            String title = WORDS[i % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length]
+                    + " story number" + i + " | Writer" + (i % 500);
+            String time = String.format(Locale.ROOT, "2018-%02d-%02dT10:00:00Z", 1 + i % 12, 1 + i % 28);
+            newsArticles.add(new News(title, WORDS[(i / 3) % WORDS.length], time, "https://example.com/" + i));
+        }
+        mIndex.addAll(newsArticles);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /**
+     * The 100 newest matches, as the search screen asks for them.
+     */
+    @Benchmark
+    public ArrayList<News> search() {
+        return mIndex.search(query, 100);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.android.newsapp4;
+
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * JMH benchmarks of the {@link QueryUtils} parse pipeline on recorded Guardian responses.
+ * <p>
+ * The 20 result fixture is a recorded "search" response with show-tags=contributor; the 200 and
+ * 2000 result responses repeat its results (with unique URLs) the way a larger page-size would.
+ */
+@State(Scope.Benchmark)
+public class QueryUtilsBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FIXTURE = "/fixtures/search-20.json";
+    private static final String RESULTS_START = "\"results\":[";
+    private static final String RESULTS_END = "]}}";
+
+    @Param({"20", "200", "2000"})
+    public int results;
+
+    /** Thrown by the listener of {@link #parseNewsFirstItem} to stop at the first article */
+    private static final RuntimeException FIRST_ITEM = new RuntimeException("First item", null, false, false) {
+    };
+
+    /** Response body as it comes off the socket */
+    private byte[] mBody;
+    /** Response body already buffered into a String */
+    private String mJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = response(readFixture(), results);
+        mBody = mJson.getBytes(UTF_8);
+    }
+
+    /**
+     * readNewsArray/readNews on a String that is already in memory: the parser alone.
+     */
+    @Benchmark
+    public ArrayList<News> readNewsArray() throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(mJson));
+        try {
+            return QueryUtils.readNewsArray(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * readNewsFromStream: buffering the body into a String, the first half of the old path.
+     */
+    @Benchmark
+    public String readNewsFromStream() throws IOException {
+        return QueryUtils.readNewsFromStream(new ByteArrayInputStream(mBody));
+    }
+
+    /**
+     * The old path end to end: buffer the body into a String, then parse it.
+     */
+    @Benchmark
+    public ArrayList<News> bufferThenParse() throws IOException {
+        String json = QueryUtils.readNewsFromStream(new ByteArrayInputStream(mBody));
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            return QueryUtils.readNewsArray(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * The streaming path: parse straight off the stream, every field with the projection parser.
+     */
+    @Benchmark
+    public ArrayList<News> parseNews() throws IOException {
+        return QueryUtils.parseNews(new ByteArrayInputStream(mBody), null);
+    }
+
+    /**
+     * The streaming path up to the first article handed to the listener, what the list waits for
+     * before showing anything. The old path's first article waits for readNewsFromStream instead.
+     */
+    @Benchmark
+    public News parseNewsFirstItem() throws IOException {
+        final News[] first = new News[1];
+        try {
+            QueryUtils.parseNews(new ByteArrayInputStream(mBody), new QueryUtils.OnNewsParsedListener() {
+                @Override
+                public void onNewsParsed(News news) {
+                    first[0] = news;
+                    throw FIRST_ITEM;
+                }
+            });
+        } catch (RuntimeException e) {
+            if (e != FIRST_ITEM) {
+                throw e;
+            }
+        }
+        return first[0];
+    }
+
+    /**
+     * The projection parser alone on the bytes, reading only the URL and the time of every article:
+     * compare its gc.alloc.rate.norm with parseNews (every field) and readNewsArray (JsonReader).
+     */
+    @Benchmark
+    public ArrayList<News> parseUrlAndTime() throws IOException {
+        return NewsProjectionParser.parse(new ByteArrayInputStream(mBody),
+                NewsProjectionParser.URL | NewsProjectionParser.TIME, null, null);
+    }
+
+    /**
+     * Return the recorded fixture.
+     */
+    static String readFixture() throws IOException {
+        InputStream in = QueryUtilsBenchmark.class.getResourceAsStream(FIXTURE);
+        if (in == null) {
+            throw new IOException("Missing fixture " + FIXTURE);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Return the fixture with its results repeated up to the given count.
+     */
+    static String response(String fixture, int count) {
+        int start = fixture.indexOf(RESULTS_START) + RESULTS_START.length();
+        int end = fixture.lastIndexOf(RESULTS_END);
+        String head = fixture.substring(0, start);
+        String results = fixture.substring(start, end);
+        String tail = fixture.substring(end);
+        int perCopy = 20;
+        StringBuilder json = new StringBuilder(fixture.length() * (count / perCopy + 1));
+        json.append(head);
+        for (int copy = 0; copy < count / perCopy; copy++) {
+            if (copy > 0) {
+                json.append(',');
+            }
+            /* Keep every URL unique, like distinct articles would be */
+            json.append(copy == 0 ? results : results.replace("/article-", "/article-" + copy + "-"));
+        }
+        json.append(tail);
+        return json.toString();
+    }
+}
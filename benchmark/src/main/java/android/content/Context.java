@@ -0,0 +1,14 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * Stand-in for android.content.Context, so the app's classes that take one compile on a plain
+ * JVM. The benchmarks construct them from a file instead and never call it.
+ */
+public abstract class Context {
+
+    public abstract Context getApplicationContext();
+
+    public abstract File getFilesDir();
+}
@@ -0,0 +1,89 @@
+#!/bin/bash
+# Cold start benchmark of the app on a device or emulator: starts NewsActivity in a new process
+# a number of times and reports its time to initial display (TTID, ActivityManager's "Displayed",
+# the first frame) and time to full display (TTFD, "Fully drawn", the first articles shown).
+#
+# Usage: benchmark/startup.sh [runs] [cached|empty]
+#   runs    number of cold starts, 10 by default
+#   cached  keep the app's data, so the first frame shows the cached first page (the default)
+#   empty   clear the app's data before every start, so the first frame shows the skeleton list
+#
+# Install the build to measure first (./gradlew :app:installDebug or installRelease). The device
+# should be idle and plugged in; the first run is dropped as a warm-up. A debug build also records
+# both spans in its own metrics, they are printed at the end.
+
+set -e
+
+PACKAGE=com.example.android.newsapp4
+ACTIVITY=$PACKAGE/.NewsActivity
+RUNS=${1:-10}
+MODE=${2:-cached}
+# Longest wait for "Fully drawn", in seconds
+FULL_DISPLAY_TIMEOUT=30
+
+if [ "$MODE" != cached ] && [ "$MODE" != empty ]; then
+    echo "Unknown mode $MODE, expected cached or empty" >&2
+    exit 1
+fi
+
+# Prints the milliseconds of a duration of ActivityManager's log, e.g. +1s234ms or +850ms
+to_millis() {
+    local duration=${1#+}
+    local seconds=0
+    if [[ $duration == *s*ms ]]; then
+        seconds=${duration%%s*}
+        duration=${duration#*s}
+    elif [[ $duration != *ms ]]; then
+        # Whole seconds, e.g. +2s
+        echo $((${duration%s} * 1000))
+        return
+    fi
+    echo $((seconds * 1000 + 10#${duration%ms}))
+}
+
+# Prints the minimum, median and maximum of the numbers given
+summary() {
+    local sorted=($(printf '%s\n' "$@" | sort -n))
+    local count=${#sorted[@]}
+    echo "min ${sorted[0]} ms, median ${sorted[$((count / 2))]} ms, max ${sorted[$((count - 1))]} ms"
+}
+
+initial_displays=()
+full_displays=()
+for run in $(seq 0 "$RUNS"); do
+    adb shell am force-stop $PACKAGE
+    if [ "$MODE" = empty ]; then
+        adb shell pm clear $PACKAGE > /dev/null
+    fi
+    adb logcat -c
+    initial=$(adb shell am start -W -n $ACTIVITY | tr -d '\r' | sed -n 's/^TotalTime: //p')
+
+    full=
+    for wait in $(seq 1 $((FULL_DISPLAY_TIMEOUT * 2))); do
+        full=$(adb logcat -d | tr -d '\r' | sed -n "s|.*Fully drawn $ACTIVITY: \(+[0-9ms]*\).*|\1|p" | head -1)
+        if [ -n "$full" ]; then
+            break
+        fi
+        sleep 0.5
+    done
+    if [ -z "$initial" ] || [ -z "$full" ]; then
+        echo "Run $run: no display reported, is the app installed and the device unlocked?" >&2
+        exit 1
+    fi
+    full=$(to_millis "$full")
+
+    if [ "$run" -eq 0 ]; then
+        echo "Warm-up: initial display $initial ms, full display $full ms"
+        continue
+    fi
+    echo "Run $run: initial display $initial ms, full display $full ms"
+    initial_displays+=("$initial")
+    full_displays+=("$full")
+done
+
+echo
+echo "Cold start, $MODE, $RUNS runs"
+echo "  Time to initial display: $(summary "${initial_displays[@]}")"
+echo "  Time to full display:    $(summary "${full_displays[@]}")"
+# Measured from the application's creation by the app itself, debug builds only
+adb shell dumpsys activity $PACKAGE | grep -E "initial display|full display" || true